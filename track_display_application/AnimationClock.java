@@ -0,0 +1,98 @@
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.Timer;
+
+/**
+ * One {@link Timer} that drives every running animation in the process at
+ * a capped frame rate.
+ *
+ * Animations are called on the EDT with the frame time, all on the same
+ * tick and in the order they were started, so several panels cost one
+ * timer event per frame between them. The timer only runs while some
+ * animation is started: a display with nothing playing does no periodic
+ * work at all. Late ticks are coalesced rather than queued, so a busy EDT
+ * just gets fewer frames. After each frame the
+ * toolkit is synced, which keeps frames from being batched up by the window
+ * system on X11. All methods must run on the EDT.
+ */
+public final class AnimationClock {
+    public static final int DEFAULT_FPS = 30;
+    public static final int MAX_FPS = 120;
+
+    private static final AnimationClock SHARED =
+        new AnimationClock(Integer.getInteger("trackdisplay.animationFps", DEFAULT_FPS));
+
+    /** Something redrawn on every frame while it is started. */
+    public interface Animation {
+        void onFrame(long frameNanos);
+    }
+
+    private final Timer timer;
+    private final List<Animation> animations = new ArrayList<>();
+    private final boolean syncToolkit = !GraphicsEnvironment.isHeadless();
+    private int fps;
+    private long frameCount;
+
+    public AnimationClock(int fps) {
+        timer = new Timer(0, event -> tick(System.nanoTime()));
+        timer.setCoalesce(true);
+        setFps(fps);
+    }
+
+    /** The clock every display shares; its rate is {@code -Dtrackdisplay.animationFps}, 30 by default. */
+    public static AnimationClock shared() {
+        return SHARED;
+    }
+
+    /** Caps the frame rate, between 1 and {@link #MAX_FPS}. */
+    public void setFps(int fps) {
+        this.fps = Math.max(1, Math.min(MAX_FPS, fps));
+        int delayMillis = Math.max(1, 1000 / this.fps);
+        timer.setDelay(delayMillis);
+        timer.setInitialDelay(delayMillis);
+    }
+
+    /** Adds {@code animation} to the frames, starting the timer if it was idle. */
+    public void start(Animation animation) {
+        if (!animations.contains(animation)) {
+            animations.add(animation);
+        }
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    /** Removes {@code animation}; the timer stops with the last one. */
+    public void stop(Animation animation) {
+        animations.remove(animation);
+        if (animations.isEmpty()) {
+            timer.stop();
+        }
+    }
+
+    /** Runs one frame of every started animation. */
+    void tick(long frameNanos) {
+        if (animations.isEmpty()) {
+            return;
+        }
+        frameCount++;
+        for (int i = 0; i < animations.size(); i++) {
+            Animation animation = animations.get(i);
+            animation.onFrame(frameNanos);
+            if (i < animations.size() && animations.get(i) != animation) {
+                // It stopped itself or an earlier one, and the rest moved down a slot.
+                i--;
+            }
+        }
+        if (syncToolkit) {
+            Toolkit.getDefaultToolkit().sync();
+        }
+    }
+
+    public boolean isRunning() { return timer.isRunning(); }
+    public int getFps() { return fps; }
+    public int getAnimationCount() { return animations.size(); }
+    public long getFrameCount() { return frameCount; }
+}
@@ -0,0 +1,342 @@
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * Decodes and scales album artwork on background workers and keeps the
+ * ready-to-paint results in a byte-bounded LRU cache.
+ *
+ * Entries are keyed by path and validated against the file's modification
+ * time, so replaced artwork is picked up on the next request. Oversized
+ * sources are decoded with {@link ImageReadParam#setSourceSubsampling} so the
+ * full-resolution raster never has to exist in memory.
+ */
+public class ArtworkCache {
+    public static final int DEFAULT_ARTWORK_SIZE = 250;
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final int MAX_QUEUED_DECODES = 16;
+
+    private static ArtworkCache sharedInstance;
+
+    private final int artworkSize;
+    private final long maxBytes;
+    private final ThreadPoolExecutor decodeWorkers;
+    // Guarded by itself; access-ordered so iteration starts at the eldest entry.
+    private final LinkedHashMap<String, CachedArtwork> readyArtwork = new LinkedHashMap<>(64, 0.75f, true);
+    // Guarded by itself; callbacks waiting on an in-flight decode per path.
+    private final Map<String, List<Waiter>> pendingCallbacks = new HashMap<>();
+    private long cachedBytes;
+
+    public ArtworkCache(int artworkSize, long maxBytes, int workerThreads) {
+        this.artworkSize = artworkSize;
+        this.maxBytes = maxBytes;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.decodeWorkers = new ThreadPoolExecutor(workerThreads, workerThreads, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED_DECODES),
+            runnable -> {
+                Thread worker = new Thread(runnable, "artwork-worker-" + threadNumber.incrementAndGet());
+                worker.setDaemon(true);
+                worker.setPriority(Thread.NORM_PRIORITY - 1);
+                return worker;
+            },
+            this::discardOldestDecode);
+        this.decodeWorkers.allowCoreThreadTimeOut(true);
+    }
+
+    /** Returns the process-wide cache used by the display windows. */
+    public static synchronized ArtworkCache shared() {
+        if (sharedInstance == null) {
+            int workers = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+            sharedInstance = new ArtworkCache(DEFAULT_ARTWORK_SIZE, DEFAULT_MAX_BYTES, workers);
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Returns the most recently cached image for {@code path} without touching
+     * the file system, or null. Safe to call on the EDT.
+     */
+    public BufferedImage peek(String path) {
+        synchronized (readyArtwork) {
+            CachedArtwork cached = readyArtwork.get(path);
+            return cached != null ? cached.image : null;
+        }
+    }
+
+    /**
+     * Resolves {@code path} to a scaled image in the background and passes it
+     * (or null if it cannot be decoded) to {@code onLoaded} on the EDT.
+     */
+    public void load(String path, Consumer<BufferedImage> onLoaded) {
+        load(path, onLoaded, () -> { });
+    }
+
+    /**
+     * Like {@link #load(String, Consumer)}, but runs {@code onDropped} on the
+     * EDT instead if the queued decode is pushed out by newer requests, so a
+     * caller that still wants the artwork can ask again.
+     */
+    public void load(String path, Consumer<BufferedImage> onLoaded, Runnable onDropped) {
+        Waiter waiter = new Waiter(onLoaded, onDropped);
+        synchronized (pendingCallbacks) {
+            List<Waiter> waiting = pendingCallbacks.get(path);
+            if (waiting != null) {
+                waiting.add(waiter);
+                return;
+            }
+            waiting = new ArrayList<>(2);
+            waiting.add(waiter);
+            pendingCallbacks.put(path, waiting);
+        }
+        decodeWorkers.execute(new DecodeTask(path));
+    }
+
+    /**
+     * Caches an already scaled image for {@code path}, e.g. one restored from
+     * a saved display state. {@code modifiedTime} is the file's modification
+     * time when the image was made; if the file has changed since, the next
+     * {@link #load} decodes it again.
+     */
+    public void prime(String path, long modifiedTime, BufferedImage scaledImage) {
+        store(path, new CachedArtwork(modifiedTime, scaledImage));
+    }
+
+    public long getCachedBytes() {
+        synchronized (readyArtwork) {
+            return cachedBytes;
+        }
+    }
+
+    public int getCachedCount() {
+        synchronized (readyArtwork) {
+            return readyArtwork.size();
+        }
+    }
+
+    public int getArtworkSize() {
+        return artworkSize;
+    }
+
+    private BufferedImage resolve(String path) {
+        File file = new File(path);
+        long modifiedTime = file.lastModified();
+        if (modifiedTime == 0L) {
+            return null;
+        }
+        synchronized (readyArtwork) {
+            CachedArtwork cached = readyArtwork.get(path);
+            if (cached != null && cached.modifiedTime == modifiedTime) {
+                return cached.image;
+            }
+        }
+
+        BufferedImage scaled = null;
+        try {
+            BufferedImage decoded = decodeSubsampled(file, artworkSize);
+            if (decoded == null) {
+                decoded = decodeWithToolkit(path);
+            }
+            if (decoded != null) {
+                scaled = scaleTo(decoded, artworkSize);
+            }
+        } catch (IOException | RuntimeException decodeException) {
+            System.err.println("Failed to load image: " + path);
+        }
+        if (scaled != null) {
+            store(path, new CachedArtwork(modifiedTime, scaled));
+        }
+        return scaled;
+    }
+
+    private void store(String path, CachedArtwork artwork) {
+        synchronized (readyArtwork) {
+            CachedArtwork previous = readyArtwork.put(path, artwork);
+            if (previous != null) {
+                cachedBytes -= previous.bytes;
+            }
+            cachedBytes += artwork.bytes;
+            Iterator<CachedArtwork> eldestFirst = readyArtwork.values().iterator();
+            while (cachedBytes > maxBytes && eldestFirst.hasNext()) {
+                CachedArtwork evicted = eldestFirst.next();
+                if (evicted == artwork) {
+                    break;
+                }
+                cachedBytes -= evicted.bytes;
+                eldestFirst.remove();
+            }
+        }
+    }
+
+    private void deliver(String path, BufferedImage image) {
+        List<Waiter> waiting;
+        synchronized (pendingCallbacks) {
+            waiting = pendingCallbacks.remove(path);
+        }
+        if (waiting != null) {
+            SwingUtilities.invokeLater(() -> {
+                for (Waiter waiter : waiting) {
+                    waiter.onLoaded.accept(image);
+                }
+            });
+        }
+    }
+
+    /**
+     * Keeps the newest requests when the queue is full: during fast skipping
+     * the oldest queued decode is usually for artwork nobody is waiting to
+     * see. Its waiters are told, since with a shared cache it may belong to
+     * another zone that still wants it.
+     */
+    private void discardOldestDecode(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        Runnable oldest = executor.getQueue().poll();
+        if (oldest instanceof DecodeTask) {
+            List<Waiter> dropped;
+            synchronized (pendingCallbacks) {
+                dropped = pendingCallbacks.remove(((DecodeTask) oldest).path);
+            }
+            if (dropped != null) {
+                SwingUtilities.invokeLater(() -> {
+                    for (Waiter waiter : dropped) {
+                        waiter.onDropped.run();
+                    }
+                });
+            }
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * Decodes {@code file} with ImageIO, subsampling rows and columns so the
+     * decoded raster is no larger than about twice {@code targetSize}.
+     * Returns null if no ImageIO reader understands the file.
+     */
+    static BufferedImage decodeSubsampled(File file, int targetSize) throws IOException {
+        try (ImageInputStream imageInput = ImageIO.createImageInputStream(file)) {
+            if (imageInput == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                int step = Math.max(1, Math.min(sourceWidth, sourceHeight) / (targetSize * 2));
+                ImageReadParam readParam = reader.getDefaultReadParam();
+                if (step > 1) {
+                    readParam.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, readParam);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage decodeWithToolkit(String path) {
+        ImageIcon originalIcon = new ImageIcon(path);
+        int width = originalIcon.getIconWidth();
+        int height = originalIcon.getIconHeight();
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        BufferedImage decoded = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = decoded.createGraphics();
+        graphics.drawImage(originalIcon.getImage(), 0, 0, null);
+        graphics.dispose();
+        return decoded;
+    }
+
+    /**
+     * Scales to a {@code size} x {@code size} square, halving with bilinear
+     * filtering first so large reductions keep the quality of SCALE_SMOOTH.
+     */
+    static BufferedImage scaleTo(BufferedImage source, int size) {
+        Image current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        while (width / 2 >= size && height / 2 >= size) {
+            width /= 2;
+            height /= 2;
+            current = drawScaled(current, width, height);
+        }
+        return drawScaled(current, size, size);
+    }
+
+    private static BufferedImage drawScaled(Image source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = target.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
+        return target;
+    }
+
+    private static final class CachedArtwork {
+        final long modifiedTime;
+        final BufferedImage image;
+        final long bytes;
+
+        CachedArtwork(long modifiedTime, BufferedImage image) {
+            this.modifiedTime = modifiedTime;
+            this.image = image;
+            this.bytes = 4L * image.getWidth() * image.getHeight();
+        }
+    }
+
+    private static final class Waiter {
+        final Consumer<BufferedImage> onLoaded;
+        final Runnable onDropped;
+
+        Waiter(Consumer<BufferedImage> onLoaded, Runnable onDropped) {
+            this.onLoaded = onLoaded;
+            this.onDropped = onDropped;
+        }
+    }
+
+    private final class DecodeTask implements Runnable {
+        final String path;
+
+        DecodeTask(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public void run() {
+            BufferedImage image = null;
+            try {
+                image = resolve(path);
+            } finally {
+                deliver(path, image);
+            }
+        }
+    }
+}
@@ -0,0 +1,491 @@
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.imageio.ImageIO;
+import javax.swing.JComponent;
+import javax.swing.RepaintManager;
+import javax.swing.SwingUtilities;
+
+/**
+ * Lightweight benchmark harness for the display's hot paths.
+ *
+ * Each benchmark is warmed up, then measured over several fixed-length
+ * iterations. Throughput is reported alongside bytes allocated per operation,
+ * read from the per-thread allocation counter of the HotSpot
+ * {@code ThreadMXBean} (the same figure as JMH's gc.alloc.rate.norm).
+ *
+ * The animated panel is also run on a real {@link AnimationClock} at 30 and
+ * 60 fps, and the process CPU time it takes is reported; those figures are
+ * not compared against the baseline.
+ *
+ * Usage: java Benchmark [--quick] [--filter TEXT] [--output FILE] [--compare FILE]
+ */
+public class Benchmark {
+
+    /** One benchmarked operation; its return value is consumed so the JIT cannot drop the work. */
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    static final class Result {
+        final String name;
+        final double opsPerSecond;
+        final double bytesPerOp;
+
+        Result(String name, double opsPerSecond, double bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        String format() {
+            return String.format(Locale.ROOT, "%-44s %14.1f ops/s %12.1f ns/op %12.1f B/op",
+                name, opsPerSecond, 1e9 / opsPerSecond, bytesPerOp);
+        }
+    }
+
+    private static final double REGRESSION_THRESHOLD = 0.10;
+
+    private final long warmupMillis;
+    private final long iterationMillis;
+    private final int iterations;
+    private final String filter;
+    private final com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final List<Result> results = new ArrayList<>();
+    private volatile Object sink;
+
+    Benchmark(long warmupMillis, long iterationMillis, int iterations, String filter) {
+        this.warmupMillis = warmupMillis;
+        this.iterationMillis = iterationMillis;
+        this.iterations = iterations;
+        this.filter = filter;
+    }
+
+    void run(String name, Operation operation) throws Exception {
+        if (filter != null && !name.contains(filter)) {
+            return;
+        }
+        long warmupEnd = System.nanoTime() + warmupMillis * 1_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            sink = operation.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long totalOps = 0;
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            long iterationEnd = System.nanoTime() + iterationMillis * 1_000_000L;
+            long ops = 0;
+            long bytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            long now;
+            do {
+                for (int batch = 0; batch < 16; batch++) {
+                    sink = operation.run();
+                }
+                ops += 16;
+                now = System.nanoTime();
+            } while (now < iterationEnd);
+            totalNanos += now - start;
+            totalBytes += threadBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+            totalOps += ops;
+        }
+
+        Result result = new Result(name, totalOps * 1e9 / totalNanos, (double) totalBytes / totalOps);
+        results.add(result);
+        System.out.println(result.format());
+    }
+
+    void skip(String name, String reason) {
+        if (filter == null || name.contains(filter)) {
+            System.out.println(String.format(Locale.ROOT, "%-44s skipped: %s", name, reason));
+        }
+    }
+
+    // --- Benchmarked inputs -------------------------------------------------
+
+    static final String REALISTIC_LINE =
+        "{\"title\": \"Bohemian Rhapsody\", \"artist\": \"Queen\", \"length\": \"5:55\", "
+        + "\"image_path\": \"/var/lib/artwork/queen/a-night-at-the-opera.jpg\", \"playing?\": true}";
+
+    static String adversarialLine() {
+        TrackServer.Options options = TrackServer.Options.parse(
+            new String[] {"--title-length", "400", "--extra-fields", "24"});
+        String event = TrackServer.buildEvent(new Random(7), options);
+        return event.substring(0, event.length() - 1)
+            + ", \"lyrics\": \"Line one\\nLine two \\u00e9\\u00e8 \\\"quoted\\\" \\ud83c\\udfb5\"}";
+    }
+
+    static File createArtwork(int size) throws IOException {
+        BufferedImage source = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(size);
+        for (int y = 0; y < size; y += 8) {
+            for (int x = 0; x < size; x += 8) {
+                int color = random.nextInt(0xFFFFFF);
+                for (int dy = 0; dy < 8 && y + dy < size; dy++) {
+                    for (int dx = 0; dx < 8 && x + dx < size; dx++) {
+                        source.setRGB(x + dx, y + dy, color);
+                    }
+                }
+            }
+        }
+        File file = File.createTempFile("benchmark-artwork-" + size + "-", ".jpg");
+        file.deleteOnExit();
+        ImageIO.write(source, "jpg", file);
+        return file;
+    }
+
+    static void paintOffscreen(JComponent component, BufferedImage target) {
+        component.setSize(target.getWidth(), target.getHeight());
+        Graphics2D graphics = target.createGraphics();
+        component.paint(graphics);
+        graphics.dispose();
+    }
+
+    /**
+     * Collects the regions Swing is asked to repaint, in {@code root}'s
+     * coordinates, so an offscreen benchmark can paint just those, as Swing
+     * would for a panel on screen.
+     */
+    static final class DirtyRegions extends RepaintManager {
+        private final JComponent root;
+        private final List<Rectangle> regions = new ArrayList<>();
+
+        DirtyRegions(JComponent root) {
+            this.root = root;
+        }
+
+        @Override
+        public void addDirtyRegion(JComponent component, int x, int y, int width, int height) {
+            if (width > 0 && height > 0 && SwingUtilities.isDescendingFrom(component, root)) {
+                regions.add(SwingUtilities.convertRectangle(component, new Rectangle(x, y, width, height), root));
+            }
+        }
+
+        /** Paints the collected regions of the root into {@code target} and forgets them. */
+        void paintInto(BufferedImage target) {
+            Graphics2D graphics = target.createGraphics();
+            for (Rectangle region : regions) {
+                Graphics2D clipped = (Graphics2D) graphics.create();
+                clipped.clip(region);
+                root.paint(clipped);
+                clipped.dispose();
+            }
+            graphics.dispose();
+            regions.clear();
+        }
+
+        void clear() {
+            regions.clear();
+        }
+    }
+
+    /** A panel showing a playing track, laid out offscreen at the window's size. */
+    static TrackDisplayPanel playingPanel() {
+        TrackDisplayPanel panel = new TrackDisplayPanel(ArtworkCache.shared());
+        TrackEvent playing = new TrackEvent();
+        playing.setTitle("Bohemian Rhapsody");
+        playing.setArtist("Queen");
+        playing.setLength("5:55");
+        playing.setPlaying(true);
+        panel.showRestoredState(playing);
+        panel.setSize(500, 700);
+        HeadlessRenderer.layoutTree(panel);
+        return panel;
+    }
+
+    void runAll() throws Exception {
+        String adversarial = adversarialLine();
+        byte[] realisticBytes = REALISTIC_LINE.getBytes(StandardCharsets.UTF_8);
+        byte[] adversarialBytes = adversarial.getBytes(StandardCharsets.UTF_8);
+        TrackEventDecoder decoder = new TrackEventDecoder();
+        TrackEvent event = new TrackEvent();
+
+        run("parseJSON realistic", () -> Main.SimpleJSONParser.parseJSON(REALISTIC_LINE));
+        run("parseJSON adversarial", () -> Main.SimpleJSONParser.parseJSON(adversarial));
+        run("decoder bytes realistic", () -> {
+            decoder.decode(realisticBytes, 0, realisticBytes.length, event);
+            return event;
+        });
+        run("decoder bytes adversarial", () -> {
+            decoder.decode(adversarialBytes, 0, adversarialBytes.length, event);
+            return event;
+        });
+        // What the feed's I/O thread does per record before the EDT: a pooled event, decoded and merged.
+        TrackEventPool eventPool = new TrackEventPool();
+        TrackState handOffState = new TrackState();
+        run("feed record hand-off realistic", () -> {
+            TrackEvent pooled = eventPool.acquire();
+            decoder.decode(realisticBytes, 0, realisticBytes.length, pooled);
+            handOffState.apply(pooled);
+            pooled.copyFrom(handOffState.getCurrent());
+            eventPool.release(pooled);
+            return pooled;
+        });
+
+        // The realistic line as a binary frame whose strings are already in the dictionary.
+        decoder.decode(realisticBytes, 0, realisticBytes.length, event);
+        BinaryTrackCodec.Encoder frameEncoder = new BinaryTrackCodec.Encoder();
+        BinaryTrackCodec.Decoder frameDecoder = new BinaryTrackCodec.Decoder();
+        byte[] defining = frameEncoder.encode(event, true);
+        byte[] frame = frameEncoder.encode(event, false);
+        int[] prefixSize = new int[1];
+        int definingLength = (int) BinaryTrackCodec.readFrameLength(defining, 0, defining.length, prefixSize);
+        frameDecoder.decode(defining, prefixSize[0], definingLength, new TrackEvent());
+        int frameLength = (int) BinaryTrackCodec.readFrameLength(frame, 0, frame.length, prefixSize);
+        int frameOffset = prefixSize[0];
+        TrackEvent frameEvent = new TrackEvent();
+        run("binary frame encode realistic", () -> frameEncoder.encode(event, false));
+        run("binary frame decode realistic", () -> {
+            frameDecoder.decode(frame, frameOffset, frameLength, frameEvent);
+            return frameEvent;
+        });
+
+        // Play/pause as a full line versus a delta, decoded and merged into the client's track state.
+        TrackServer.TrackStream stream = new TrackServer.TrackStream();
+        stream.startTrack("\"title\": \"Bohemian Rhapsody\", \"artist\": \"Queen\", \"length\": \"5:55\", "
+            + "\"image_path\": \"/tmp/artwork/bohemian_rhapsody.png\"", true);
+        TrackState trackState = new TrackState();
+        run("play toggle as full line + merge", () -> {
+            stream.togglePlaying();
+            byte[] line = stream.snapshot().getBytes(StandardCharsets.UTF_8);
+            decoder.decode(line, 0, line.length, event);
+            return trackState.apply(event);
+        });
+        trackState.reset();
+        run("play toggle as delta + merge", () -> {
+            byte[] line = stream.togglePlaying().getBytes(StandardCharsets.UTF_8);
+            decoder.decode(line, 0, line.length, event);
+            if (trackState.apply(event) == TrackState.Result.GAP) {
+                byte[] snapshot = stream.snapshot().getBytes(StandardCharsets.UTF_8);
+                decoder.decode(snapshot, 0, snapshot.length, event);
+                trackState.apply(event);
+            }
+            return trackState;
+        });
+
+        GlowTextLabel label = new GlowTextLabel(new Font("SansSerif", Font.BOLD, 32));
+        BufferedImage offscreen = new BufferedImage(500, 100, BufferedImage.TYPE_INT_ARGB);
+        String[] titles = {"Bohemian Rhapsody", "Stairway to Heaven", "Hotel California"};
+        int[] step = {0};
+        run("glow label toggle playing + paint", () -> {
+            label.setText(titles[0]);
+            label.setPlaying((++step[0] & 1) == 0);
+            paintOffscreen(label, offscreen);
+            return label;
+        });
+        run("glow label change text + paint", () -> {
+            label.setText(titles[++step[0] % titles.length]);
+            label.setPlaying(true);
+            paintOffscreen(label, offscreen);
+            return label;
+        });
+        // What a track change costs without a next_up prefetch: every title is new.
+        run("glow label change unseen text + paint", () -> {
+            label.setText("Upcoming track " + ++step[0]);
+            label.setPlaying(true);
+            paintOffscreen(label, offscreen);
+            return label;
+        });
+
+        TrackDisplayPanel panel = new TrackDisplayPanel(ArtworkCache.shared());
+        boolean[] playing = {false};
+        run("updateTextDisplayElements", () -> {
+            playing[0] = !playing[0];
+            panel.updateTextDisplayElements("Bohemian Rhapsody", "Queen", "5:55", playing[0]);
+            return panel;
+        });
+
+        // One pulse frame of a playing panel: only the glows and the progress bar's moved columns, or everything.
+        TrackDisplayPanel animated = playingPanel();
+        BufferedImage panelCanvas = new BufferedImage(500, 700, BufferedImage.TYPE_INT_ARGB);
+        DirtyRegions dirtyRegions = new DirtyRegions(animated);
+        RepaintManager.setCurrentManager(dirtyRegions);
+        long[] frameNanos = {System.nanoTime()};
+        run("animation frame dirty regions + paint", () -> {
+            animated.onAnimationFrame(frameNanos[0] += 33_333_333L);
+            dirtyRegions.paintInto(panelCanvas);
+            return panelCanvas;
+        });
+        run("animation frame whole panel + paint", () -> {
+            animated.onAnimationFrame(frameNanos[0] += 33_333_333L);
+            dirtyRegions.clear();
+            Graphics2D graphics = panelCanvas.createGraphics();
+            animated.paint(graphics);
+            graphics.dispose();
+            return panelCanvas;
+        });
+        RepaintManager.setCurrentManager(null);
+        if (filter == null || "animation CPU".contains(filter)) {
+            measureAnimationCpu(30);
+            measureAnimationCpu(60);
+        }
+
+        for (int size : new int[] {300, 1000, 2000, 4000}) {
+            File artwork = createArtwork(size);
+            run("artwork decode+scale " + size + "px", () ->
+                ArtworkCache.scaleTo(ArtworkCache.decodeSubsampled(artwork, ArtworkCache.DEFAULT_ARTWORK_SIZE),
+                    ArtworkCache.DEFAULT_ARTWORK_SIZE));
+        }
+        ArtworkCache cache = new ArtworkCache(ArtworkCache.DEFAULT_ARTWORK_SIZE, ArtworkCache.DEFAULT_MAX_BYTES, 1);
+        File cachedArtwork = createArtwork(1000);
+        Object loaded = new Object();
+        synchronized (loaded) {
+            cache.load(cachedArtwork.getPath(), image -> {
+                synchronized (loaded) {
+                    loaded.notifyAll();
+                }
+            });
+            loaded.wait(10_000);
+        }
+        run("artwork cache hit", () -> cache.peek(cachedArtwork.getPath()));
+    }
+
+    /**
+     * Runs a playing panel on its own animation clock for a few seconds,
+     * painting the dirty regions after every frame as Swing would, and
+     * prints the process CPU time that took as a share of one core.
+     */
+    private void measureAnimationCpu(int fps) throws Exception {
+        com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long measureMillis = Math.max(1000, iterations * iterationMillis);
+        AnimationClock clock = new AnimationClock(fps);
+        BufferedImage canvas = new BufferedImage(500, 700, BufferedImage.TYPE_INT_ARGB);
+        AnimationClock.Animation[] animations = new AnimationClock.Animation[2];
+        SwingUtilities.invokeAndWait(() -> {
+            TrackDisplayPanel panel = playingPanel();
+            DirtyRegions dirtyRegions = new DirtyRegions(panel);
+            RepaintManager.setCurrentManager(dirtyRegions);
+            animations[0] = panel::onAnimationFrame;
+            // Started second, and frames run in start order, so it paints what the panel's frame just changed.
+            animations[1] = frameNanos -> dirtyRegions.paintInto(canvas);
+            clock.start(animations[0]);
+            clock.start(animations[1]);
+        });
+        Thread.sleep(warmupMillis);
+        long framesBefore = clock.getFrameCount();
+        long cpuBefore = os.getProcessCpuTime();
+        long start = System.nanoTime();
+        Thread.sleep(measureMillis);
+        long cpuNanos = os.getProcessCpuTime() - cpuBefore;
+        long elapsedNanos = System.nanoTime() - start;
+        long frames = clock.getFrameCount() - framesBefore;
+        SwingUtilities.invokeAndWait(() -> {
+            clock.stop(animations[0]);
+            clock.stop(animations[1]);
+            RepaintManager.setCurrentManager(null);
+        });
+        System.out.println(String.format(Locale.ROOT, "%-44s %14.1f frames/s %8.2f%% of a core",
+            "animation CPU at " + fps + " fps", frames * 1e9 / elapsedNanos, 100.0 * cpuNanos / elapsedNanos));
+    }
+
+    // --- Baseline comparison ------------------------------------------------
+
+    void writeResults(String file) throws IOException {
+        StringBuilder report = new StringBuilder();
+        report.append("# java ").append(System.getProperty("java.version"))
+            .append(", ").append(System.getProperty("os.name")).append(' ').append(System.getProperty("os.arch"))
+            .append(", ").append(Runtime.getRuntime().availableProcessors()).append(" cpus\n");
+        for (Result result : results) {
+            report.append(result.format()).append('\n');
+        }
+        Files.write(Paths.get(file), report.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final Pattern RESULT_LINE =
+        Pattern.compile("^(.*?)\\s+([\\d.]+) ops/s\\s+[\\d.]+ ns/op\\s+([\\d.]+) B/op$");
+
+    static Map<String, Result> readResults(String file) throws IOException {
+        Map<String, Result> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            Matcher matcher = RESULT_LINE.matcher(line.trim());
+            if (matcher.matches()) {
+                String name = matcher.group(1);
+                baseline.put(name, new Result(name, Double.parseDouble(matcher.group(2)), Double.parseDouble(matcher.group(3))));
+            }
+        }
+        return baseline;
+    }
+
+    /** Prints the change against a baseline and returns the number of regressions. */
+    int compareWith(String file) throws IOException {
+        Map<String, Result> baseline = readResults(file);
+        int regressions = 0;
+        System.out.println("\nComparison with " + file + " (regression threshold "
+            + (int) (REGRESSION_THRESHOLD * 100) + "%):");
+        for (Result result : results) {
+            Result before = baseline.get(result.name);
+            if (before == null) {
+                System.out.println(String.format(Locale.ROOT, "%-44s new", result.name));
+                continue;
+            }
+            double throughputChange = result.opsPerSecond / before.opsPerSecond - 1.0;
+            double allocationChange = result.bytesPerOp - before.bytesPerOp;
+            boolean regressed = throughputChange < -REGRESSION_THRESHOLD
+                || allocationChange > Math.max(16.0, before.bytesPerOp * REGRESSION_THRESHOLD);
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format(Locale.ROOT, "%-44s %+7.1f%% ops/s %+10.1f B/op%s",
+                result.name, throughputChange * 100, allocationChange, regressed ? "  REGRESSION" : ""));
+        }
+        return regressions;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean quick = false;
+        String filter = null;
+        String output = null;
+        String compare = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--quick":
+                    quick = true;
+                    break;
+                case "--filter":
+                    filter = args[++i];
+                    break;
+                case "--output":
+                    output = args[++i];
+                    break;
+                case "--compare":
+                    compare = args[++i];
+                    break;
+                default:
+                    System.err.println("Usage: java Benchmark [--quick] [--filter TEXT] [--output FILE] [--compare FILE]");
+                    System.exit(2);
+            }
+        }
+
+        Benchmark benchmark = quick ? new Benchmark(200, 200, 3, filter) : new Benchmark(2000, 1000, 5, filter);
+        System.out.println("Track Display Application - Benchmarks");
+        System.out.println("======================================");
+        benchmark.runAll();
+
+        if (output != null) {
+            benchmark.writeResults(output);
+        }
+        if (compare != null && benchmark.compareWith(compare) > 0) {
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,338 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of feed messages, negotiated per connection as an
+ * alternative to JSON lines.
+ *
+ * A display asks for it by sending the single byte {@link #HANDSHAKE_V1}
+ * when it connects. A server that understands it echoes the byte at a line
+ * boundary and from then on sends frames instead of lines; one that does not
+ * ignores it, and the connection stays on JSON. Requests from the display
+ * (such as {@code snapshot_request}) remain JSON lines in both modes.
+ *
+ * A frame is a varint payload length followed by fields. Each field starts
+ * with a varint tag, {@code field << 3 | kind}, so readers can skip fields
+ * they do not know. Strings are either defined inline together with a
+ * dictionary id, referenced by a previously defined id, sent as a one-off
+ * literal, or null. Dictionaries are per connection: a frame carrying
+ * {@link #FIELD_RESET_DICTIONARY} starts a fresh one. A reference to an id
+ * the reader never saw (its definition was dropped by a slow-consumer queue)
+ * fails the frame, and the reader should ask for a snapshot, which always
+ * resets the dictionary.
+ *
+ * A next_up message lists its upcoming tracks after its own fields: each
+ * {@link #FIELD_UPCOMING} starts a new track, and the string fields after it
+ * belong to that track.
+ */
+public final class BinaryTrackCodec {
+    /** Handshake byte for version 1; never the first byte of a JSON line. */
+    public static final byte HANDSHAKE_V1 = (byte) 0xB1;
+    public static final int MAX_DICTIONARY_ENTRIES = 4096;
+
+    static final int KIND_VARINT = 0;
+    static final int KIND_STRING_DEFINE = 1;
+    static final int KIND_STRING_REF = 2;
+    static final int KIND_STRING_LITERAL = 3;
+    static final int KIND_NULL = 4;
+
+    static final int FIELD_RESET_DICTIONARY = 1;
+    static final int FIELD_TYPE = 2;
+    static final int FIELD_TRACK_ID = 3;
+    static final int FIELD_SEQ = 4;
+    static final int FIELD_TITLE = 5;
+    static final int FIELD_ARTIST = 6;
+    static final int FIELD_LENGTH = 7;
+    static final int FIELD_IMAGE_PATH = 8;
+    static final int FIELD_PLAYING = 9;
+    static final int FIELD_SENT_AT = 10;
+    static final int FIELD_UPCOMING = 11;
+
+    private static final TrackEvent.Type[] TYPES = TrackEvent.Type.values();
+
+    private BinaryTrackCodec() {
+    }
+
+    /**
+     * Encodes events into frames for one connection, assigning dictionary ids
+     * to strings the first time they are sent. Not thread-safe.
+     */
+    public static final class Encoder {
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private byte[] buffer = new byte[256];
+        private int position;
+
+        /**
+         * Returns a complete frame, including its length prefix, for
+         * {@code event}. Only the display fields the event carries are
+         * written. With {@code resetDictionary} the frame starts a new
+         * dictionary and defines every string it uses, so it can be decoded
+         * without any earlier frame.
+         */
+        public byte[] encode(TrackEvent event, boolean resetDictionary) {
+            position = 0;
+            if (resetDictionary) {
+                dictionary.clear();
+                writeVarint(tag(FIELD_RESET_DICTIONARY, KIND_VARINT));
+                writeVarint(1);
+            }
+            writeVarint(tag(FIELD_TYPE, KIND_VARINT));
+            writeVarint(event.getType().ordinal());
+            if (event.getTrackId() != null) {
+                writeString(FIELD_TRACK_ID, event.getTrackId());
+            }
+            if (event.getSequence() != 0) {
+                writeVarint(tag(FIELD_SEQ, KIND_VARINT));
+                writeVarint(event.getSequence());
+            }
+            int present = event.getPresentFields();
+            if ((present & TrackEvent.TITLE) != 0) writeString(FIELD_TITLE, event.getTitle());
+            if ((present & TrackEvent.ARTIST) != 0) writeString(FIELD_ARTIST, event.getArtist());
+            if ((present & TrackEvent.LENGTH) != 0) writeString(FIELD_LENGTH, event.getLength());
+            if ((present & TrackEvent.IMAGE_PATH) != 0) writeString(FIELD_IMAGE_PATH, event.getImagePath());
+            if ((present & TrackEvent.PLAYING) != 0) {
+                writeVarint(tag(FIELD_PLAYING, KIND_VARINT));
+                writeVarint(event.isPlaying() ? 1 : 0);
+            }
+            if (event.getSentAtMillis() > 0) {
+                writeVarint(tag(FIELD_SENT_AT, KIND_VARINT));
+                writeVarint(event.getSentAtMillis());
+            }
+            for (TrackEvent track : event.getUpcoming()) {
+                writeVarint(tag(FIELD_UPCOMING, KIND_VARINT));
+                writeVarint(0);
+                if (track.getTrackId() != null) writeString(FIELD_TRACK_ID, track.getTrackId());
+                writeString(FIELD_TITLE, track.getTitle());
+                writeString(FIELD_ARTIST, track.getArtist());
+                writeString(FIELD_LENGTH, track.getLength());
+                writeString(FIELD_IMAGE_PATH, track.getImagePath());
+            }
+
+            int payloadLength = position;
+            byte[] frame = new byte[varintSize(payloadLength) + payloadLength];
+            int at = putVarint(frame, 0, payloadLength);
+            System.arraycopy(buffer, 0, frame, at, payloadLength);
+            return frame;
+        }
+
+        private void writeString(int field, String value) {
+            if (value == null) {
+                writeVarint(tag(field, KIND_NULL));
+                return;
+            }
+            Integer id = dictionary.get(value);
+            if (id != null) {
+                writeVarint(tag(field, KIND_STRING_REF));
+                writeVarint(id);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            if (dictionary.size() < MAX_DICTIONARY_ENTRIES) {
+                int newId = dictionary.size();
+                dictionary.put(value, newId);
+                writeVarint(tag(field, KIND_STRING_DEFINE));
+                writeVarint(newId);
+            } else {
+                writeVarint(tag(field, KIND_STRING_LITERAL));
+            }
+            writeVarint(utf8.length);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, buffer, position, utf8.length);
+            position += utf8.length;
+        }
+
+        private void writeVarint(long value) {
+            ensureCapacity(10);
+            position = putVarint(buffer, position, value);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    /**
+     * Decodes frame payloads from one connection into {@link TrackEvent}s.
+     * Strings are created once, when defined, and reused for every later
+     * reference. Not thread-safe.
+     */
+    public static final class Decoder {
+        private final String[] dictionary = new String[MAX_DICTIONARY_ENTRIES];
+        private byte[] input;
+        private int position;
+        private int limit;
+
+        /** Forgets every dictionary entry, e.g. when the connection is re-established. */
+        public void reset() {
+            Arrays.fill(dictionary, null);
+        }
+
+        /**
+         * Decodes one frame payload (without its length prefix) into
+         * {@code target}.
+         *
+         * @return false if the payload is truncated, malformed, or refers to
+         *     a dictionary id this decoder has not seen
+         */
+        public boolean decode(byte[] buffer, int offset, int length, TrackEvent target) {
+            target.clear();
+            input = buffer;
+            position = offset;
+            limit = offset + length;
+            try {
+                // Fields go to the message itself until an upcoming track starts.
+                TrackEvent fields = target;
+                while (position < limit) {
+                    long tag = readVarint();
+                    int field = (int) (tag >>> 3);
+                    if (field == FIELD_UPCOMING && (tag & 7) == KIND_VARINT) {
+                        if (readVarint() < 0) {
+                            return false;
+                        }
+                        fields = new TrackEvent();
+                        target.addUpcoming(fields);
+                    } else if (tag < 0 || !readField(field, (int) (tag & 7), fields)) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                input = null;
+            }
+        }
+
+        private boolean readField(int field, int kind, TrackEvent target) {
+            if (kind == KIND_VARINT) {
+                long value = readVarint();
+                if (value < 0) {
+                    return false;
+                }
+                switch (field) {
+                    case FIELD_RESET_DICTIONARY:
+                        reset();
+                        break;
+                    case FIELD_TYPE:
+                        target.setType(value < TYPES.length ? TYPES[(int) value] : TrackEvent.Type.UNKNOWN);
+                        break;
+                    case FIELD_SEQ:
+                        target.setSequence(value);
+                        break;
+                    case FIELD_PLAYING:
+                        target.setPlaying(value != 0);
+                        break;
+                    case FIELD_SENT_AT:
+                        target.setSentAtMillis(value);
+                        break;
+                    default:
+                        break;
+                }
+                return true;
+            }
+            if (kind > KIND_NULL) {
+                return false;
+            }
+            String value = null;
+            if (kind == KIND_STRING_REF) {
+                long id = readVarint();
+                if (id < 0 || id >= MAX_DICTIONARY_ENTRIES || (value = dictionary[(int) id]) == null) {
+                    return false;
+                }
+            } else if (kind != KIND_NULL) {
+                long id = kind == KIND_STRING_DEFINE ? readVarint() : 0;
+                long byteCount = readVarint();
+                if (id < 0 || id >= MAX_DICTIONARY_ENTRIES || byteCount < 0 || byteCount > limit - position) {
+                    return false;
+                }
+                value = new String(input, position, (int) byteCount, StandardCharsets.UTF_8);
+                position += (int) byteCount;
+                if (kind == KIND_STRING_DEFINE) {
+                    dictionary[(int) id] = value;
+                }
+            }
+            switch (field) {
+                case FIELD_TRACK_ID:
+                    target.setTrackId(value);
+                    break;
+                case FIELD_TITLE:
+                    target.setTitle(value);
+                    break;
+                case FIELD_ARTIST:
+                    target.setArtist(value);
+                    break;
+                case FIELD_LENGTH:
+                    target.setLength(value);
+                    break;
+                case FIELD_IMAGE_PATH:
+                    target.setImagePath(value);
+                    break;
+                default:
+                    break;
+            }
+            return true;
+        }
+
+        /** Reads an unsigned varint, or returns -1 if it is truncated or too long. */
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    return -1;
+                }
+                byte b = input[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            return -1;
+        }
+    }
+
+    static int tag(int field, int kind) {
+        return field << 3 | kind;
+    }
+
+    static int putVarint(byte[] target, int at, long value) {
+        while ((value & ~0x7FL) != 0) {
+            target[at++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[at++] = (byte) value;
+        return at;
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Reads a frame's length prefix from {@code buffer[offset, limit)}.
+     * Returns the payload length and stores the prefix size in
+     * {@code prefixSize[0]}, or returns -1 if more bytes are needed and -2 if
+     * the prefix is malformed.
+     */
+    static long readFrameLength(byte[] buffer, int offset, int limit, int[] prefixSize) {
+        long value = 0;
+        for (int i = 0; i < 5; i++) {
+            if (offset + i >= limit) {
+                return -1;
+            }
+            byte b = buffer[offset + i];
+            value |= (long) (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                prefixSize[0] = i + 1;
+                return value;
+            }
+        }
+        return -2;
+    }
+}
@@ -0,0 +1,219 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per-stage latency histograms and counters for one display.
+ *
+ * Stages follow an event from the socket to the screen: parse (receive to
+ * decoded), queue wait (decoded to the start of the EDT render), paint (EDT
+ * render start to paint completed) and end to end (receive to paint
+ * completed). When the server stamps {@code sent_at} into events the one-way
+ * latency from send to paint is recorded too. Recording never allocates.
+ */
+public class DisplayMetrics implements DisplayMetricsMBean {
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram queueWaitLatency = new LatencyHistogram();
+    private final LatencyHistogram paintLatency = new LatencyHistogram();
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+    private final LatencyHistogram oneWayLatency = new LatencyHistogram();
+    private final AtomicLong parseFailures = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong sequenceGaps = new AtomicLong();
+    private final AtomicLong trackChanges = new AtomicLong();
+    private final AtomicLong prefetchedTrackChanges = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong duplicateEvents = new AtomicLong();
+    private volatile long firstMeaningfulPaintMillis = -1;
+    private final UpdateCoalescer<?> coalescer;
+    private HttpServer httpServer;
+
+    public DisplayMetrics(UpdateCoalescer<?> coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    public void recordParsed(TrackEvent event) {
+        parseLatency.record(event.getParsedNanos() - event.getReceivedNanos());
+    }
+
+    public void recordRenderStarted(TrackEvent event, long renderStartNanos) {
+        if (event.getParsedNanos() != 0) {
+            queueWaitLatency.record(renderStartNanos - event.getParsedNanos());
+        }
+    }
+
+    public void recordPainted(long receivedNanos, long renderStartNanos, long sentAtMillis, long paintedNanos) {
+        paintLatency.record(paintedNanos - renderStartNanos);
+        if (receivedNanos != 0) {
+            endToEndLatency.record(paintedNanos - receivedNanos);
+        }
+        if (sentAtMillis > 0) {
+            long oneWayMillis = System.currentTimeMillis() - sentAtMillis;
+            if (oneWayMillis >= 0) {
+                oneWayLatency.record(TimeUnit.MILLISECONDS.toNanos(oneWayMillis));
+            }
+        }
+    }
+
+    /** Records the time from JVM start to the first paint showing a track, and returns it in milliseconds. */
+    public long recordFirstMeaningfulPaint() {
+        long paintedAtMillis = System.currentTimeMillis();
+        // Read the clock first: the management classes may still need loading here.
+        firstMeaningfulPaintMillis = paintedAtMillis - ManagementFactory.getRuntimeMXBean().getStartTime();
+        return firstMeaningfulPaintMillis;
+    }
+
+    /** Counts a rendered track change, and whether everything it showed had been prefetched. */
+    public void recordTrackChange(boolean prefetched) {
+        trackChanges.incrementAndGet();
+        if (prefetched) {
+            prefetchedTrackChanges.incrementAndGet();
+        }
+    }
+
+    public void incrementParseFailures() { parseFailures.incrementAndGet(); }
+    public void incrementReconnects() { reconnects.incrementAndGet(); }
+    public void incrementDroppedRecords() { droppedRecords.incrementAndGet(); }
+    public void incrementSequenceGaps() { sequenceGaps.incrementAndGet(); }
+    public void incrementFailovers() { failovers.incrementAndGet(); }
+    public void incrementDuplicateEvents() { duplicateEvents.incrementAndGet(); }
+
+    @Override public long getReceivedEvents() { return coalescer.getReceivedCount(); }
+    @Override public long getRenderedEvents() { return coalescer.getRenderedCount(); }
+    @Override public long getDroppedEvents() { return coalescer.getCoalescedCount() + droppedRecords.get(); }
+    @Override public long getParseFailures() { return parseFailures.get(); }
+    @Override public long getReconnects() { return reconnects.get(); }
+    @Override public long getSequenceGaps() { return sequenceGaps.get(); }
+    @Override public long getFirstMeaningfulPaintMillis() { return firstMeaningfulPaintMillis; }
+    @Override public long getTrackChanges() { return trackChanges.get(); }
+    @Override public long getPrefetchedTrackChanges() { return prefetchedTrackChanges.get(); }
+    @Override public long getFailovers() { return failovers.get(); }
+    @Override public long getDuplicateEvents() { return duplicateEvents.get(); }
+
+    @Override public long getParseP99Micros() { return micros(parseLatency.getValueAtQuantile(0.99)); }
+    @Override public long getQueueWaitP99Micros() { return micros(queueWaitLatency.getValueAtQuantile(0.99)); }
+    @Override public long getPaintP99Micros() { return micros(paintLatency.getValueAtQuantile(0.99)); }
+    @Override public long getEndToEndP50Micros() { return micros(endToEndLatency.getValueAtQuantile(0.50)); }
+    @Override public long getEndToEndP99Micros() { return micros(endToEndLatency.getValueAtQuantile(0.99)); }
+    @Override public long getEndToEndMaxMicros() { return micros(endToEndLatency.getMaxNanos()); }
+    @Override public long getOneWayP99Micros() { return micros(oneWayLatency.getValueAtQuantile(0.99)); }
+
+    public LatencyHistogram getEndToEndLatency() { return endToEndLatency; }
+
+    @Override
+    public void resetHistograms() {
+        parseLatency.reset();
+        queueWaitLatency.reset();
+        paintLatency.reset();
+        endToEndLatency.reset();
+        oneWayLatency.reset();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /** Registers this instance with the platform MBean server under {@code name}. */
+    public void registerMBean(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+        } catch (JMException registrationException) {
+            System.err.println("Could not register metrics MBean: " + registrationException.getMessage());
+        }
+    }
+
+    /**
+     * Serves {@link #renderPrometheusText()} at {@code /metrics} on the
+     * loopback interface using the JDK's built-in HTTP server.
+     */
+    public synchronized void startHttpEndpoint(int port) throws IOException {
+        if (httpServer != null) {
+            return;
+        }
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = renderPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        });
+        httpServer.start();
+    }
+
+    public synchronized void stopHttpEndpoint() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+    }
+
+    public synchronized int getHttpPort() {
+        return httpServer != null ? httpServer.getAddress().getPort() : -1;
+    }
+
+    /** Renders every metric in the Prometheus text exposition format. */
+    public String renderPrometheusText() {
+        StringBuilder text = new StringBuilder(2048);
+        text.append("# HELP trackdisplay_stage_latency_seconds Latency of each display pipeline stage.\n");
+        text.append("# TYPE trackdisplay_stage_latency_seconds summary\n");
+        appendSummary(text, "parse", parseLatency);
+        appendSummary(text, "queue_wait", queueWaitLatency);
+        appendSummary(text, "paint", paintLatency);
+        appendSummary(text, "end_to_end", endToEndLatency);
+        appendSummary(text, "one_way", oneWayLatency);
+        appendCounter(text, "trackdisplay_events_received_total", "Events handed to the display.", getReceivedEvents());
+        appendCounter(text, "trackdisplay_events_rendered_total", "Events rendered on the EDT.", getRenderedEvents());
+        appendCounter(text, "trackdisplay_events_dropped_total", "Events coalesced away or discarded.", getDroppedEvents());
+        appendCounter(text, "trackdisplay_parse_failures_total", "Feed records that failed to decode.", getParseFailures());
+        appendCounter(text, "trackdisplay_reconnects_total", "Feed reconnections after the first connect.", getReconnects());
+        appendCounter(text, "trackdisplay_sequence_gaps_total", "Delta gaps that triggered a snapshot request.",
+            getSequenceGaps());
+        appendCounter(text, "trackdisplay_track_changes_total", "Track changes rendered.", getTrackChanges());
+        appendCounter(text, "trackdisplay_track_changes_prefetched_total",
+            "Track changes whose artwork and text were prefetched from a next_up announcement.",
+            getPrefetchedTrackChanges());
+        appendCounter(text, "trackdisplay_failovers_total", "Switches of the forwarding feed endpoint.", getFailovers());
+        appendCounter(text, "trackdisplay_duplicate_events_total",
+            "Events dropped because another feed endpoint delivered them first.", getDuplicateEvents());
+        if (firstMeaningfulPaintMillis >= 0) {
+            text.append("# HELP trackdisplay_first_meaningful_paint_seconds Time from JVM start to the first paint showing a track.\n");
+            text.append("# TYPE trackdisplay_first_meaningful_paint_seconds gauge\n");
+            text.append("trackdisplay_first_meaningful_paint_seconds ")
+                .append(seconds(TimeUnit.MILLISECONDS.toNanos(firstMeaningfulPaintMillis))).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void appendSummary(StringBuilder text, String stage, LatencyHistogram histogram) {
+        for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            text.append("trackdisplay_stage_latency_seconds{stage=\"").append(stage)
+                .append("\",quantile=\"").append(quantile).append("\"} ")
+                .append(seconds(histogram.getValueAtQuantile(quantile))).append('\n');
+        }
+        text.append("trackdisplay_stage_latency_seconds_sum{stage=\"").append(stage).append("\"} ")
+            .append(seconds(histogram.getTotalNanos())).append('\n');
+        text.append("trackdisplay_stage_latency_seconds_count{stage=\"").append(stage).append("\"} ")
+            .append(histogram.getCount()).append('\n');
+    }
+
+    private static void appendCounter(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * JMX view of {@link DisplayMetrics}. Latencies are in microseconds.
+ */
+public interface DisplayMetricsMBean {
+    long getReceivedEvents();
+    long getRenderedEvents();
+    long getDroppedEvents();
+    long getParseFailures();
+    long getReconnects();
+    long getSequenceGaps();
+    /** Milliseconds from JVM start to the first paint showing a track, or -1 before it. */
+    long getFirstMeaningfulPaintMillis();
+    long getTrackChanges();
+    /** Track changes served entirely from what a next_up announcement prefetched. */
+    long getPrefetchedTrackChanges();
+    /** Switches from one redundant feed endpoint to another. */
+    long getFailovers();
+    /** Events another feed endpoint had already delivered. */
+    long getDuplicateEvents();
+
+    long getParseP99Micros();
+    long getQueueWaitP99Micros();
+    long getPaintP99Micros();
+    long getEndToEndP50Micros();
+    long getEndToEndP99Micros();
+    long getEndToEndMaxMicros();
+    long getOneWayP99Micros();
+
+    void resetHistograms();
+}
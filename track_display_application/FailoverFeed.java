@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Feeds one {@link TrackDisplayPanel} from several redundant endpoints of
+ * the same track feed, listed most preferred first.
+ *
+ * Every endpoint gets its own connection on one {@link FeedClient}, each
+ * with its own {@link TrackFeedListener} and track state, so the standbys
+ * stay warm: connected, decoded and in sync. Each connection asks its
+ * server for a heartbeat after every half interval of silence, and one
+ * that hears nothing for a whole interval is dropped and retried, so a
+ * silent endpoint is failed over from within one interval. Servers that do
+ * not know the request send no heartbeats; against those, a quiet feed is
+ * dropped every interval too. Normally only the most preferred live
+ * endpoint reaches the panel. When it is lost the next live one takes over
+ * straight away with the state it already holds, and a more preferred
+ * endpoint takes back over with its first update after resyncing. With
+ * hedging every endpoint forwards, and whichever delivers an update first
+ * wins.
+ *
+ * The endpoints are expected to relay one upstream and so to share
+ * sequence numbers: an update at or below the last forwarded sequence is a
+ * duplicate and is dropped. A full message more than
+ * {@link #MAX_SEQUENCE_SKEW} behind is taken to be a restarted stream and
+ * is forwarded. That takes servers run with {@code --deltas}: unsequenced
+ * updates cannot be told apart from duplicates, so they are forwarded as
+ * they come, with a warning, and a hedged feed stops hedging and forwards
+ * from the preferred endpoint only. Everything except {@link #open} runs on
+ * the feed client's I/O thread.
+ */
+public class FailoverFeed {
+    /** How far a full message may fall behind before it is a restart rather than a duplicate. */
+    public static final long MAX_SEQUENCE_SKEW = 1000;
+    public static final long DEFAULT_HEARTBEAT_MILLIS = 1000;
+
+    /** One {@code host:port} of the feed. */
+    public static final class Endpoint {
+        final String host;
+        final int port;
+
+        public Endpoint(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        /** Parses {@code host[:port][,host[:port]...]}; a missing port is {@code defaultPort}. */
+        public static List<Endpoint> parseList(String list, int defaultPort) {
+            List<Endpoint> endpoints = new ArrayList<>();
+            for (String entry : list.split(",")) {
+                entry = entry.trim();
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                int colon = entry.lastIndexOf(':');
+                endpoints.add(colon < 0
+                    ? new Endpoint(entry, defaultPort)
+                    : new Endpoint(entry.substring(0, colon), Integer.parseInt(entry.substring(colon + 1).trim())));
+            }
+            if (endpoints.isEmpty()) {
+                throw new IllegalArgumentException("No feed endpoints in \"" + list + "\"");
+            }
+            return endpoints;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    private final String name;
+    private final TrackDisplayPanel panel;
+    private final DisplayMetrics displayMetrics;
+    private final TrackEventPool eventPool;
+    private final boolean hedged;
+    private final int livenessTimeoutMillis;
+    private final String heartbeatRequest;
+    private List<TrackFeedListener> sources = Collections.emptyList();
+    // I/O-thread confined.
+    private TrackFeedListener forwarding;
+    private long forwardedSequence;
+    private boolean unsequenced;
+
+    /**
+     * {@code heartbeatMillis} is the longest a connection may go without
+     * hearing from its server before the next endpoint takes over; 0 asks
+     * for no heartbeats and leaves silent connections to the read timeout
+     * {@link #open} is configured with.
+     */
+    public FailoverFeed(String name, TrackDisplayPanel panel, boolean hedged, long heartbeatMillis) {
+        this.name = name;
+        this.panel = panel;
+        this.displayMetrics = panel.getDisplayMetrics();
+        this.eventPool = panel.getEventPool();
+        this.hedged = hedged;
+        this.livenessTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, Math.max(0, heartbeatMillis));
+        this.heartbeatRequest = heartbeatMillis > 0 ? TrackServer.heartbeatRequest(Math.max(1, heartbeatMillis / 2)) : null;
+    }
+
+    /**
+     * Opens a connection to each endpoint on {@code client}, running
+     * {@code configure} on each before the heartbeat-based read timeout is
+     * applied. Can only be called once.
+     */
+    public synchronized List<FeedClient.FeedConnection> open(FeedClient client, List<Endpoint> endpoints,
+            Consumer<FeedClient.FeedConnection> configure) throws IOException {
+        if (!sources.isEmpty()) {
+            throw new IllegalStateException("Failover feed is already open");
+        }
+        // One decoder for every endpoint: they all run on the client's I/O thread.
+        TrackEventDecoder eventDecoder = new TrackEventDecoder();
+        List<TrackFeedListener> listeners = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            listeners.add(new TrackFeedListener(name + " [" + endpoint + "]", panel, eventDecoder, this));
+        }
+        // Complete before the first connection can deliver anything.
+        sources = Collections.unmodifiableList(listeners);
+        List<FeedClient.FeedConnection> connections = new ArrayList<>(endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get(i);
+            connections.add(client.open(endpoint.host, endpoint.port, listeners.get(i), connection -> {
+                configure.accept(connection);
+                if (livenessTimeoutMillis > 0) {
+                    connection.setReadTimeoutMillis(livenessTimeoutMillis);
+                }
+            }));
+        }
+        return connections;
+    }
+
+    /**
+     * Decides whether an update {@code source} just applied to its own state
+     * goes on to the panel, switching endpoints if {@code source} should
+     * take over.
+     */
+    boolean accept(TrackFeedListener source, TrackEvent update) {
+        long sequence = source.getTrackState().getCurrent().getSequence();
+        if (sequence == 0 && !unsequenced) {
+            unsequenced = true;
+            System.err.println("⚠️ " + name + ": endpoints send no sequence numbers (run the servers with --deltas); "
+                + (hedged ? "duplicates cannot be dropped, forwarding from one endpoint only" : "duplicates cannot be dropped"));
+        }
+        if (isHedging()) {
+            forwarding = source;
+        } else if (source != forwarding) {
+            if (forwarding != null && forwarding.isLive() && sources.indexOf(source) > sources.indexOf(forwarding)) {
+                return false;
+            }
+            switchTo(source);
+        }
+        return isNew(update, sequence);
+    }
+
+    /** Asks the server on a new connection for heartbeats, if there is a heartbeat interval. */
+    void onConnected(FeedClient.FeedConnection connection) {
+        if (heartbeatRequest != null) {
+            connection.send(heartbeatRequest);
+        }
+    }
+
+    /** True if {@code source} is the endpoint whose announcements should be acted on. */
+    boolean isForwarding(TrackFeedListener source) {
+        return source == forwarding;
+    }
+
+    /** Fails over to the most preferred live endpoint if {@code source} was the one forwarding. */
+    void onDisconnected(TrackFeedListener source) {
+        if (isHedging() || source != forwarding) {
+            return;
+        }
+        for (TrackFeedListener candidate : sources) {
+            if (candidate.isLive()) {
+                switchTo(candidate);
+                TrackEvent current = candidate.getTrackState().getCurrent();
+                if (isNew(current, current.getSequence())) {
+                    TrackEvent trackEvent = eventPool.acquire();
+                    trackEvent.copyFrom(current);
+                    panel.updateTrackDisplayInformation(trackEvent);
+                }
+                return;
+            }
+        }
+    }
+
+    private void switchTo(TrackFeedListener source) {
+        if (forwarding != null) {
+            displayMetrics.incrementFailovers();
+            System.out.println("🔀 " + name + ": switching to " + source.getName());
+        }
+        forwarding = source;
+    }
+
+    private boolean isNew(TrackEvent update, long sequence) {
+        if (sequence == 0 || sequence > forwardedSequence
+                || (update.getType() == TrackEvent.Type.FULL && forwardedSequence - sequence > MAX_SEQUENCE_SKEW)) {
+            forwardedSequence = sequence;
+            return true;
+        }
+        displayMetrics.incrementDuplicateEvents();
+        return false;
+    }
+
+    private boolean isHedging() {
+        return hedged && !unsequenced;
+    }
+
+    public boolean isHedged() { return hedged; }
+    public int getLivenessTimeoutMillis() { return livenessTimeoutMillis; }
+}
@@ -0,0 +1,609 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking client for newline-delimited feeds.
+ *
+ * One I/O thread drives every connection opened on the client through a
+ * single {@link Selector}. Records are framed straight out of a shared direct
+ * read buffer and handed to the connection's {@link FeedListener} on the I/O
+ * thread. Lost connections are retried with jittered exponential backoff;
+ * after a clean disconnect from a connection that was delivering records the
+ * first retry is immediate. Connections can also send short newline-terminated
+ * records back upstream with {@link FeedConnection#send(String)}. Host names
+ * are looked up on a small resolver pool shared by every client, so a slow
+ * DNS server holds up only the connection waiting for it, not the I/O
+ * thread; the connect timeout covers the lookup too.
+ *
+ * A connection may offer a binary handshake byte on connect
+ * ({@link FeedConnection#setBinaryHandshake(byte)}). If the server echoes it
+ * as the first byte it sends, the rest of the stream is read as varint
+ * length-prefixed frames instead of lines; otherwise it stays line-framed.
+ */
+public class FeedClient {
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 2000;
+    public static final int DEFAULT_INITIAL_BACKOFF_MILLIS = 50;
+    public static final int DEFAULT_MAX_BACKOFF_MILLIS = 5000;
+    public static final int MAX_RECORD_BYTES = 1024 * 1024;
+
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final long STOP_JOIN_MILLIS = 1000;
+    private static final int RESOLVER_THREADS = 2;
+
+    private static final ThreadPoolExecutor RESOLVER = createResolver();
+
+    /** Receives framed records and connection state changes on the I/O thread. */
+    public interface FeedListener {
+        /**
+         * Called with one record: a line without its terminator, or a frame
+         * payload without its length prefix once the connection is binary.
+         * The buffer is reused after return.
+         */
+        void onRecord(FeedConnection connection, byte[] buffer, int offset, int length);
+
+        default void onConnected(FeedConnection connection) { }
+
+        /**
+         * Called when a record longer than {@link #MAX_RECORD_BYTES} is
+         * discarded, whether it was still arriving or completed in the read
+         * that took it over the limit.
+         */
+        default void onRecordDiscarded(FeedConnection connection) { }
+
+        /** Called when an established or pending connection is lost; {@code cause} is null on clean EOF. */
+        default void onDisconnected(FeedConnection connection, IOException cause) { }
+    }
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+    private final List<FeedConnection> connections = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Runnable> pendingCommands = new ConcurrentLinkedQueue<>();
+    private final String threadName;
+    private Selector selector;
+    private Thread ioThread;
+    private volatile boolean running;
+    private boolean stopped;
+
+    public FeedClient() {
+        this("feed-client");
+    }
+
+    public FeedClient(String threadName) {
+        this.threadName = threadName;
+    }
+
+    private static ThreadPoolExecutor createResolver() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "feed-client-resolver");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Starts the I/O thread if needed and begins connecting to
+     * {@code host:port}. Settings changed on the returned connection apply
+     * from the next connection attempt, which may be after the first one;
+     * use {@link #open(String, int, FeedListener, Consumer)} for settings the
+     * first connection needs. A stopped client cannot be reused.
+     */
+    public FeedConnection open(String host, int port, FeedListener listener) throws IOException {
+        return open(host, port, listener, connection -> { });
+    }
+
+    /**
+     * Like {@link #open(String, int, FeedListener)}, but runs {@code configure}
+     * on the connection before it is handed to the I/O thread, so timeouts
+     * and the binary handshake already apply to the first attempt.
+     */
+    public synchronized FeedConnection open(String host, int port, FeedListener listener,
+            Consumer<FeedConnection> configure) throws IOException {
+        if (stopped) {
+            throw new IllegalStateException("Feed client has been stopped");
+        }
+        if (!running) {
+            selector = Selector.open();
+            running = true;
+            ioThread = new Thread(this::runLoop, threadName);
+            ioThread.setDaemon(true);
+            ioThread.start();
+        }
+        FeedConnection connection = new FeedConnection(host, port, listener);
+        configure.accept(connection);
+        pendingCommands.add(() -> {
+            connections.add(connection);
+            connection.reconnectAtNanos = System.nanoTime();
+        });
+        selector.wakeup();
+        return connection;
+    }
+
+    /** Closes every connection and waits briefly for the I/O thread to exit. */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            stopped = true;
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = ioThread;
+            selector.wakeup();
+        }
+        if (thread != Thread.currentThread()) {
+            try {
+                thread.join(STOP_JOIN_MILLIS);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void runLoop() {
+        try {
+            while (running) {
+                Runnable command;
+                while ((command = pendingCommands.poll()) != null) {
+                    command.run();
+                }
+
+                long now = System.nanoTime();
+                long nextDeadline = Long.MAX_VALUE;
+                for (FeedConnection connection : connections) {
+                    nextDeadline = Math.min(nextDeadline, connection.checkTimers(now));
+                }
+
+                long waitMillis = nextDeadline == Long.MAX_VALUE
+                    ? 0L
+                    : Math.max(1L, TimeUnit.NANOSECONDS.toMillis(nextDeadline - now + 999_999L));
+                selector.select(waitMillis);
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    FeedConnection connection = (FeedConnection) key.attachment();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isConnectable()) {
+                        connection.finishConnect();
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        connection.readAvailable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flushOutbound();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException loopException) {
+            System.err.println("Feed client stopped: " + loopException.getMessage());
+        } finally {
+            for (FeedConnection connection : connections) {
+                connection.closeChannel();
+            }
+            connections.clear();
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // Nothing left to release.
+            }
+            running = false;
+        }
+    }
+
+    /** One endpoint served by the client's I/O thread. */
+    public final class FeedConnection {
+        private final String host;
+        private final int port;
+        private final FeedListener listener;
+
+        private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        private volatile int readTimeoutMillis;
+        private volatile int initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+        private volatile int maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+        private volatile boolean connected;
+        private volatile long connectCount;
+        private volatile long oversizedRecordCount;
+        private volatile byte binaryHandshake;
+        private volatile boolean binaryFraming;
+
+        // I/O-thread confined
+        private SocketChannel channel;
+        private SelectionKey selectionKey;
+        private long reconnectAtNanos = Long.MAX_VALUE;
+        private long connectDeadlineNanos = Long.MAX_VALUE;
+        private long lastReadNanos;
+        private int failedAttempts;
+        // Set while the host is being looked up; attempts are numbered so a late lookup is ignored.
+        private boolean resolving;
+        private int attempt;
+        private boolean deliveredSinceConnect;
+        private byte[] recordBuffer = new byte[4096];
+        private int recordLength;
+        private int scanFrom;
+        private boolean discardingOversized;
+        private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+        private final int[] framePrefixSize = new int[1];
+        private boolean awaitingHandshakeReply;
+
+        private FeedConnection(String host, int port, FeedListener listener) {
+            this.host = host;
+            this.port = port;
+            this.listener = listener;
+        }
+
+        public FeedConnection setConnectTimeoutMillis(int millis) {
+            this.connectTimeoutMillis = millis;
+            return this;
+        }
+
+        /** Drops the connection if nothing arrives for {@code millis}; zero disables. */
+        public FeedConnection setReadTimeoutMillis(int millis) {
+            this.readTimeoutMillis = millis;
+            return this;
+        }
+
+        public FeedConnection setBackoffMillis(int initialMillis, int maxMillis) {
+            this.initialBackoffMillis = initialMillis;
+            this.maxBackoffMillis = maxMillis;
+            return this;
+        }
+
+        /**
+         * Offers binary framing by sending {@code handshake} as the first byte
+         * of every connection; zero (the default) keeps plain line framing.
+         */
+        public FeedConnection setBinaryHandshake(byte handshake) {
+            this.binaryHandshake = handshake;
+            return this;
+        }
+
+        /** True once the server has accepted the binary handshake on the current connection. */
+        public boolean isBinaryFraming() { return binaryFraming; }
+        public String getHost() { return host; }
+        public int getPort() { return port; }
+        public boolean isConnected() { return connected; }
+        public long getConnectCount() { return connectCount; }
+        public long getOversizedRecordCount() { return oversizedRecordCount; }
+
+        /**
+         * Sends {@code record} plus a newline on the I/O thread. Records sent
+         * while disconnected, or still unsent when the connection drops, are
+         * discarded; callers resynchronise from what the server sends on
+         * reconnect.
+         */
+        public void send(String record) {
+            byte[] encoded = (record + "\n").getBytes(StandardCharsets.UTF_8);
+            pendingCommands.add(() -> {
+                if (connected) {
+                    outbound.addLast(ByteBuffer.wrap(encoded));
+                    flushOutbound();
+                }
+            });
+            selector.wakeup();
+        }
+
+        private void flushOutbound() {
+            try {
+                ByteBuffer head;
+                while ((head = outbound.peekFirst()) != null) {
+                    channel.write(head);
+                    if (head.hasRemaining()) {
+                        selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    outbound.pollFirst();
+                }
+                selectionKey.interestOps(SelectionKey.OP_READ);
+            } catch (IOException writeException) {
+                fail(writeException);
+            }
+        }
+
+        /** Runs due timers and returns the next deadline this connection needs. */
+        private long checkTimers(long now) {
+            if (channel == null && !resolving) {
+                if (now - reconnectAtNanos < 0) {
+                    return reconnectAtNanos;
+                }
+                startResolve(now);
+            }
+            if (!connected) {
+                if (now - connectDeadlineNanos >= 0) {
+                    fail(new SocketTimeoutException("Connect timed out after " + connectTimeoutMillis + " ms"));
+                    return reconnectAtNanos;
+                }
+                return connectDeadlineNanos;
+            }
+            if (readTimeoutMillis > 0) {
+                long readDeadline = lastReadNanos + TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+                if (now - readDeadline >= 0) {
+                    fail(new SocketTimeoutException("No data for " + readTimeoutMillis + " ms"));
+                    return reconnectAtNanos;
+                }
+                return readDeadline;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /** Looks the host up off the I/O thread, then connects on it. */
+        private void startResolve(long now) {
+            resolving = true;
+            reconnectAtNanos = Long.MAX_VALUE;
+            connectDeadlineNanos = now + TimeUnit.MILLISECONDS.toNanos(connectTimeoutMillis);
+            int lookup = ++attempt;
+            RESOLVER.execute(() -> {
+                InetSocketAddress address = new InetSocketAddress(host, port);
+                pendingCommands.add(() -> {
+                    if (resolving && attempt == lookup) {
+                        startConnect(address);
+                    }
+                });
+                if (running) {
+                    selector.wakeup();
+                }
+            });
+        }
+
+        private void startConnect(InetSocketAddress address) {
+            if (address.isUnresolved()) {
+                fail(new UnknownHostException(host));
+                return;
+            }
+            resolving = false;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                if (channel.connect(address)) {
+                    selectionKey = channel.register(selector, SelectionKey.OP_READ, this);
+                    onConnectionEstablished();
+                } else {
+                    selectionKey = channel.register(selector, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (IOException | RuntimeException connectException) {
+                fail(connectException instanceof IOException
+                    ? (IOException) connectException
+                    : new IOException(connectException.getMessage(), connectException));
+            }
+        }
+
+        private void finishConnect() {
+            try {
+                if (channel.finishConnect()) {
+                    selectionKey.interestOps(SelectionKey.OP_READ);
+                    onConnectionEstablished();
+                }
+            } catch (IOException connectException) {
+                fail(connectException);
+            }
+        }
+
+        private void onConnectionEstablished() {
+            connected = true;
+            connectCount++;
+            deliveredSinceConnect = false;
+            lastReadNanos = System.nanoTime();
+            connectDeadlineNanos = Long.MAX_VALUE;
+            recordLength = 0;
+            scanFrom = 0;
+            discardingOversized = false;
+            binaryFraming = false;
+            byte handshake = binaryHandshake;
+            awaitingHandshakeReply = handshake != 0;
+            if (awaitingHandshakeReply) {
+                outbound.addLast(ByteBuffer.wrap(new byte[] {handshake}));
+                flushOutbound();
+                if (channel == null) {
+                    return;
+                }
+            }
+            listener.onConnected(this);
+        }
+
+        private void readAvailable() {
+            try {
+                while (true) {
+                    readBuffer.clear();
+                    int bytesRead = channel.read(readBuffer);
+                    if (bytesRead < 0) {
+                        disconnectCleanly();
+                        return;
+                    }
+                    if (bytesRead == 0) {
+                        return;
+                    }
+                    lastReadNanos = System.nanoTime();
+                    readBuffer.flip();
+                    appendAndFrame(bytesRead);
+                }
+            } catch (IOException readException) {
+                fail(readException);
+            }
+        }
+
+        private void appendAndFrame(int bytesRead) {
+            if (recordLength + bytesRead > recordBuffer.length) {
+                int grownLength = Math.max(recordBuffer.length * 2, recordLength + bytesRead);
+                byte[] grown = new byte[Math.min(grownLength, MAX_RECORD_BYTES + READ_BUFFER_BYTES + 16)];
+                System.arraycopy(recordBuffer, 0, grown, 0, recordLength);
+                recordBuffer = grown;
+            }
+            readBuffer.get(recordBuffer, recordLength, bytesRead);
+            recordLength += bytesRead;
+
+            int recordStart = 0;
+            while (recordStart < recordLength) {
+                int next = binaryFraming ? frameBinary(recordStart) : frameLine(recordStart);
+                if (channel == null) {
+                    return;
+                }
+                if (next < 0) {
+                    break;
+                }
+                recordStart = next;
+            }
+
+            int remaining = recordLength - recordStart;
+            if (binaryFraming) {
+                if (recordStart > 0 && remaining > 0) {
+                    System.arraycopy(recordBuffer, recordStart, recordBuffer, 0, remaining);
+                }
+                recordLength = remaining;
+                scanFrom = 0;
+                return;
+            }
+            if (remaining > MAX_RECORD_BYTES) {
+                oversizedRecordCount++;
+                listener.onRecordDiscarded(this);
+                discardingOversized = true;
+                remaining = 0;
+            } else if (recordStart > 0 && remaining > 0) {
+                System.arraycopy(recordBuffer, recordStart, recordBuffer, 0, remaining);
+            }
+            recordLength = remaining;
+            scanFrom = remaining;
+        }
+
+        /** Delivers the line starting at {@code start}; returns where the next record starts, or -1 if incomplete. */
+        private int frameLine(int start) {
+            if (awaitingHandshakeReply) {
+                // Only the first byte can be the reply; a JSON-only server never sends one.
+                awaitingHandshakeReply = false;
+                if (recordBuffer[start] == binaryHandshake) {
+                    binaryFraming = true;
+                    return start + 1;
+                }
+            }
+            for (int i = Math.max(scanFrom, start); i < recordLength; i++) {
+                if (recordBuffer[i] != '\n') {
+                    continue;
+                }
+                int recordEnd = i;
+                if (recordEnd > start && recordBuffer[recordEnd - 1] == '\r') {
+                    recordEnd--;
+                }
+                if (discardingOversized) {
+                    discardingOversized = false;
+                } else if (recordEnd - start > MAX_RECORD_BYTES) {
+                    // Complete, but only because it arrived in the read that crossed the limit.
+                    oversizedRecordCount++;
+                    listener.onRecordDiscarded(this);
+                } else if (recordEnd > start) {
+                    deliver(start, recordEnd - start);
+                }
+                return i + 1;
+            }
+            scanFrom = recordLength;
+            return -1;
+        }
+
+        /** Delivers the frame starting at {@code start}; returns where the next one starts, or -1 if incomplete. */
+        private int frameBinary(int start) {
+            long payloadLength = BinaryTrackCodec.readFrameLength(recordBuffer, start, recordLength, framePrefixSize);
+            if (payloadLength == -1) {
+                return -1;
+            }
+            if (payloadLength < 0 || payloadLength > MAX_RECORD_BYTES) {
+                // Unlike lines, frames cannot be resynchronised; start over with a fresh connection.
+                oversizedRecordCount++;
+                listener.onRecordDiscarded(this);
+                fail(new IOException("Invalid frame length " + payloadLength));
+                return -1;
+            }
+            int payloadStart = start + framePrefixSize[0];
+            if (payloadStart + payloadLength > recordLength) {
+                return -1;
+            }
+            deliver(payloadStart, (int) payloadLength);
+            return payloadStart + (int) payloadLength;
+        }
+
+        private void deliver(int offset, int length) {
+            deliveredSinceConnect = true;
+            failedAttempts = 0;
+            try {
+                listener.onRecord(this, recordBuffer, offset, length);
+            } catch (RuntimeException listenerException) {
+                System.err.println("Feed listener failed: " + listenerException.getMessage());
+            }
+        }
+
+        private void disconnectCleanly() {
+            boolean wasDelivering = deliveredSinceConnect;
+            closeChannel();
+            listener.onDisconnected(this, null);
+            if (wasDelivering) {
+                failedAttempts = 0;
+                reconnectAtNanos = System.nanoTime();
+            } else {
+                scheduleBackoff();
+            }
+        }
+
+        private void fail(IOException cause) {
+            boolean wasOpen = channel != null || resolving;
+            closeChannel();
+            if (wasOpen) {
+                listener.onDisconnected(this, cause);
+            }
+            scheduleBackoff();
+        }
+
+        /** Jittered exponential backoff: a random delay in [base/2, base]. */
+        private void scheduleBackoff() {
+            int shift = Math.min(failedAttempts, 20);
+            long baseMillis = Math.min((long) maxBackoffMillis, (long) initialBackoffMillis << shift);
+            long delayMillis = baseMillis / 2 + ThreadLocalRandom.current().nextLong(baseMillis / 2 + 1);
+            failedAttempts++;
+            reconnectAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        private void closeChannel() {
+            connected = false;
+            resolving = false;
+            outbound.clear();
+            if (selectionKey != null) {
+                selectionKey.cancel();
+                selectionKey = null;
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Already unusable; nothing to recover.
+                }
+                channel = null;
+            }
+            connectDeadlineNanos = Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.awt.image.VolatileImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.swing.JComponent;
+
+/**
+ * Single-line, centred text component with a real glow for the playing
+ * state, replacing HTML-styled {@code JLabel}s.
+ *
+ * Each distinct string is laid out once into a {@link TextLayout}; its glow
+ * is blurred once into a cached image on first use and reused while the text
+ * stays the same. Switching between playing and paused only changes which
+ * cached layers are painted, so it never re-lays-out text. Updates repaint
+ * this component's own bounds and only revalidate when the preferred size
+ * actually changes.
+ *
+ * Text that is about to be shown can be rendered ahead of time, off the EDT,
+ * with {@link #prerender} and handed over with {@link #preload}; showing it
+ * is then a cache lookup.
+ *
+ * The glow can be dimmed with {@link #setGlowLevel} to animate a pulse.
+ * While a label is on screen its current glow is copied once into a
+ * {@link VolatileImage}, so each pulse frame is an accelerated blit at a
+ * new alpha that repaints only the glow's bounds.
+ *
+ * Text longer than {@link #MAX_LAID_OUT_CHARS} is cut short with an
+ * ellipsis before it is laid out, since the glow layer is as wide as the
+ * text and a feed may send titles of any length.
+ */
+public class GlowTextLabel extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    public static final Color PLAYING_COLOR = new Color(0x00FFFF);
+    public static final Color PLAYING_GLOW_COLOR = new Color(0x8FFFFF);
+    public static final Color PAUSED_COLOR = new Color(0xCCCCCC);
+
+    private static final FontRenderContext RENDER_CONTEXT = new FontRenderContext(null, true, true);
+    private static final int GLOW_RADIUS = 8;
+    private static final int GLOW_MARGIN = 2 * GLOW_RADIUS;
+    private static final int LAYOUT_CACHE_SIZE = 16;
+    /** Longest text laid out in full; far wider than any display already. */
+    static final int MAX_LAID_OUT_CHARS = 128;
+    // Glow levels are rounded to this many steps, so a slow pulse skips frames that would look the same.
+    private static final int GLOW_LEVEL_STEPS = 64;
+    private static final AlphaComposite[] GLOW_COMPOSITES = new AlphaComposite[GLOW_LEVEL_STEPS + 1];
+    static {
+        for (int step = 0; step <= GLOW_LEVEL_STEPS; step++) {
+            GLOW_COMPOSITES[step] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, step / (float) GLOW_LEVEL_STEPS);
+        }
+    }
+
+    private final Map<String, RenderedText> layoutCache =
+        new LinkedHashMap<String, RenderedText>(LAYOUT_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RenderedText> eldest) {
+                return size() > LAYOUT_CACHE_SIZE;
+            }
+        };
+    private String text = "";
+    private RenderedText renderedText;
+    private boolean playing;
+    private float glowLevel = 1f;
+    // Accelerated copy of renderedText's glow, rebuilt when the text or the screen changes.
+    private VolatileImage glowBuffer;
+    private RenderedText glowBufferText;
+
+    public GlowTextLabel(Font font) {
+        setFont(font);
+        setOpaque(false);
+        setAlignmentX(CENTER_ALIGNMENT);
+    }
+
+    /**
+     * Shows {@code newText}; returns true if anything changed. A null text is
+     * shown as empty.
+     */
+    public boolean setText(String newText) {
+        String value = newText != null ? newText : "";
+        if (value.equals(text)) {
+            return false;
+        }
+        Dimension previousSize = getPreferredSize();
+        text = value;
+        renderedText = lookup(value);
+        if (!previousSize.equals(getPreferredSize())) {
+            revalidate();
+        }
+        repaint();
+        return true;
+    }
+
+    /** Switches between the glowing and plain style; returns true if it changed. */
+    public boolean setPlaying(boolean isPlaying) {
+        if (isPlaying == playing) {
+            return false;
+        }
+        playing = isPlaying;
+        repaint();
+        return true;
+    }
+
+    /**
+     * Sets the glow's opacity, from 0 to 1, and repaints just the glow if
+     * playing; returns true if that repaint was needed.
+     */
+    public boolean setGlowLevel(float level) {
+        float rounded = Math.round(Math.max(0f, Math.min(1f, level)) * GLOW_LEVEL_STEPS) / (float) GLOW_LEVEL_STEPS;
+        if (rounded == glowLevel) {
+            return false;
+        }
+        glowLevel = rounded;
+        if (!playing || renderedText == null) {
+            return false;
+        }
+        repaint(glowBounds());
+        return true;
+    }
+
+    /** Where the glow of the current text is painted, in this label's coordinates; empty without text. */
+    Rectangle glowBounds() {
+        if (renderedText == null) {
+            return new Rectangle();
+        }
+        TextLayout layout = renderedText.layout;
+        int width = (int) Math.ceil(layout.getAdvance()) + 2 * GLOW_MARGIN;
+        int height = (int) Math.ceil(layout.getAscent() + layout.getDescent()) + 2 * GLOW_MARGIN;
+        return new Rectangle(Math.round(textX(layout)) - GLOW_MARGIN,
+            Math.round(textY(layout) - layout.getAscent()) - GLOW_MARGIN, width, height);
+    }
+
+    public String getText() { return text; }
+    public boolean isPlaying() { return playing; }
+    public float getGlowLevel() { return glowLevel; }
+
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        layoutCache.clear();
+        renderedText = text != null && !text.isEmpty() ? lookup(text) : null;
+        revalidate();
+        repaint();
+    }
+
+    private RenderedText lookup(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        RenderedText cached = layoutCache.get(value);
+        if (cached == null) {
+            cached = new RenderedText(value, getFont());
+            layoutCache.put(value, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Lays out {@code value} in {@code font} and blurs its glow, for a later
+     * {@link #preload}. Safe to call from any thread; returns null for empty text.
+     */
+    static RenderedText prerender(String value, Font font) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        RenderedText rendered = new RenderedText(value, font);
+        rendered.glowImage();
+        return rendered;
+    }
+
+    /**
+     * Caches text made by {@link #prerender}, unless it was rendered in a
+     * font this label no longer uses. Must run on the EDT.
+     */
+    void preload(String value, RenderedText rendered) {
+        if (rendered == null || !rendered.font.equals(getFont())) {
+            return;
+        }
+        if (layoutCache.get(value) == null) {
+            layoutCache.put(value, rendered);
+        }
+    }
+
+    /**
+     * True if showing {@code value} needs no layout or blur work, either
+     * because it is empty or because it is cached with its glow. Must run on
+     * the EDT.
+     */
+    public boolean isPrepared(String value) {
+        if (value == null || value.isEmpty()) {
+            return true;
+        }
+        RenderedText cached = layoutCache.get(value);
+        return cached != null && cached.glow != null;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        Font font = getFont();
+        int height = (int) Math.ceil(font.getLineMetrics("Ag", RENDER_CONTEXT).getHeight()) + 2 * GLOW_MARGIN;
+        int width = renderedText != null ? (int) Math.ceil(renderedText.layout.getAdvance()) : 0;
+        return new Dimension(width + 2 * GLOW_MARGIN, height);
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        if (glowBuffer != null) {
+            glowBuffer.flush();
+            glowBuffer = null;
+            glowBufferText = null;
+        }
+    }
+
+    @Override
+    public Dimension getMaximumSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        if (renderedText == null) {
+            return;
+        }
+        Graphics2D g2 = (Graphics2D) graphics.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            TextLayout layout = renderedText.layout;
+            float x = textX(layout);
+            float y = textY(layout);
+            if (playing && glowLevel > 0f) {
+                g2.setComposite(GLOW_COMPOSITES[Math.round(glowLevel * GLOW_LEVEL_STEPS)]);
+                drawGlow(g2, Math.round(x) - GLOW_MARGIN, Math.round(y - layout.getAscent()) - GLOW_MARGIN);
+                g2.setComposite(AlphaComposite.SrcOver);
+            }
+            g2.setColor(playing ? PLAYING_COLOR : PAUSED_COLOR);
+            layout.draw(g2, x, y);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private float textX(TextLayout layout) {
+        return (getWidth() - layout.getAdvance()) / 2f;
+    }
+
+    private float textY(TextLayout layout) {
+        return (getHeight() - layout.getAscent() - layout.getDescent()) / 2f + layout.getAscent();
+    }
+
+    /**
+     * Draws the glow from the accelerated copy, restoring it if the screen
+     * lost it, or straight from the cached image when this label has no
+     * screen to accelerate for.
+     */
+    private void drawGlow(Graphics2D g2, int x, int y) {
+        BufferedImage glow = renderedText.glowImage();
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        if (configuration == null) {
+            g2.drawImage(glow, x, y, null);
+            return;
+        }
+        do {
+            int status = glowBuffer == null ? VolatileImage.IMAGE_INCOMPATIBLE : glowBuffer.validate(configuration);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE || glowBuffer.getWidth() != glow.getWidth()
+                    || glowBuffer.getHeight() != glow.getHeight()) {
+                if (glowBuffer != null) {
+                    glowBuffer.flush();
+                }
+                glowBuffer = configuration.createCompatibleVolatileImage(glow.getWidth(), glow.getHeight(),
+                    Transparency.TRANSLUCENT);
+                status = VolatileImage.IMAGE_RESTORED;
+            }
+            if (status == VolatileImage.IMAGE_RESTORED || glowBufferText != renderedText) {
+                Graphics2D bufferGraphics = glowBuffer.createGraphics();
+                bufferGraphics.setComposite(AlphaComposite.Src);
+                bufferGraphics.drawImage(glow, 0, 0, null);
+                bufferGraphics.dispose();
+                glowBufferText = renderedText;
+            }
+            g2.drawImage(glowBuffer, x, y, null);
+        } while (glowBuffer.contentsLost());
+    }
+
+    /**
+     * {@code value} cut to at most {@link #MAX_LAID_OUT_CHARS} with an
+     * ellipsis, without splitting a surrogate pair.
+     */
+    static String clipForLayout(String value) {
+        if (value.length() <= MAX_LAID_OUT_CHARS) {
+            return value;
+        }
+        int end = MAX_LAID_OUT_CHARS - 1;
+        if (Character.isHighSurrogate(value.charAt(end - 1))) {
+            end--;
+        }
+        return value.substring(0, end) + '\u2026';
+    }
+
+    /** A laid-out string and its lazily blurred glow layer. */
+    static final class RenderedText {
+        final Font font;
+        final TextLayout layout;
+        private BufferedImage glow;
+
+        RenderedText(String value, Font font) {
+            this.font = font;
+            this.layout = new TextLayout(clipForLayout(value), font, RENDER_CONTEXT);
+        }
+
+        BufferedImage glowImage() {
+            if (glow == null) {
+                glow = renderGlow(layout);
+            }
+            return glow;
+        }
+    }
+
+    /**
+     * Draws the text in the glow colour with a {@link #GLOW_MARGIN} border and
+     * blurs it with a separable Gaussian; drawn twice so the halo reads as a
+     * glow rather than a shadow.
+     */
+    static BufferedImage renderGlow(TextLayout layout) {
+        int margin = GLOW_MARGIN;
+        int width = (int) Math.ceil(layout.getAdvance()) + 2 * margin;
+        int height = (int) Math.ceil(layout.getAscent() + layout.getDescent()) + 2 * margin;
+        BufferedImage mask = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2 = mask.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2.setColor(PLAYING_GLOW_COLOR);
+        layout.draw(g2, margin, margin + layout.getAscent());
+        g2.dispose();
+
+        float[] weights = gaussianWeights(GLOW_RADIUS);
+        BufferedImage horizontal = new ConvolveOp(new Kernel(weights.length, 1, weights), ConvolveOp.EDGE_ZERO_FILL, null)
+            .filter(mask, null);
+        BufferedImage blurred = new ConvolveOp(new Kernel(1, weights.length, weights), ConvolveOp.EDGE_ZERO_FILL, null)
+            .filter(horizontal, null);
+
+        BufferedImage glow = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D glowGraphics = glow.createGraphics();
+        glowGraphics.setComposite(AlphaComposite.SrcOver);
+        glowGraphics.drawImage(blurred, 0, 0, null);
+        glowGraphics.drawImage(blurred, 0, 0, null);
+        glowGraphics.dispose();
+        return glow;
+    }
+
+    private static float[] gaussianWeights(int radius) {
+        float[] weights = new float[radius * 2 + 1];
+        double sigma = radius / 2.0;
+        float total = 0f;
+        for (int i = -radius; i <= radius; i++) {
+            float weight = (float) Math.exp(-(i * i) / (2 * sigma * sigma));
+            weights[i + radius] = weight;
+            total += weight;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= total;
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,445 @@
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Renders a {@link TrackDisplayPanel} offscreen and writes each new frame
+ * as PNG or raw RGBA, for headless boxes that drive LED controllers.
+ *
+ * The panel is painted on the EDT into one reused canvas, and only when it
+ * reports a visible change, no more often than the FPS cap. A frame whose
+ * pixels match the last one written is skipped before it is encoded.
+ * Encoding and writing happen on a separate writer thread. If it falls
+ * behind, the newest unwritten frame replaces the older one.
+ *
+ * Outputs are {@code file:PATH}, which atomically replaces PATH with every
+ * frame, {@code pipe:PATH}, which streams frames into an existing file or
+ * named pipe, and {@code -} for stdout. Raw RGBA frames are
+ * {@code width * height * 4} bytes with no header; PNG streams are
+ * concatenated images. Frame rate, encode time and skip counts are
+ * reported on stderr.
+ */
+public class HeadlessRenderer implements Closeable {
+
+    /** Destination for encoded frames; called on the writer thread only. */
+    public interface FrameSink extends Closeable {
+        void write(byte[] frame, int length) throws IOException;
+
+        @Override
+        default void close() throws IOException { }
+    }
+
+    /** Command-line settings for {@link #launch(String[])}. */
+    static final class Options {
+        String output = "file:track-display.png";
+        String format = "png";
+        double fps = 10;
+        int width = 500;
+        int height = 700;
+        int statsIntervalSeconds = 5;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--headless":
+                        break;
+                    case "--output":
+                        options.output = value(args, ++i, arg);
+                        break;
+                    case "--format":
+                        options.format = value(args, ++i, arg);
+                        if (!"png".equals(options.format) && !"rgba".equals(options.format)) {
+                            throw new IllegalArgumentException("Unknown format: " + options.format);
+                        }
+                        break;
+                    case "--fps":
+                        options.fps = Double.parseDouble(value(args, ++i, arg));
+                        break;
+                    case "--size": {
+                        String[] size = value(args, ++i, arg).split("x", 2);
+                        if (size.length != 2) {
+                            throw new IllegalArgumentException("Size must be WIDTHxHEIGHT");
+                        }
+                        options.width = Integer.parseInt(size[0]);
+                        options.height = Integer.parseInt(size[1]);
+                        break;
+                    }
+                    case "--stats":
+                        options.statsIntervalSeconds = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            return options;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            return args[index];
+        }
+    }
+
+    static final String USAGE = String.join("\n",
+        "Usage: java Main [--headless] [options]",
+        "  --output file:PATH|pipe:PATH|-   where frames go (default file:track-display.png)",
+        "  --format png|rgba                frame encoding (default png)",
+        "  --fps N                          maximum frames per second (default 10)",
+        "  --size WxH                       frame size (default 500x700)",
+        "  --stats SECONDS                  stats interval on stderr, 0 to disable (default 5)");
+
+    private final TrackDisplayPanel panel;
+    private final FrameSink sink;
+    private final boolean rawRgba;
+    private final long minFrameIntervalNanos;
+    private final BufferedImage canvas;
+    private final int[] canvasPixels;
+    private final int[] lastFramePixels;
+    private final BufferedImage[] frames = new BufferedImage[2];
+    private final Thread writerThread;
+    private final Timer frameTimer;
+    private final LatencyHistogram paintTime = new LatencyHistogram();
+    private final LatencyHistogram encodeTime = new LatencyHistogram();
+    private final AtomicLong framesPainted = new AtomicLong();
+    private final AtomicLong framesUnchanged = new AtomicLong();
+    private final AtomicLong framesReplaced = new AtomicLong();
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    // EDT-confined
+    private boolean hasLastFrame;
+    private long lastFrameNanos;
+
+    // Guarded by this
+    private BufferedImage pendingFrame;
+    private BufferedImage writingFrame;
+    private boolean closed;
+
+    public HeadlessRenderer(TrackDisplayPanel panel, int width, int height, double maxFps, boolean rawRgba,
+            FrameSink sink) {
+        this.panel = panel;
+        this.sink = sink;
+        this.rawRgba = rawRgba;
+        this.minFrameIntervalNanos = maxFps > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxFps) : 0L;
+        this.canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.canvasPixels = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        this.lastFramePixels = new int[canvasPixels.length];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        frameTimer = new Timer(0, event -> renderFrame());
+        frameTimer.setRepeats(false);
+
+        panel.addChangeListener(event -> requestFrame());
+        writerThread = new Thread(this::runWriter, "headless-frame-writer");
+        writerThread.start();
+        SwingUtilities.invokeLater(() -> {
+            panel.setSize(width, height);
+            requestFrame();
+        });
+    }
+
+    /**
+     * Schedules a frame, honouring the FPS cap. Must run on the EDT; the
+     * panel's change listener calls it after every visible change.
+     */
+    public void requestFrame() {
+        if (frameTimer.isRunning()) {
+            return;
+        }
+        long waitNanos = lastFrameNanos + minFrameIntervalNanos - System.nanoTime();
+        if (lastFrameNanos == 0 || waitNanos <= 0) {
+            renderFrame();
+        } else {
+            frameTimer.setInitialDelay((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+            frameTimer.restart();
+        }
+    }
+
+    private void renderFrame() {
+        long start = System.nanoTime();
+        lastFrameNanos = start;
+        layoutTree(panel);
+        Graphics2D graphics = canvas.createGraphics();
+        try {
+            graphics.setColor(Color.BLACK);
+            graphics.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            panel.paint(graphics);
+        } finally {
+            graphics.dispose();
+        }
+        paintTime.record(System.nanoTime() - start);
+        framesPainted.incrementAndGet();
+
+        if (hasLastFrame && Arrays.equals(canvasPixels, lastFramePixels)) {
+            framesUnchanged.incrementAndGet();
+            return;
+        }
+        System.arraycopy(canvasPixels, 0, lastFramePixels, 0, canvasPixels.length);
+        hasLastFrame = true;
+        submit();
+    }
+
+    /** Lays out the panel and its children; without a peer nothing else would. */
+    static void layoutTree(Component component) {
+        if (component instanceof Container) {
+            Container container = (Container) component;
+            container.doLayout();
+            for (Component child : container.getComponents()) {
+                layoutTree(child);
+            }
+        }
+    }
+
+    private synchronized void submit() {
+        if (closed) {
+            return;
+        }
+        BufferedImage target = pendingFrame;
+        if (target != null) {
+            framesReplaced.incrementAndGet();
+        } else {
+            target = frames[0] != writingFrame ? frames[0] : frames[1];
+        }
+        int[] targetPixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        System.arraycopy(canvasPixels, 0, targetPixels, 0, canvasPixels.length);
+        pendingFrame = target;
+        notifyAll();
+    }
+
+    private void runWriter() {
+        EncodeBuffer encoded = new EncodeBuffer();
+        byte[] rgba = rawRgba ? new byte[canvasPixels.length * 4] : null;
+        while (true) {
+            BufferedImage frame;
+            synchronized (this) {
+                while (pendingFrame == null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException interruptedException) {
+                        return;
+                    }
+                }
+                if (pendingFrame == null) {
+                    return;
+                }
+                frame = pendingFrame;
+                pendingFrame = null;
+                writingFrame = frame;
+            }
+            try {
+                long start = System.nanoTime();
+                if (rgba != null) {
+                    toRgba(((DataBufferInt) frame.getRaster().getDataBuffer()).getData(), rgba);
+                    encodeTime.record(System.nanoTime() - start);
+                    sink.write(rgba, rgba.length);
+                } else {
+                    encoded.reset();
+                    ImageIO.write(frame, "png", encoded);
+                    encodeTime.record(System.nanoTime() - start);
+                    sink.write(encoded.buffer(), encoded.size());
+                }
+                framesWritten.incrementAndGet();
+            } catch (IOException writeException) {
+                writeFailures.incrementAndGet();
+                System.err.println("Could not write frame: " + writeException.getMessage());
+            } finally {
+                synchronized (this) {
+                    writingFrame = null;
+                }
+            }
+        }
+    }
+
+    static void toRgba(int[] rgbPixels, byte[] rgba) {
+        for (int i = 0, at = 0; i < rgbPixels.length; i++) {
+            int pixel = rgbPixels[i];
+            rgba[at++] = (byte) (pixel >> 16);
+            rgba[at++] = (byte) (pixel >> 8);
+            rgba[at++] = (byte) pixel;
+            rgba[at++] = (byte) 0xFF;
+        }
+    }
+
+    /** Reused PNG output; hands its buffer to the sink without the copy {@code toByteArray()} makes. */
+    private static final class EncodeBuffer extends ByteArrayOutputStream {
+        EncodeBuffer() {
+            super(64 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /** Stops the writer after the frame it is on; pending frames are discarded. */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            pendingFrame = null;
+            notifyAll();
+        }
+        SwingUtilities.invokeLater(frameTimer::stop);
+        try {
+            writerThread.join(2000);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        sink.close();
+    }
+
+    public long getFramesPainted() { return framesPainted.get(); }
+    public long getFramesUnchanged() { return framesUnchanged.get(); }
+    public long getFramesReplaced() { return framesReplaced.get(); }
+    public long getFramesWritten() { return framesWritten.get(); }
+    public long getWriteFailures() { return writeFailures.get(); }
+    public LatencyHistogram getPaintTime() { return paintTime; }
+    public LatencyHistogram getEncodeTime() { return encodeTime; }
+
+    /** Replaces a file with each frame via a temporary file, so readers never see a partial image. */
+    static final class FileSink implements FrameSink {
+        private final Path target;
+        private final Path temporary;
+
+        FileSink(Path target) {
+            this.target = target.toAbsolutePath();
+            this.temporary = this.target.resolveSibling(this.target.getFileName() + ".tmp");
+        }
+
+        @Override
+        public void write(byte[] frame, int length) throws IOException {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                out.write(frame, 0, length);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /** Streams frames back to back into a pipe, file or stdout. */
+    static final class StreamSink implements FrameSink {
+        private final OutputStream out;
+
+        StreamSink(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(byte[] frame, int length) throws IOException {
+            out.write(frame, 0, length);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    static FrameSink openSink(String output) throws IOException {
+        if ("-".equals(output)) {
+            return new StreamSink(new FileOutputStream(FileDescriptor.out));
+        }
+        if (output.startsWith("pipe:")) {
+            return new StreamSink(new FileOutputStream(output.substring("pipe:".length())));
+        }
+        if (output.startsWith("file:")) {
+            return new FileSink(Paths.get(output.substring("file:".length())));
+        }
+        throw new IllegalArgumentException("Output must be file:PATH, pipe:PATH or -");
+    }
+
+    private Thread startStatsReporter(int intervalSeconds) {
+        Thread reporter = new Thread(() -> {
+            long previousWritten = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(intervalSeconds * 1000L);
+                } catch (InterruptedException interruptedException) {
+                    return;
+                }
+                long written = getFramesWritten();
+                System.err.println(String.format(Locale.ROOT,
+                    "🖼️ %.1f frames/s written, %d painted, %d unchanged, %d replaced; "
+                        + "paint p99 %.2f ms, encode p50 %.2f ms / p99 %.2f ms",
+                    (written - previousWritten) / (double) intervalSeconds, getFramesPainted(),
+                    getFramesUnchanged(), getFramesReplaced(), millis(paintTime.getValueAtQuantile(0.99)),
+                    millis(encodeTime.getValueAtQuantile(0.5)), millis(encodeTime.getValueAtQuantile(0.99))));
+                previousWritten = written;
+            }
+        }, "headless-stats");
+        reporter.setDaemon(true);
+        reporter.start();
+        return reporter;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Connects to the configured feed and renders it offscreen until the
+     * process is stopped. With {@code --output -} everything the display
+     * would print goes to stderr so stdout carries only frames.
+     */
+    static void launch(String[] args) throws IOException {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException argumentException) {
+            System.err.println(argumentException.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        FrameSink sink = openSink(options.output);
+        if ("-".equals(options.output)) {
+            System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+        }
+        System.out.println("Running in headless mode - rendering " + options.width + "x" + options.height
+            + " " + options.format + " frames to " + options.output);
+
+        TrackDisplayPanel panel = new TrackDisplayPanel(ArtworkCache.shared());
+        Main.TrackDisplayApplication.configureRenderRate(panel);
+        try {
+            SwingUtilities.invokeAndWait(() -> Main.TrackDisplayApplication.configureWarmStart(panel, null));
+        } catch (InterruptedException | InvocationTargetException restoreException) {
+            System.err.println("Could not restore display state: " + restoreException);
+        }
+        Main.TrackDisplayApplication.configurePlayJournal(panel, null);
+        HeadlessRenderer renderer = new HeadlessRenderer(panel, options.width, options.height, options.fps,
+            "rgba".equals(options.format), sink);
+        if (options.statsIntervalSeconds > 0) {
+            renderer.startStatsReporter(options.statsIntervalSeconds);
+        }
+        Main.TrackDisplayApplication.connectPanel(new FeedClient("track-feed-reader"), panel,
+            System.getProperty("trackdisplay.host", "localhost"), Integer.getInteger("trackdisplay.port", 532));
+        Main.exposeMetricsLater(panel.getDisplayMetrics());
+    }
+}
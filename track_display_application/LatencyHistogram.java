@@ -0,0 +1,88 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, allocation-free latency histogram with HDR-style log-linear
+ * buckets.
+ *
+ * Values below 128 ns get a bucket each; above that every power-of-two range
+ * is split into 64 linear sub-buckets, which keeps the relative error under
+ * about 1.6% up to the largest trackable value (about 36 minutes).
+ * {@link #record(long)} only touches atomics, so it is safe on hot paths and
+ * from any number of threads.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_HALF = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKET_HALF * 2;
+    private static final int MAX_SHIFT = 34;
+    private static final int BUCKET_COUNT = SUB_BUCKET_HALF * MAX_SHIFT + LINEAR_LIMIT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long currentMax;
+        while (nanos > (currentMax = maxNanos.get())) {
+            if (maxNanos.compareAndSet(currentMax, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /** Returns the upper bound of the bucket holding the given quantile (0..1), or 0 if empty. */
+    public long getValueAtQuantile(double quantile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seen += counts.get(index);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(index), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public long getCount() { return totalCount.get(); }
+    public long getTotalNanos() { return totalNanos.get(); }
+    public long getMaxNanos() { return maxNanos.get(); }
+
+    public void reset() {
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            counts.set(index, 0);
+        }
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    static int bucketIndex(long nanos) {
+        if (nanos < LINEAR_LIMIT) {
+            return (int) nanos;
+        }
+        int shift = Math.min(MAX_SHIFT, 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS);
+        long subBucket = Math.min(LINEAR_LIMIT - 1, nanos >>> shift);
+        return (int) (SUB_BUCKET_HALF * shift + subBucket);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - (long) SUB_BUCKET_HALF * shift;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
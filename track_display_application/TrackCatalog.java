@@ -0,0 +1,577 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Read-only track catalog looked up by track ID through memory-mapped files.
+ *
+ * The source is a CSV file with a header row naming the {@code id} (or
+ * {@code track_id}), {@code title}, {@code artist}, {@code length} and
+ * {@code image_path} columns, or JSONL with one object per line using the
+ * feed's field names. It is turned once into two files next to it:
+ * <ul>
+ *   <li>{@code SOURCE.index}: a 64-byte header and an open-addressing hash
+ *       table of fixed 32-byte slots. A slot holds the 64-bit hash of the
+ *       ID and references to the ID, title, artist, length and image path.
+ *   <li>{@code SOURCE.strings}: every string once, as a length and UTF-8
+ *       bytes; references are byte offsets into it, 0 meaning null. Values
+ *       that repeat, such as artists, are stored once while they are among
+ *       the most recently seen.
+ * </ul>
+ * Opening a catalog whose index matches the source's size and modification
+ * time only maps the two files, so the cost does not grow with the catalog,
+ * and the tracks live in the page cache rather than on the heap. A lookup
+ * hashes the ID, probes a slot or two, compares the ID bytes in place and
+ * decodes only the strings it returns. Both files are built under temporary
+ * names and moved into place, the index last.
+ *
+ * Each file must stay under 2 GB, which is about 50 million tracks. The
+ * mappings are released when the catalog is garbage collected.
+ */
+public final class TrackCatalog {
+    public static final String INDEX_SUFFIX = ".index";
+    public static final String STRINGS_SUFFIX = ".strings";
+
+    static final int INDEX_MAGIC = 0x54444349; // "TDCI"
+    static final int STRINGS_MAGIC = 0x54444353; // "TDCS"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int SLOT_BYTES = 32;
+    static final int STRINGS_HEADER_BYTES = 16;
+    // Bound on strings remembered for de-duplication while building.
+    static final int MAX_INTERNED_STRINGS = 16384;
+
+    // Index header layout
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_SLOT_BYTES = 8;
+    private static final int HEADER_SLOT_COUNT = 12;
+    private static final int HEADER_TRACK_COUNT = 16;
+    private static final int HEADER_SOURCE_LENGTH = 24;
+    private static final int HEADER_SOURCE_MODIFIED = 32;
+    private static final int HEADER_STRINGS_LENGTH = 40;
+    private static final int HEADER_BUILD_ID = 48;
+
+    // Slot layout; an ID reference of 0 marks an empty slot
+    private static final int SLOT_HASH = 0;
+    private static final int SLOT_ID = 8;
+    private static final int SLOT_TITLE = 12;
+    private static final int SLOT_ARTIST = 16;
+    private static final int SLOT_LENGTH = 20;
+    private static final int SLOT_IMAGE_PATH = 24;
+
+    private final MappedByteBuffer index;
+    private final MappedByteBuffer strings;
+    private final int slotCount;
+    private final int trackCount;
+    private final boolean built;
+    private final long openMillis;
+
+    private TrackCatalog(MappedByteBuffer index, MappedByteBuffer strings, boolean built, long openMillis) {
+        this.index = index;
+        this.strings = strings;
+        this.slotCount = index.getInt(HEADER_SLOT_COUNT);
+        this.trackCount = index.getInt(HEADER_TRACK_COUNT);
+        this.built = built;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Opens the catalog for {@code source}, building its index first if it
+     * is missing or older than the source. An index whose source is gone is
+     * used as it is.
+     */
+    public static TrackCatalog open(Path source) throws IOException {
+        long start = System.nanoTime();
+        Path indexFile = siblingPath(source, INDEX_SUFFIX);
+        Path stringsFile = siblingPath(source, STRINGS_SUFFIX);
+        boolean built = false;
+        if (!isCurrent(source, indexFile, stringsFile)) {
+            build(source, indexFile, stringsFile);
+            built = true;
+        }
+        MappedByteBuffer index = map(indexFile);
+        MappedByteBuffer strings = map(stringsFile);
+        if (index.capacity() < HEADER_BYTES || index.getInt(HEADER_MAGIC) != INDEX_MAGIC
+                || index.getInt(HEADER_VERSION) != VERSION || index.getInt(HEADER_SLOT_BYTES) != SLOT_BYTES
+                || (long) HEADER_BYTES + (long) index.getInt(HEADER_SLOT_COUNT) * SLOT_BYTES > index.capacity()
+                || strings.capacity() < STRINGS_HEADER_BYTES || strings.getInt(0) != STRINGS_MAGIC
+                || strings.getLong(8) != index.getLong(HEADER_BUILD_ID)
+                || strings.capacity() != index.getLong(HEADER_STRINGS_LENGTH)) {
+            throw new IOException(indexFile + " is not a track catalog index for " + stringsFile);
+        }
+        return new TrackCatalog(index, strings, built, (System.nanoTime() - start) / 1_000_000L);
+    }
+
+    private static Path siblingPath(Path source, String suffix) {
+        return source.resolveSibling(source.getFileName() + suffix);
+    }
+
+    private static boolean isCurrent(Path source, Path indexFile, Path stringsFile) throws IOException {
+        if (!Files.exists(indexFile) || !Files.exists(stringsFile)) {
+            return false;
+        }
+        if (!Files.exists(source)) {
+            return true;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            int read;
+            do {
+                read = channel.read(header);
+            } while (read > 0 && header.hasRemaining());
+        }
+        return !header.hasRemaining() && header.getInt(HEADER_MAGIC) == INDEX_MAGIC
+            && header.getInt(HEADER_VERSION) == VERSION
+            && header.getLong(HEADER_SOURCE_LENGTH) == Files.size(source)
+            && header.getLong(HEADER_SOURCE_MODIFIED) == Files.getLastModifiedTime(source).toMillis();
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is larger than 2 GB");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /** Number of distinct track IDs in the catalog. */
+    public int size() { return trackCount; }
+    /** True if this {@link #open} had to build the index from the source. */
+    public boolean wasBuilt() { return built; }
+    /** Milliseconds {@link #open} took, including any build. */
+    public long getOpenMillis() { return openMillis; }
+
+    /**
+     * Fills {@code target} with the track {@code id} names. Returns false,
+     * leaving {@code target} untouched, if the catalog has no such track.
+     * Safe to call from any thread.
+     */
+    public boolean find(String id, TrackEvent target) {
+        if (id == null || trackCount == 0) {
+            return false;
+        }
+        byte[] utf8 = id.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(utf8);
+        int mask = slotCount - 1;
+        for (int slot = slotFor(hash, mask), probes = 0; probes < slotCount; slot = (slot + 1) & mask, probes++) {
+            int offset = HEADER_BYTES + slot * SLOT_BYTES;
+            int idReference = index.getInt(offset + SLOT_ID);
+            if (idReference == 0) {
+                return false;
+            }
+            if (index.getLong(offset + SLOT_HASH) == hash && stringEquals(idReference, utf8)) {
+                fill(offset, target);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Fills {@code target} with a uniformly random track; returns false if the catalog is empty. */
+    public boolean randomTrack(Random random, TrackEvent target) {
+        if (trackCount == 0) {
+            return false;
+        }
+        int mask = slotCount - 1;
+        for (int slot = random.nextInt(slotCount); ; slot = random.nextInt(slotCount)) {
+            int offset = HEADER_BYTES + (slot & mask) * SLOT_BYTES;
+            if (index.getInt(offset + SLOT_ID) != 0) {
+                fill(offset, target);
+                return true;
+            }
+        }
+    }
+
+    private void fill(int offset, TrackEvent target) {
+        target.setTrackId(string(index.getInt(offset + SLOT_ID)));
+        target.setTitle(string(index.getInt(offset + SLOT_TITLE)));
+        target.setArtist(string(index.getInt(offset + SLOT_ARTIST)));
+        target.setLength(string(index.getInt(offset + SLOT_LENGTH)));
+        target.setImagePath(string(index.getInt(offset + SLOT_IMAGE_PATH)));
+    }
+
+    private String string(int reference) {
+        if (reference == 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[strings.getInt(reference)];
+        ByteBuffer view = strings.duplicate();
+        view.position(reference + 4);
+        view.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private boolean stringEquals(int reference, byte[] utf8) {
+        if (strings.getInt(reference) != utf8.length) {
+            return false;
+        }
+        int start = reference + 4;
+        for (int i = 0; i < utf8.length; i++) {
+            if (strings.get(start + i) != utf8[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 64-bit FNV-1a. */
+    static long hash(byte[] utf8) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : utf8) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static int slotFor(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    // --- Building -----------------------------------------------------------
+
+    /** Builds the index and string files for {@code source}. */
+    static void build(Path source, Path indexFile, Path stringsFile) throws IOException {
+        long sourceLength = Files.size(source);
+        long sourceModified = Files.getLastModifiedTime(source).toMillis();
+        boolean csv = source.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        long rows = countRows(source, csv);
+        // Keep the table at most three-quarters full so probes stay short.
+        long slots = Long.highestOneBit(Math.max(16L, rows + rows / 3 + 1) * 2 - 1);
+        // Every string is at most as long as its source text, plus a length prefix.
+        long stringsCapacity = STRINGS_HEADER_BYTES + sourceLength + rows * 5 * 4;
+        if (HEADER_BYTES + slots * SLOT_BYTES > Integer.MAX_VALUE || stringsCapacity > Integer.MAX_VALUE) {
+            throw new IOException(source + " is too large for a track catalog index");
+        }
+
+        Path indexTemporary = siblingPath(indexFile, ".tmp");
+        Path stringsTemporary = siblingPath(stringsFile, ".tmp");
+        long buildId = ThreadLocalRandom.current().nextLong();
+        try (FileChannel indexChannel = FileChannel.open(indexTemporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel stringsChannel = FileChannel.open(stringsTemporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Builder builder = new Builder(
+                indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + slots * SLOT_BYTES),
+                stringsChannel.map(FileChannel.MapMode.READ_WRITE, 0, stringsCapacity),
+                (int) slots);
+            builder.strings.putInt(0, STRINGS_MAGIC).putInt(4, VERSION).putLong(8, buildId);
+            if (csv) {
+                readCsv(source, builder);
+            } else {
+                readJsonLines(source, builder);
+            }
+            builder.index.putInt(HEADER_VERSION, VERSION)
+                .putInt(HEADER_SLOT_BYTES, SLOT_BYTES)
+                .putInt(HEADER_SLOT_COUNT, (int) slots)
+                .putInt(HEADER_TRACK_COUNT, builder.trackCount)
+                .putLong(HEADER_SOURCE_LENGTH, sourceLength)
+                .putLong(HEADER_SOURCE_MODIFIED, sourceModified)
+                .putLong(HEADER_STRINGS_LENGTH, builder.stringsEnd)
+                .putLong(HEADER_BUILD_ID, buildId);
+            builder.index.putInt(HEADER_MAGIC, INDEX_MAGIC);
+            builder.index.force();
+            builder.strings.force();
+            stringsChannel.truncate(builder.stringsEnd);
+            if (builder.skippedRows > 0 || builder.duplicateIds > 0) {
+                System.out.println("📚 " + source + ": skipped " + builder.skippedRows + " row(s) without an id, "
+                    + builder.duplicateIds + " duplicate id(s) kept their last row");
+            }
+        }
+        Files.move(stringsTemporary, stringsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTemporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long countRows(Path source, boolean csv) throws IOException {
+        long rows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    rows++;
+                }
+            }
+        }
+        return csv ? Math.max(0, rows - 1) : rows;
+    }
+
+    private static void readJsonLines(Path source, Builder builder) throws IOException {
+        TrackEventDecoder decoder = new TrackEventDecoder();
+        TrackEvent track = new TrackEvent();
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (decoder.decode(line, track)) {
+                    builder.add(track.getTrackId(), track.getTitle(), track.getArtist(), track.getLength(),
+                        track.getImagePath());
+                } else {
+                    builder.skippedRows++;
+                }
+            }
+        }
+    }
+
+    private static void readCsv(Path source, Builder builder) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                return;
+            }
+            List<String> columns = parseCsvLine(headerLine.replace("\uFEFF", ""), new ArrayList<>());
+            int id = Math.max(columnIndex(columns, "id"), columnIndex(columns, "track_id"));
+            if (id < 0) {
+                throw new IOException(source + " has no id or track_id column");
+            }
+            int title = columnIndex(columns, "title");
+            int artist = columnIndex(columns, "artist");
+            int length = columnIndex(columns, "length");
+            int imagePath = columnIndex(columns, "image_path");
+
+            List<String> fields = new ArrayList<>(columns.size());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                parseCsvLine(line, fields);
+                builder.add(column(fields, id), column(fields, title), column(fields, artist),
+                    column(fields, length), column(fields, imagePath));
+            }
+        }
+    }
+
+    private static int columnIndex(List<String> columns, String name) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).trim().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String column(List<String> fields, int column) {
+        return column >= 0 && column < fields.size() ? fields.get(column) : null;
+    }
+
+    /** Splits one CSV line into {@code fields}; quoted fields may contain commas and doubled quotes. */
+    static List<String> parseCsvLine(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /** Writes slots and strings into the mapped files of a build. */
+    private static final class Builder {
+        final MappedByteBuffer index;
+        final MappedByteBuffer strings;
+        final int slotCount;
+        final Map<String, Integer> interned = new HashMap<>();
+        int stringsEnd = STRINGS_HEADER_BYTES;
+        int trackCount;
+        int skippedRows;
+        int duplicateIds;
+
+        Builder(MappedByteBuffer index, MappedByteBuffer strings, int slotCount) {
+            this.index = index;
+            this.strings = strings;
+            this.slotCount = slotCount;
+        }
+
+        void add(String id, String title, String artist, String length, String imagePath) throws IOException {
+            if (id == null || id.isEmpty()) {
+                skippedRows++;
+                return;
+            }
+            byte[] idUtf8 = id.getBytes(StandardCharsets.UTF_8);
+            long hash = hash(idUtf8);
+            int mask = slotCount - 1;
+            int offset;
+            for (int slot = slotFor(hash, mask); ; slot = (slot + 1) & mask) {
+                offset = HEADER_BYTES + slot * SLOT_BYTES;
+                int idReference = index.getInt(offset + SLOT_ID);
+                if (idReference == 0) {
+                    if (trackCount + 1 >= slotCount) {
+                        throw new IOException("Track catalog has more rows than it counted");
+                    }
+                    index.putLong(offset + SLOT_HASH, hash).putInt(offset + SLOT_ID, append(idUtf8));
+                    trackCount++;
+                    break;
+                }
+                if (index.getLong(offset + SLOT_HASH) == hash && matches(idReference, idUtf8)) {
+                    duplicateIds++;
+                    break;
+                }
+            }
+            index.putInt(offset + SLOT_TITLE, intern(title))
+                .putInt(offset + SLOT_ARTIST, intern(artist))
+                .putInt(offset + SLOT_LENGTH, intern(length))
+                .putInt(offset + SLOT_IMAGE_PATH, intern(imagePath));
+        }
+
+        private boolean matches(int reference, byte[] utf8) {
+            if (strings.getInt(reference) != utf8.length) {
+                return false;
+            }
+            for (int i = 0; i < utf8.length; i++) {
+                if (strings.get(reference + 4 + i) != utf8[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int intern(String value) throws IOException {
+            if (value == null) {
+                return 0;
+            }
+            Integer known = interned.get(value);
+            if (known != null) {
+                return known;
+            }
+            int reference = append(value.getBytes(StandardCharsets.UTF_8));
+            if (interned.size() >= MAX_INTERNED_STRINGS) {
+                interned.clear();
+            }
+            interned.put(value, reference);
+            return reference;
+        }
+
+        private int append(byte[] utf8) throws IOException {
+            if ((long) stringsEnd + 4 + utf8.length > strings.capacity()) {
+                throw new IOException("Track catalog strings outgrew their estimate");
+            }
+            int reference = stringsEnd;
+            strings.putInt(reference, utf8.length);
+            ByteBuffer view = strings.duplicate();
+            view.position(reference + 4);
+            view.put(utf8);
+            stringsEnd += 4 + utf8.length;
+            return reference;
+        }
+    }
+
+    // --- Command line -------------------------------------------------------
+
+    private static final String USAGE = String.join("\n",
+        "Usage: java TrackCatalog CATALOG [ID...]",
+        "  Builds the index for CATALOG (.csv or JSONL) if needed and looks up each ID.",
+        "  --generate N   first write a CATALOG with N synthetic tracks, for benchmarking");
+
+    /** Opens (building if needed) a catalog and prints the tracks for the given IDs. */
+    public static void main(String[] args) throws IOException {
+        Path source = null;
+        long generate = -1;
+        List<String> ids = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--generate".equals(arg)) {
+                    if (i + 1 >= args.length) {
+                        throw new IllegalArgumentException("Missing value for " + arg);
+                    }
+                    generate = Long.parseLong(args[++i]);
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                } else if (source == null) {
+                    source = Paths.get(arg);
+                } else {
+                    ids.add(arg);
+                }
+            }
+            if (source == null) {
+                throw new IllegalArgumentException("Missing catalog file");
+            }
+        } catch (IllegalArgumentException argumentException) {
+            System.err.println(argumentException.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        if (generate >= 0) {
+            writeSyntheticCatalog(source, generate);
+        }
+        TrackCatalog catalog;
+        try {
+            catalog = open(source);
+        } catch (NoSuchFileException missing) {
+            System.err.println("No such catalog: " + source);
+            System.exit(1);
+            return;
+        }
+        System.out.println("📚 " + catalog.size() + " tracks, " + (catalog.wasBuilt() ? "index built" : "index opened")
+            + " in " + catalog.getOpenMillis() + " ms");
+        TrackEvent track = new TrackEvent();
+        for (String id : ids) {
+            long start = System.nanoTime();
+            boolean found = catalog.find(id, track);
+            long micros = (System.nanoTime() - start) / 1000L;
+            System.out.println(found
+                ? "🎵 " + id + ": " + track.getTitle() + " — " + track.getArtist() + " [" + track.getLength() + "] "
+                    + track.getImagePath() + " (" + micros + " µs)"
+                : "❓ " + id + ": not in catalog (" + micros + " µs)");
+        }
+    }
+
+    /** Writes {@code count} tracks as CSV, with IDs {@code 1..count} and a few hundred distinct artists. */
+    static void writeSyntheticCatalog(Path file, long count) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("id,title,artist,length,image_path\n");
+            Random random = new Random(count);
+            StringBuilder row = new StringBuilder(128);
+            for (long id = 1; id <= count; id++) {
+                int artist = random.nextInt(500);
+                row.setLength(0);
+                row.append(id).append(",\"Track ").append(Long.toString(id, 36)).append(", take ")
+                    .append(random.nextInt(9) + 1).append("\",Artist ").append(artist).append(',')
+                    .append(1 + random.nextInt(6)).append(':').append(String.format(Locale.ROOT, "%02d", random.nextInt(60)))
+                    .append(",/var/lib/artwork/").append(artist).append('/').append(id % 2000).append(".jpg\n");
+                writer.write(row.toString());
+            }
+        }
+    }
+}
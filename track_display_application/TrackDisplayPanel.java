@@ -0,0 +1,397 @@
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.event.HierarchyEvent;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.ImageIcon;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingConstants;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Artwork, title, artist and length for one feed.
+ *
+ * Updates may be submitted from any thread; they are coalesced and rendered
+ * on the EDT, touching only the components whose fields changed. The panel
+ * has no window or connection of its own, so one process can host many of
+ * them (see {@link MultiZoneDisplay}); all panels share the artwork cache
+ * they are given. Change listeners hear about every visible change, which
+ * lets offscreen renderers ({@link HeadlessRenderer}) paint only when needed.
+ * Tracks announced as next up are prepared in advance by a
+ * {@link TrackPrefetcher}.
+ *
+ * While a track plays and the panel is on screen, the shared
+ * {@link AnimationClock} pulses the labels' glow and moves a
+ * {@link TrackProgressBar} along the track's length; each frame repaints
+ * only the glows and the columns of the bar that moved. Pausing, or taking
+ * the panel off screen, takes it off the clock. Playback position is
+ * counted locally from when the track was first shown.
+ */
+public class TrackDisplayPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    // Fields that identify a track; a change in any of them is a track change.
+    private static final int TRACK_FIELDS = TrackEvent.TITLE | TrackEvent.ARTIST | TrackEvent.IMAGE_PATH;
+    private static final long PULSE_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(2400);
+    private static final float MIN_GLOW_LEVEL = 0.35f;
+
+    private final JLabel imageDisplayLabel;
+    private final GlowTextLabel trackTitleLabel;
+    private final GlowTextLabel artistNameLabel;
+    private final GlowTextLabel songLengthLabel;
+    private final TrackProgressBar progressBar;
+    private final TrackEventPool eventPool = new TrackEventPool();
+    private final UpdateCoalescer<TrackEvent> displayUpdates =
+        new UpdateCoalescer<>(this::renderTrackEvent, eventPool::release);
+    private final DisplayMetrics displayMetrics = new DisplayMetrics(displayUpdates);
+    private final ArtworkCache artworkCache;
+    private String requestedImagePath;
+    private volatile BufferedImage displayedArtwork;
+    // Fields currently on screen, diffed against each rendered event (EDT-confined).
+    private final TrackEvent displayedEvent = new TrackEvent();
+    private boolean hasRenderedEvent;
+    // Timestamps of the last rendered event, consumed by the next completed paint (EDT-confined).
+    private boolean awaitingPaint;
+    private long paintReceivedNanos;
+    private long paintRenderStartNanos;
+    private long paintSentAtMillis;
+    private final ChangeEvent changeEvent = new ChangeEvent(this);
+    private volatile PlayJournal playJournal;
+    private boolean firstMeaningfulPaintRecorded;
+    private final TrackPrefetcher prefetcher;
+    // Playback position and animation state (EDT-confined).
+    private final AnimationClock animationClock = AnimationClock.shared();
+    private final AnimationClock.Animation animation = this::onAnimationFrame;
+    private boolean animating;
+    private long trackLengthNanos = -1;
+    private long playedNanos;
+    // When playback last resumed; 0 while paused.
+    private long playingSinceNanos;
+
+    public TrackDisplayPanel(ArtworkCache artworkCache) {
+        this.artworkCache = artworkCache;
+        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+        setBorder(new EmptyBorder(30, 30, 30, 30));
+        setBackground(Color.BLACK);
+
+        // Add vertical glue for centering
+        add(Box.createVerticalGlue());
+
+        // Image display
+        imageDisplayLabel = new JLabel();
+        imageDisplayLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        imageDisplayLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        add(imageDisplayLabel);
+        add(Box.createRigidArea(new Dimension(0, 25)));
+
+        // Track title
+        trackTitleLabel = new GlowTextLabel(new Font("SansSerif", Font.BOLD, 32));
+        add(trackTitleLabel);
+        add(Box.createRigidArea(new Dimension(0, 15)));
+
+        // Artist name
+        artistNameLabel = new GlowTextLabel(new Font("SansSerif", Font.PLAIN, 24));
+        add(artistNameLabel);
+        add(Box.createRigidArea(new Dimension(0, 15)));
+
+        // Song length
+        songLengthLabel = new GlowTextLabel(new Font("Monospaced", Font.PLAIN, 20));
+        add(songLengthLabel);
+        add(Box.createRigidArea(new Dimension(0, 15)));
+
+        // Playback progress
+        progressBar = new TrackProgressBar();
+        add(progressBar);
+
+        // Add vertical glue for centering
+        add(Box.createVerticalGlue());
+
+        prefetcher = new TrackPrefetcher(artworkCache, trackTitleLabel, artistNameLabel, songLengthLabel);
+        addHierarchyListener(event -> {
+            if ((event.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                updateAnimation();
+            }
+        });
+    }
+
+    @Override
+    public void paint(Graphics graphics) {
+        super.paint(graphics);
+        recordPaintCompleted();
+        if (!firstMeaningfulPaintRecorded && hasRenderedEvent) {
+            firstMeaningfulPaintRecorded = true;
+            System.out.println("⏱️ First meaningful paint " + displayMetrics.recordFirstMeaningfulPaint()
+                + " ms after JVM start");
+        }
+    }
+
+    public void updateTrackDisplayInformation(Map<String, Object> trackInformation) {
+        updateTrackDisplayInformation(TrackEvent.fromMap(trackInformation));
+    }
+
+    /**
+     * Queues an update for the EDT. Updates that arrive before the EDT gets
+     * to them are coalesced; only the newest one is rendered.
+     */
+    public void updateTrackDisplayInformation(TrackEvent trackEvent) {
+        displayUpdates.submit(trackEvent);
+    }
+
+    /** Prepares the artwork and text of upcoming tracks in the background. Safe to call from any thread. */
+    public void prefetch(List<TrackEvent> upcoming) {
+        prefetcher.prefetch(upcoming);
+    }
+
+    /**
+     * Renders a restored state immediately instead of queueing it, so the
+     * next paint shows it. Must run on the EDT.
+     */
+    void showRestoredState(TrackEvent trackEvent) {
+        renderTrackEvent(trackEvent);
+    }
+
+    /** A copy of the fields on screen, or null before anything was rendered. Must run on the EDT. */
+    TrackEvent copyDisplayedEvent() {
+        if (!hasRenderedEvent) {
+            return null;
+        }
+        TrackEvent copy = new TrackEvent();
+        copy.copyFrom(displayedEvent);
+        return copy;
+    }
+
+    private void renderTrackEvent(TrackEvent trackEvent) {
+        long renderStartNanos = System.nanoTime();
+        displayMetrics.recordRenderStarted(trackEvent, renderStartNanos);
+        awaitingPaint = true;
+        paintReceivedNanos = trackEvent.getReceivedNanos();
+        paintRenderStartNanos = renderStartNanos;
+        paintSentAtMillis = trackEvent.getSentAtMillis();
+        try {
+            int changedFields = hasRenderedEvent
+                ? trackEvent.changedFieldsFrom(displayedEvent)
+                : TrackEvent.ALL_FIELDS;
+            if (hasRenderedEvent && (changedFields & TRACK_FIELDS) != 0) {
+                displayMetrics.recordTrackChange(prefetcher.isPrefetched(trackEvent));
+            }
+            displayedEvent.copyFrom(trackEvent);
+            hasRenderedEvent = true;
+            PlayJournal journal = playJournal;
+            if (journal != null && changedFields != 0) {
+                journal.append(trackEvent);
+            }
+
+            boolean changed = applyChangedFields(trackEvent, changedFields);
+            changed |= updatePlayback(trackEvent, changedFields);
+            if (changed) {
+                fireStateChanged();
+            } else {
+                // Nothing to repaint, so the event is already on screen.
+                recordPaintCompleted();
+            }
+        } catch (Exception updateException) {
+            System.err.println("Error updating display: " + updateException.getMessage());
+            updateException.printStackTrace();
+        }
+    }
+
+    /**
+     * Touches only the components whose fields changed, so a play/pause
+     * toggle just restyles the three labels. Returns true if anything
+     * visible changed.
+     */
+    private boolean applyChangedFields(TrackEvent trackEvent, int changedFields) {
+        boolean changed = false;
+        if ((changedFields & TrackEvent.IMAGE_PATH) != 0) {
+            changed |= updateImageDisplay(valueOrEmpty(trackEvent.getImagePath()));
+        }
+        if ((changedFields & TrackEvent.TITLE) != 0) {
+            changed |= trackTitleLabel.setText(trackEvent.getTitle());
+        }
+        if ((changedFields & TrackEvent.ARTIST) != 0) {
+            changed |= artistNameLabel.setText(trackEvent.getArtist());
+        }
+        if ((changedFields & TrackEvent.LENGTH) != 0) {
+            changed |= songLengthLabel.setText(trackEvent.getLength());
+        }
+        if ((changedFields & TrackEvent.PLAYING) != 0) {
+            boolean isPlaying = trackEvent.isPlaying();
+            changed |= trackTitleLabel.setPlaying(isPlaying);
+            changed |= artistNameLabel.setPlaying(isPlaying);
+            changed |= songLengthLabel.setPlaying(isPlaying);
+        }
+        return changed;
+    }
+
+    /**
+     * Restarts the playback position on a track change, pauses or resumes
+     * it, and moves the progress bar to match. Returns true if the bar
+     * changed.
+     */
+    private boolean updatePlayback(TrackEvent trackEvent, int changedFields) {
+        long now = System.nanoTime();
+        boolean wasPlaying = playingSinceNanos != 0;
+        if ((changedFields & TRACK_FIELDS) != 0) {
+            playedNanos = 0;
+            playingSinceNanos = wasPlaying ? now : 0;
+        }
+        if ((changedFields & TrackEvent.LENGTH) != 0) {
+            long lengthMillis = TrackProgressBar.parseLengthMillis(trackEvent.getLength());
+            trackLengthNanos = lengthMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(lengthMillis) : -1;
+        }
+        if ((changedFields & TrackEvent.PLAYING) != 0) {
+            if (trackEvent.isPlaying() && !wasPlaying) {
+                playingSinceNanos = now;
+            } else if (!trackEvent.isPlaying() && wasPlaying) {
+                playedNanos += now - playingSinceNanos;
+                playingSinceNanos = 0;
+            }
+        }
+        boolean changed = progressBar.setPlaying(trackEvent.isPlaying());
+        changed |= progressBar.setProgress(progressAt(now));
+        updateAnimation();
+        return changed;
+    }
+
+    /** Fraction of the track played as of {@code nanos}, or -1 if its length is unknown. */
+    float progressAt(long nanos) {
+        if (trackLengthNanos <= 0) {
+            return -1f;
+        }
+        long played = playedNanos + (playingSinceNanos != 0 ? nanos - playingSinceNanos : 0);
+        return (float) ((double) played / trackLengthNanos);
+    }
+
+    /** Puts the panel on the animation clock while it plays on screen, and takes it off otherwise. */
+    private void updateAnimation() {
+        boolean animate = playingSinceNanos != 0 && isShowing();
+        if (animate == animating) {
+            return;
+        }
+        animating = animate;
+        if (animate) {
+            animationClock.start(animation);
+        } else {
+            animationClock.stop(animation);
+        }
+    }
+
+    /** One frame: pulses the glows and moves the progress bar, each repainting only what it covers. */
+    void onAnimationFrame(long frameNanos) {
+        double phase = (double) (frameNanos % PULSE_PERIOD_NANOS) / PULSE_PERIOD_NANOS;
+        float level = MIN_GLOW_LEVEL + (1f - MIN_GLOW_LEVEL) * (float) (0.5 + 0.5 * Math.cos(2 * Math.PI * phase));
+        trackTitleLabel.setGlowLevel(level);
+        artistNameLabel.setGlowLevel(level);
+        songLengthLabel.setGlowLevel(level);
+        progressBar.setProgress(progressAt(frameNanos));
+    }
+
+    /**
+     * Shows cached artwork immediately when there is some, and lets the
+     * artwork cache decode and scale anything else off the EDT. Returns
+     * true if the displayed artwork changed.
+     */
+    private boolean updateImageDisplay(String imageFilePath) {
+        if (imageFilePath.equals(requestedImagePath) && displayedArtwork != null) {
+            return false;
+        }
+        requestedImagePath = imageFilePath;
+        if (imageFilePath.trim().isEmpty()) {
+            return showArtwork(null);
+        }
+
+        boolean changed = showArtwork(artworkCache.peek(imageFilePath));
+        requestArtwork(imageFilePath);
+        return changed;
+    }
+
+    /** Asks again if other zones' requests pushed this one out of the shared decode queue. */
+    private void requestArtwork(String imageFilePath) {
+        artworkCache.load(imageFilePath, loadedImage -> {
+            if (imageFilePath.equals(requestedImagePath) && showArtwork(loadedImage)) {
+                fireStateChanged();
+            }
+        }, () -> {
+            if (imageFilePath.equals(requestedImagePath)) {
+                requestArtwork(imageFilePath);
+            }
+        });
+    }
+
+    private boolean showArtwork(BufferedImage artwork) {
+        if (artwork == displayedArtwork) {
+            return false;
+        }
+        displayedArtwork = artwork;
+        imageDisplayLabel.setIcon(artwork != null ? new ImageIcon(artwork) : null);
+        return true;
+    }
+
+    /** Applies text and style; each label repaints only itself, and only if it changed. */
+    boolean updateTextDisplayElements(String title, String artist, String length, boolean isPlaying) {
+        boolean changed = trackTitleLabel.setText(title);
+        changed |= artistNameLabel.setText(artist);
+        changed |= songLengthLabel.setText(length);
+        changed |= trackTitleLabel.setPlaying(isPlaying);
+        changed |= artistNameLabel.setPlaying(isPlaying);
+        changed |= songLengthLabel.setPlaying(isPlaying);
+        return changed;
+    }
+
+    /** Journals every rendered event that changed what is shown; null stops journaling. */
+    public void setPlayJournal(PlayJournal playJournal) {
+        this.playJournal = playJournal;
+    }
+
+    /** Registers a listener notified on the EDT whenever what the panel shows changes. */
+    public void addChangeListener(ChangeListener listener) {
+        listenerList.add(ChangeListener.class, listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listenerList.remove(ChangeListener.class, listener);
+    }
+
+    private void fireStateChanged() {
+        for (ChangeListener listener : listenerList.getListeners(ChangeListener.class)) {
+            listener.stateChanged(changeEvent);
+        }
+    }
+
+    private static String valueOrEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private void recordPaintCompleted() {
+        if (awaitingPaint) {
+            awaitingPaint = false;
+            displayMetrics.recordPainted(paintReceivedNanos, paintRenderStartNanos, paintSentAtMillis, System.nanoTime());
+        }
+    }
+
+    public JLabel getImageDisplayLabel() { return imageDisplayLabel; }
+    public GlowTextLabel getTrackTitleLabel() { return trackTitleLabel; }
+    public GlowTextLabel getArtistNameLabel() { return artistNameLabel; }
+    public GlowTextLabel getSongLengthLabel() { return songLengthLabel; }
+    public TrackProgressBar getProgressBar() { return progressBar; }
+    /** True while the panel is on the animation clock. Must run on the EDT. */
+    public boolean isAnimating() { return animating; }
+    public UpdateCoalescer<TrackEvent> getDisplayUpdateCoalescer() { return displayUpdates; }
+    /** Pool for events passed to {@link #updateTrackDisplayInformation}, which returns them once rendered or replaced. */
+    public TrackEventPool getEventPool() { return eventPool; }
+    public DisplayMetrics getDisplayMetrics() { return displayMetrics; }
+    public PlayJournal getPlayJournal() { return playJournal; }
+    public ArtworkCache getArtworkCache() { return artworkCache; }
+    /** The scaled artwork on screen, or null. Cached images are never modified, so any thread may read it. */
+    public BufferedImage getDisplayedArtwork() { return displayedArtwork; }
+}
@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * One decoded update from the track feed.
+ *
+ * Instances are mutable so the decoder can fill them in place; a field the
+ * line did not carry is left at its cleared value (null / false). Setting a
+ * display field also marks it present, which is how a {@link Type#DELTA}
+ * tells "unchanged" apart from "cleared".
+ */
+public class TrackEvent {
+    /** Bits for the display fields, used in presence and change masks. */
+    public static final int TITLE = 1;
+    public static final int ARTIST = 1 << 1;
+    public static final int LENGTH = 1 << 2;
+    public static final int IMAGE_PATH = 1 << 3;
+    public static final int PLAYING = 1 << 4;
+    public static final int ALL_FIELDS = TITLE | ARTIST | LENGTH | IMAGE_PATH | PLAYING;
+
+    /** Most upcoming tracks a {@link Type#NEXT_UP} message keeps; further entries are ignored. */
+    public static final int MAX_UPCOMING = 8;
+
+    /**
+     * The {@code type} of a feed message; lines without one are {@link #FULL}.
+     * The binary wire format sends ordinals, so new types go at the end.
+     */
+    public enum Type { FULL, DELTA, SNAPSHOT_REQUEST, UNKNOWN, NEXT_UP, HEARTBEAT }
+
+    private Type type = Type.FULL;
+    private String trackId;
+    private long sequence;
+    private int presentFields;
+    private String title;
+    private String artist;
+    private String length;
+    private String imagePath;
+    private boolean playing;
+    private long sentAtMillis;
+    private long receivedNanos;
+    private long parsedNanos;
+    // Tracks announced by a NEXT_UP message; allocated on first use.
+    private List<TrackEvent> upcoming;
+    // The pool this event came from, if any; neither is touched by clear() or copyFrom().
+    TrackEventPool pool;
+    boolean inPool;
+
+    public void clear() {
+        type = Type.FULL;
+        trackId = null;
+        sequence = 0;
+        presentFields = 0;
+        title = null;
+        artist = null;
+        length = null;
+        imagePath = null;
+        playing = false;
+        sentAtMillis = 0;
+        receivedNanos = 0;
+        parsedNanos = 0;
+        if (upcoming != null) {
+            upcoming.clear();
+        }
+    }
+
+    public void copyFrom(TrackEvent other) {
+        type = other.type;
+        trackId = other.trackId;
+        sequence = other.sequence;
+        presentFields = other.presentFields;
+        title = other.title;
+        artist = other.artist;
+        length = other.length;
+        imagePath = other.imagePath;
+        playing = other.playing;
+        sentAtMillis = other.sentAtMillis;
+        receivedNanos = other.receivedNanos;
+        parsedNanos = other.parsedNanos;
+        if (upcoming != null) {
+            upcoming.clear();
+        }
+        if (!other.getUpcoming().isEmpty()) {
+            if (upcoming == null) {
+                upcoming = new ArrayList<>(other.upcoming.size());
+            }
+            upcoming.addAll(other.upcoming);
+        }
+    }
+
+    /**
+     * Adds a track to the upcoming list of a {@link Type#NEXT_UP} message.
+     * Returns false, ignoring it, once {@link #MAX_UPCOMING} are listed.
+     */
+    public boolean addUpcoming(TrackEvent track) {
+        if (upcoming == null) {
+            upcoming = new ArrayList<>(4);
+        }
+        if (upcoming.size() >= MAX_UPCOMING) {
+            return false;
+        }
+        upcoming.add(track);
+        return true;
+    }
+
+    /**
+     * Copies the display fields {@code delta} carries into this event and
+     * returns the bits of those whose value actually changed.
+     */
+    public int mergeFrom(TrackEvent delta) {
+        int changed = 0;
+        int present = delta.presentFields;
+        if ((present & TITLE) != 0 && !Objects.equals(title, delta.title)) {
+            title = delta.title;
+            changed |= TITLE;
+        }
+        if ((present & ARTIST) != 0 && !Objects.equals(artist, delta.artist)) {
+            artist = delta.artist;
+            changed |= ARTIST;
+        }
+        if ((present & LENGTH) != 0 && !Objects.equals(length, delta.length)) {
+            length = delta.length;
+            changed |= LENGTH;
+        }
+        if ((present & IMAGE_PATH) != 0 && !Objects.equals(imagePath, delta.imagePath)) {
+            imagePath = delta.imagePath;
+            changed |= IMAGE_PATH;
+        }
+        if ((present & PLAYING) != 0 && playing != delta.playing) {
+            playing = delta.playing;
+            changed |= PLAYING;
+        }
+        presentFields |= present;
+        return changed;
+    }
+
+    /** Returns the bits of the display fields whose values differ from {@code other}. */
+    public int changedFieldsFrom(TrackEvent other) {
+        int changed = 0;
+        if (!Objects.equals(title, other.title)) changed |= TITLE;
+        if (!Objects.equals(artist, other.artist)) changed |= ARTIST;
+        if (!Objects.equals(length, other.length)) changed |= LENGTH;
+        if (!Objects.equals(imagePath, other.imagePath)) changed |= IMAGE_PATH;
+        if (playing != other.playing) changed |= PLAYING;
+        return changed;
+    }
+
+    /**
+     * Builds an event from the legacy {@code Map} representation produced by
+     * {@link Main.SimpleJSONParser#parseJSON(String)}.
+     */
+    public static TrackEvent fromMap(Map<String, Object> trackInformation) {
+        TrackEvent event = new TrackEvent();
+        event.setTitle(Main.SimpleJSONParser.getString(trackInformation, "title", null));
+        event.setArtist(Main.SimpleJSONParser.getString(trackInformation, "artist", null));
+        event.setLength(Main.SimpleJSONParser.getString(trackInformation, "length", null));
+        event.setImagePath(Main.SimpleJSONParser.getString(trackInformation, "image_path", null));
+        event.setPlaying(Main.SimpleJSONParser.getBoolean(trackInformation, "playing?", false));
+        return event;
+    }
+
+    public Type getType() { return type; }
+    /** Track the message belongs to, from the optional {@code track_id} field. */
+    public String getTrackId() { return trackId; }
+    /** Stream sequence number from the optional {@code seq} field, or 0 if unsequenced. */
+    public long getSequence() { return sequence; }
+    /** Bits of the display fields this message carried. */
+    public int getPresentFields() { return presentFields; }
+    public String getTitle() { return title; }
+    public String getArtist() { return artist; }
+    public String getLength() { return length; }
+    public String getImagePath() { return imagePath; }
+    public boolean isPlaying() { return playing; }
+    /** Server send time in epoch millis from the optional {@code sent_at} field, or 0. */
+    public long getSentAtMillis() { return sentAtMillis; }
+    /** {@code System.nanoTime()} when the record arrived, or 0 if it did not come from the feed. */
+    public long getReceivedNanos() { return receivedNanos; }
+    public long getParsedNanos() { return parsedNanos; }
+    /** Tracks a {@link Type#NEXT_UP} message announced, soonest first; empty for other messages. */
+    public List<TrackEvent> getUpcoming() { return upcoming != null ? upcoming : Collections.<TrackEvent>emptyList(); }
+
+    public void setType(Type type) { this.type = type; }
+    public void setTrackId(String trackId) { this.trackId = trackId; }
+    public void setSequence(long sequence) { this.sequence = sequence; }
+    public void setTitle(String title) { this.title = title; presentFields |= TITLE; }
+    public void setArtist(String artist) { this.artist = artist; presentFields |= ARTIST; }
+    public void setLength(String length) { this.length = length; presentFields |= LENGTH; }
+    public void setImagePath(String imagePath) { this.imagePath = imagePath; presentFields |= IMAGE_PATH; }
+    public void setPlaying(boolean playing) { this.playing = playing; presentFields |= PLAYING; }
+    public void setSentAtMillis(long sentAtMillis) { this.sentAtMillis = sentAtMillis; }
+    public void setReceivedNanos(long receivedNanos) { this.receivedNanos = receivedNanos; }
+    public void setParsedNanos(long parsedNanos) { this.parsedNanos = parsedNanos; }
+
+    @Override
+    public String toString() {
+        return "TrackEvent{type=" + type + ", track_id=" + trackId + ", seq=" + sequence + ", title=" + title + ", artist=" + artist + ", length=" + length
+            + ", image_path=" + imagePath + ", playing?=" + playing
+            + (upcoming != null && !upcoming.isEmpty() ? ", upcoming=" + upcoming : "") + "}";
+    }
+}
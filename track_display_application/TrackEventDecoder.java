@@ -0,0 +1,673 @@
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single-pass JSON decoder for feed lines.
+ *
+ * The decoder walks a UTF-8 byte buffer exactly once and writes the known
+ * track fields straight into a {@link TrackEvent}. Unknown fields, nested
+ * objects and arrays are skipped without materialising them. Escape-free
+ * strings are looked up directly from the input bytes; escaped strings are
+ * unescaped into a scratch buffer that is reused between lines, as is the
+ * buffer used to encode {@code CharSequence} input. Values go through a
+ * {@link Utf8Interner}, so the titles and artists a feed repeats are decoded
+ * once and shared rather than allocated per line.
+ *
+ * Instances are not thread-safe; use one decoder per reader thread.
+ */
+public class TrackEventDecoder {
+
+    private static final byte[] KEY_TITLE = "title".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_ARTIST = "artist".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_LENGTH = "length".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_IMAGE_PATH = "image_path".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_PLAYING = "playing?".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_SENT_AT = "sent_at".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_TYPE = "type".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_TRACK_ID = "track_id".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_SEQ = "seq".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_TRACKS = "tracks".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] TYPE_FULL = "full".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE_DELTA = "delta".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE_SNAPSHOT_REQUEST = "snapshot_request".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE_NEXT_UP = "next_up".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE_HEARTBEAT = "heartbeat".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int FIELD_UNKNOWN = 0;
+    private static final int FIELD_TITLE = 1;
+    private static final int FIELD_ARTIST = 2;
+    private static final int FIELD_LENGTH = 3;
+    private static final int FIELD_IMAGE_PATH = 4;
+    private static final int FIELD_PLAYING = 5;
+    private static final int FIELD_SENT_AT = 6;
+    private static final int FIELD_TYPE = 7;
+    private static final int FIELD_TRACK_ID = 8;
+    private static final int FIELD_SEQ = 9;
+    private static final int FIELD_TRACKS = 10;
+
+    private static final int VALUE_STRING = 0;
+    private static final int VALUE_NUMBER = 1;
+    private static final int VALUE_TRUE = 2;
+    private static final int VALUE_FALSE = 3;
+    private static final int VALUE_NULL = 4;
+    private static final int VALUE_NESTED = 5;
+
+    private static final MalformedJsonException MALFORMED = new MalformedJsonException();
+
+    private byte[] input;
+    private int position;
+    private int limit;
+
+    private byte[] lineBuffer = new byte[512];
+    private byte[] scratch = new byte[256];
+    private final Utf8Interner interner = new Utf8Interner();
+
+    // Location of the most recently scanned string body or raw value.
+    private byte[] valueBuffer;
+    private int valueOffset;
+    private int valueLength;
+
+    /**
+     * Decodes one line of text into {@code target}.
+     *
+     * @return false if the line is not a well-formed JSON object
+     */
+    public boolean decode(CharSequence line, TrackEvent target) {
+        if (line == null) {
+            target.clear();
+            return false;
+        }
+        int encodedLength = encodeLine(line);
+        return decode(lineBuffer, 0, encodedLength, target);
+    }
+
+    /**
+     * Decodes one UTF-8 encoded line into {@code target}.
+     *
+     * @return false if the bytes are not a well-formed JSON object
+     */
+    public boolean decode(byte[] buffer, int offset, int length, TrackEvent target) {
+        target.clear();
+        begin(buffer, offset, length);
+        try {
+            parseObject(target, null);
+            return true;
+        } catch (MalformedJsonException malformed) {
+            return false;
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Decodes every top-level field of a line into a map, for callers of the
+     * legacy {@link Main.SimpleJSONParser} API. Strings map to {@code String},
+     * booleans to {@code Boolean}, and numbers or nested values to their raw
+     * JSON text. Returns an empty map if the line is malformed.
+     */
+    public Map<String, Object> decodeToMap(CharSequence line) {
+        Map<String, Object> result = new HashMap<>();
+        if (line == null) {
+            return result;
+        }
+        int encodedLength = encodeLine(line);
+        begin(lineBuffer, 0, encodedLength);
+        try {
+            parseObject(null, result);
+        } catch (MalformedJsonException malformed) {
+            result.clear();
+        } finally {
+            end();
+        }
+        return result;
+    }
+
+    public Utf8Interner getInterner() {
+        return interner;
+    }
+
+    private void begin(byte[] buffer, int offset, int length) {
+        input = buffer;
+        position = offset;
+        limit = offset + length;
+    }
+
+    private void end() {
+        input = null;
+        valueBuffer = null;
+    }
+
+    private void parseObject(TrackEvent event, Map<String, Object> map) throws MalformedJsonException {
+        skipWhitespace();
+        parseMembers(event, map, true);
+        skipWhitespace();
+        if (position != limit) {
+            throw MALFORMED;
+        }
+    }
+
+    private void parseMembers(TrackEvent event, Map<String, Object> map, boolean topLevel) throws MalformedJsonException {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            expect('"');
+            scanString();
+            int field = matchField();
+            String mapKey = map != null ? valueAsString() : null;
+
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (event != null && topLevel && field == FIELD_TRACKS && peek() == '[') {
+                parseUpcoming(event);
+            } else {
+                int valueType = scanValue();
+                if (event != null) {
+                    applyField(event, field, valueType);
+                } else {
+                    putField(map, mapKey, valueType);
+                }
+            }
+
+            skipWhitespace();
+            byte separator = next();
+            if (separator == '}') {
+                return;
+            }
+            if (separator != ',') {
+                throw MALFORMED;
+            }
+        }
+    }
+
+    /**
+     * Parses the {@code tracks} array of a next_up message into upcoming
+     * events. Entries that are not objects, or beyond
+     * {@link TrackEvent#MAX_UPCOMING}, are skipped.
+     */
+    private void parseUpcoming(TrackEvent event) throws MalformedJsonException {
+        expect('[');
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() == '{' && event.getUpcoming().size() < TrackEvent.MAX_UPCOMING) {
+                TrackEvent track = new TrackEvent();
+                parseMembers(track, null, false);
+                event.addUpcoming(track);
+            } else {
+                scanValue();
+            }
+            skipWhitespace();
+            byte separator = next();
+            if (separator == ']') {
+                return;
+            }
+            if (separator != ',') {
+                throw MALFORMED;
+            }
+        }
+    }
+
+    private void applyField(TrackEvent event, int field, int valueType) throws MalformedJsonException {
+        switch (field) {
+            case FIELD_TITLE:
+                event.setTitle(textValue(valueType));
+                break;
+            case FIELD_ARTIST:
+                event.setArtist(textValue(valueType));
+                break;
+            case FIELD_LENGTH:
+                event.setLength(textValue(valueType));
+                break;
+            case FIELD_IMAGE_PATH:
+                event.setImagePath(textValue(valueType));
+                break;
+            case FIELD_PLAYING:
+                if (valueType == VALUE_TRUE || valueType == VALUE_FALSE) {
+                    event.setPlaying(valueType == VALUE_TRUE);
+                }
+                break;
+            case FIELD_SENT_AT:
+                if (valueType == VALUE_NUMBER) {
+                    event.setSentAtMillis(valueAsLong());
+                }
+                break;
+            case FIELD_TYPE:
+                event.setType(valueType == VALUE_STRING ? matchType() : TrackEvent.Type.UNKNOWN);
+                break;
+            case FIELD_TRACK_ID:
+                event.setTrackId(textValue(valueType));
+                break;
+            case FIELD_SEQ:
+                if (valueType == VALUE_NUMBER) {
+                    event.setSequence(valueAsLong());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Parses the current number value without allocating. Fractions,
+     * exponents and values outside the range of a long are malformed.
+     */
+    private long valueAsLong() throws MalformedJsonException {
+        int end = valueOffset + valueLength;
+        boolean negative = valueBuffer[valueOffset] == '-';
+        int i = negative ? valueOffset + 1 : valueOffset;
+        if (i == end) {
+            throw MALFORMED;
+        }
+        // Accumulated negatively, like Long.parseLong, so Long.MIN_VALUE fits too.
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = valueBuffer[i] - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw MALFORMED;
+            }
+            value = value * 10 - digit;
+        }
+        if (negative) {
+            return value;
+        }
+        if (value == Long.MIN_VALUE) {
+            throw MALFORMED;
+        }
+        return -value;
+    }
+
+    private String textValue(int valueType) {
+        return valueType == VALUE_STRING || valueType == VALUE_NUMBER ? valueAsString() : null;
+    }
+
+    private void putField(Map<String, Object> map, String key, int valueType) {
+        switch (valueType) {
+            case VALUE_TRUE:
+                map.put(key, Boolean.TRUE);
+                break;
+            case VALUE_FALSE:
+                map.put(key, Boolean.FALSE);
+                break;
+            case VALUE_NULL:
+                map.remove(key);
+                break;
+            default:
+                map.put(key, valueAsString());
+                break;
+        }
+    }
+
+    private TrackEvent.Type matchType() {
+        if (matches(TYPE_DELTA)) return TrackEvent.Type.DELTA;
+        if (matches(TYPE_FULL)) return TrackEvent.Type.FULL;
+        if (matches(TYPE_SNAPSHOT_REQUEST)) return TrackEvent.Type.SNAPSHOT_REQUEST;
+        if (matches(TYPE_NEXT_UP)) return TrackEvent.Type.NEXT_UP;
+        if (matches(TYPE_HEARTBEAT)) return TrackEvent.Type.HEARTBEAT;
+        return TrackEvent.Type.UNKNOWN;
+    }
+
+    private int matchField() {
+        switch (valueLength) {
+            case 3:
+                return matches(KEY_SEQ) ? FIELD_SEQ : FIELD_UNKNOWN;
+            case 4:
+                return matches(KEY_TYPE) ? FIELD_TYPE : FIELD_UNKNOWN;
+            case 5:
+                return matches(KEY_TITLE) ? FIELD_TITLE : FIELD_UNKNOWN;
+            case 6:
+                if (matches(KEY_ARTIST)) return FIELD_ARTIST;
+                if (matches(KEY_LENGTH)) return FIELD_LENGTH;
+                return matches(KEY_TRACKS) ? FIELD_TRACKS : FIELD_UNKNOWN;
+            case 7:
+                return matches(KEY_SENT_AT) ? FIELD_SENT_AT : FIELD_UNKNOWN;
+            case 8:
+                if (matches(KEY_PLAYING)) return FIELD_PLAYING;
+                return matches(KEY_TRACK_ID) ? FIELD_TRACK_ID : FIELD_UNKNOWN;
+            case 10:
+                return matches(KEY_IMAGE_PATH) ? FIELD_IMAGE_PATH : FIELD_UNKNOWN;
+            default:
+                return FIELD_UNKNOWN;
+        }
+    }
+
+    private boolean matches(byte[] key) {
+        if (key.length != valueLength) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (valueBuffer[valueOffset + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String valueAsString() {
+        return interner.intern(valueBuffer, valueOffset, valueLength);
+    }
+
+    private int scanValue() throws MalformedJsonException {
+        byte first = peek();
+        switch (first) {
+            case '"':
+                position++;
+                scanString();
+                return VALUE_STRING;
+            case 't':
+                expectLiteral("true");
+                return VALUE_TRUE;
+            case 'f':
+                expectLiteral("false");
+                return VALUE_FALSE;
+            case 'n':
+                expectLiteral("null");
+                return VALUE_NULL;
+            case '{':
+            case '[': {
+                int start = position;
+                skipNested();
+                markRaw(start);
+                return VALUE_NESTED;
+            }
+            default:
+                if (first == '-' || (first >= '0' && first <= '9')) {
+                    int start = position;
+                    scanNumber();
+                    markRaw(start);
+                    return VALUE_NUMBER;
+                }
+                throw MALFORMED;
+        }
+    }
+
+    private void markRaw(int start) {
+        valueBuffer = input;
+        valueOffset = start;
+        valueLength = position - start;
+    }
+
+    /**
+     * Scans a string body; {@code position} must be just past the opening
+     * quote. Escape-free strings are referenced in place, anything else is
+     * unescaped into {@link #scratch}.
+     */
+    private void scanString() throws MalformedJsonException {
+        int start = position;
+        while (true) {
+            byte b = next();
+            if (b == '"') {
+                valueBuffer = input;
+                valueOffset = start;
+                valueLength = position - 1 - start;
+                return;
+            }
+            if (b == '\\') {
+                position--;
+                break;
+            }
+            if ((b & 0xFF) < 0x20) {
+                throw MALFORMED;
+            }
+        }
+
+        int scratchLength = position - start;
+        ensureScratch(scratchLength + 16);
+        System.arraycopy(input, start, scratch, 0, scratchLength);
+        while (true) {
+            byte b = next();
+            if (b == '"') {
+                break;
+            }
+            if ((b & 0xFF) < 0x20) {
+                throw MALFORMED;
+            }
+            ensureScratch(scratchLength + 4);
+            if (b != '\\') {
+                scratch[scratchLength++] = b;
+                continue;
+            }
+            byte escaped = next();
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    scratch[scratchLength++] = escaped;
+                    break;
+                case 'b':
+                    scratch[scratchLength++] = '\b';
+                    break;
+                case 'f':
+                    scratch[scratchLength++] = '\f';
+                    break;
+                case 'n':
+                    scratch[scratchLength++] = '\n';
+                    break;
+                case 'r':
+                    scratch[scratchLength++] = '\r';
+                    break;
+                case 't':
+                    scratch[scratchLength++] = '\t';
+                    break;
+                case 'u':
+                    scratchLength = appendCodePoint(scratchLength, readUnicodeEscape());
+                    break;
+                default:
+                    throw MALFORMED;
+            }
+        }
+        valueBuffer = scratch;
+        valueOffset = 0;
+        valueLength = scratchLength;
+    }
+
+    /** Reads the hex digits of a {@code \\u} escape, joining surrogate pairs. */
+    private int readUnicodeEscape() throws MalformedJsonException {
+        int unit = readHex4();
+        if (Character.isHighSurrogate((char) unit)) {
+            if (position + 1 < limit && input[position] == '\\' && input[position + 1] == 'u') {
+                int mark = position;
+                position += 2;
+                int low = readHex4();
+                if (Character.isLowSurrogate((char) low)) {
+                    return Character.toCodePoint((char) unit, (char) low);
+                }
+                position = mark;
+            }
+            return 0xFFFD;
+        }
+        if (Character.isLowSurrogate((char) unit)) {
+            return 0xFFFD;
+        }
+        return unit;
+    }
+
+    private int readHex4() throws MalformedJsonException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(next(), 16);
+            if (digit < 0) {
+                throw MALFORMED;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private int appendCodePoint(int at, int codePoint) {
+        if (codePoint < 0x80) {
+            scratch[at++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            scratch[at++] = (byte) (0xC0 | (codePoint >> 6));
+            scratch[at++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            scratch[at++] = (byte) (0xE0 | (codePoint >> 12));
+            scratch[at++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            scratch[at++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            scratch[at++] = (byte) (0xF0 | (codePoint >> 18));
+            scratch[at++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            scratch[at++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            scratch[at++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return at;
+    }
+
+    private void scanNumber() throws MalformedJsonException {
+        if (peek() == '-') {
+            position++;
+        }
+        if (!scanDigits()) {
+            throw MALFORMED;
+        }
+        if (position < limit && input[position] == '.') {
+            position++;
+            if (!scanDigits()) {
+                throw MALFORMED;
+            }
+        }
+        if (position < limit && (input[position] == 'e' || input[position] == 'E')) {
+            position++;
+            if (position < limit && (input[position] == '+' || input[position] == '-')) {
+                position++;
+            }
+            if (!scanDigits()) {
+                throw MALFORMED;
+            }
+        }
+    }
+
+    private boolean scanDigits() {
+        int start = position;
+        while (position < limit && input[position] >= '0' && input[position] <= '9') {
+            position++;
+        }
+        return position > start;
+    }
+
+    /** Skips a nested object or array, including any strings inside it. */
+    private void skipNested() throws MalformedJsonException {
+        int depth = 0;
+        do {
+            byte b = next();
+            if (b == '"') {
+                skipStringBody();
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private void skipStringBody() throws MalformedJsonException {
+        while (true) {
+            byte b = next();
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                next();
+            }
+        }
+    }
+
+    private void expectLiteral(String literal) throws MalformedJsonException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                throw MALFORMED;
+            }
+        }
+    }
+
+    private void expect(char expected) throws MalformedJsonException {
+        if (next() != expected) {
+            throw MALFORMED;
+        }
+    }
+
+    private byte peek() throws MalformedJsonException {
+        if (position >= limit) {
+            throw MALFORMED;
+        }
+        return input[position];
+    }
+
+    private byte next() throws MalformedJsonException {
+        if (position >= limit) {
+            throw MALFORMED;
+        }
+        return input[position++];
+    }
+
+    private void skipWhitespace() {
+        while (position < limit) {
+            byte b = input[position];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private void ensureScratch(int capacity) {
+        if (scratch.length < capacity) {
+            byte[] grown = new byte[Math.max(capacity, scratch.length * 2)];
+            System.arraycopy(scratch, 0, grown, 0, scratch.length);
+            scratch = grown;
+        }
+    }
+
+    /** UTF-8 encodes {@code line} into {@link #lineBuffer} and returns the byte count. */
+    private int encodeLine(CharSequence line) {
+        int charCount = line.length();
+        if (lineBuffer.length < charCount * 3) {
+            lineBuffer = new byte[Math.max(charCount * 3, lineBuffer.length * 2)];
+        }
+        byte[] out = lineBuffer;
+        int at = 0;
+        for (int i = 0; i < charCount; i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                out[at++] = (byte) c;
+            } else if (c < 0x800) {
+                out[at++] = (byte) (0xC0 | (c >> 6));
+                out[at++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < charCount
+                    && Character.isLowSurrogate(line.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, line.charAt(++i));
+                out[at++] = (byte) (0xF0 | (codePoint >> 18));
+                out[at++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[at++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[at++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out[at++] = '?';
+            } else {
+                out[at++] = (byte) (0xE0 | (c >> 12));
+                out[at++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[at++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return at;
+    }
+
+    /** Preallocated, stackless signal for malformed input. */
+    private static final class MalformedJsonException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        MalformedJsonException() {
+            super("Malformed JSON", null, false, false);
+        }
+    }
+}
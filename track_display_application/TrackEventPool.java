@@ -0,0 +1,58 @@
+/**
+ * Small free list of {@link TrackEvent}s, so the feed's I/O thread can hand
+ * events to the EDT without allocating one per record.
+ *
+ * An event acquired here is filled in on the I/O thread, submitted to a
+ * panel's {@link UpdateCoalescer} and released once it was rendered or
+ * replaced by a newer one; records that never reach the EDT are released
+ * straight away. Since the coalescer keeps at most one event pending and
+ * the EDT renders one at a time, a handful of events is enough for any
+ * feed rate. Releasing an event from another pool, or one that is already
+ * free, is ignored, and an empty pool just allocates.
+ */
+public final class TrackEventPool {
+    public static final int DEFAULT_CAPACITY = 8;
+
+    private final TrackEvent[] free;
+    // Guarded by this
+    private int freeCount;
+    private long created;
+
+    public TrackEventPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TrackEventPool(int capacity) {
+        this.free = new TrackEvent[Math.max(1, capacity)];
+    }
+
+    /** Returns a cleared event, reusing a released one if there is one. Any thread. */
+    public synchronized TrackEvent acquire() {
+        if (freeCount > 0) {
+            TrackEvent event = free[--freeCount];
+            free[freeCount] = null;
+            event.inPool = false;
+            return event;
+        }
+        created++;
+        TrackEvent event = new TrackEvent();
+        event.pool = this;
+        return event;
+    }
+
+    /** Clears {@code event} and keeps it for reuse. The caller must not touch it afterwards. Any thread. */
+    public synchronized void release(TrackEvent event) {
+        if (event == null || event.pool != this || event.inPool) {
+            return;
+        }
+        event.clear();
+        if (freeCount < free.length) {
+            event.inPool = true;
+            free[freeCount++] = event;
+        }
+    }
+
+    /** Events allocated because the pool was empty. */
+    public synchronized long getCreatedCount() { return created; }
+    public synchronized int getFreeCount() { return freeCount; }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Feeds one {@link TrackDisplayPanel} from a {@link FeedClient} connection.
+ *
+ * Records are decoded on the feed client's I/O thread and merged into the
+ * panel's {@link TrackState}; only records that change it reach the EDT.
+ * Gaps and undecodable binary frames are answered with a snapshot request.
+ * Next-up announcements bypass the track state and start a prefetch.
+ * Events come from the panel's {@link TrackEventPool}; the ones handed to
+ * the panel go back once rendered, every other one as soon as it is handled.
+ * The JSON decoder may be shared by every listener on the same feed client,
+ * since they all run on its one I/O thread; binary dictionaries and track
+ * state are per connection.
+ *
+ * A listener created by a {@link FailoverFeed} is one of several redundant
+ * sources for the panel: it keeps its own state in sync either way, but the
+ * failover feed decides which of its updates reach the panel. Heartbeats
+ * only keep the connection's read timeout from firing.
+ */
+public class TrackFeedListener implements FeedClient.FeedListener {
+    private final String name;
+    private final TrackDisplayPanel panel;
+    private final DisplayMetrics displayMetrics;
+    private final TrackEventDecoder eventDecoder;
+    private final TrackEventPool eventPool;
+    private final BinaryTrackCodec.Decoder frameDecoder = new BinaryTrackCodec.Decoder();
+    private final TrackState trackState = new TrackState();
+    private final FailoverFeed failover;
+    private boolean connected;
+
+    public TrackFeedListener(String name, TrackDisplayPanel panel, TrackEventDecoder eventDecoder) {
+        this(name, panel, eventDecoder, null);
+    }
+
+    TrackFeedListener(String name, TrackDisplayPanel panel, TrackEventDecoder eventDecoder, FailoverFeed failover) {
+        this.name = name;
+        this.panel = panel;
+        this.displayMetrics = panel.getDisplayMetrics();
+        this.eventDecoder = eventDecoder;
+        this.eventPool = panel.getEventPool();
+        this.failover = failover;
+    }
+
+    @Override
+    public void onConnected(FeedClient.FeedConnection connection) {
+        System.out.println(name + ": connected to " + connection.getHost() + ":" + connection.getPort());
+        // The server greets every connection with a full snapshot.
+        trackState.reset();
+        frameDecoder.reset();
+        connected = true;
+        if (connection.getConnectCount() > 1) {
+            displayMetrics.incrementReconnects();
+        }
+        if (failover != null) {
+            failover.onConnected(connection);
+        }
+    }
+
+    @Override
+    public void onRecord(FeedClient.FeedConnection connection, byte[] buffer, int offset, int length) {
+        long receivedNanos = System.nanoTime();
+        TrackEvent trackEvent = eventPool.acquire();
+        boolean decoded = connection.isBinaryFraming()
+            ? frameDecoder.decode(buffer, offset, length, trackEvent)
+            : eventDecoder.decode(buffer, offset, length, trackEvent);
+        if (decoded && trackEvent.getType() == TrackEvent.Type.HEARTBEAT) {
+            eventPool.release(trackEvent);
+            return;
+        }
+        if (decoded) {
+            trackEvent.setReceivedNanos(receivedNanos);
+            trackEvent.setParsedNanos(System.nanoTime());
+            displayMetrics.recordParsed(trackEvent);
+            if (trackEvent.getType() == TrackEvent.Type.NEXT_UP) {
+                if (failover == null || failover.isForwarding(this)) {
+                    panel.prefetch(trackEvent.getUpcoming());
+                }
+                eventPool.release(trackEvent);
+                return;
+            }
+            switch (trackState.apply(trackEvent)) {
+                case APPLIED:
+                    if (failover != null && !failover.accept(this, trackEvent)) {
+                        break;
+                    }
+                    trackEvent.copyFrom(trackState.getCurrent());
+                    panel.updateTrackDisplayInformation(trackEvent);
+                    return;
+                case GAP:
+                    displayMetrics.incrementSequenceGaps();
+                    connection.send(TrackState.SNAPSHOT_REQUEST);
+                    break;
+                default:
+                    break;
+            }
+        } else if (connection.isBinaryFraming()) {
+            // Usually a string defined in a frame a slow queue dropped; a snapshot resets the dictionary.
+            displayMetrics.incrementParseFailures();
+            if (!trackState.isAwaitingSnapshot()) {
+                trackState.markOutOfSync();
+                connection.send(TrackState.SNAPSHOT_REQUEST);
+            }
+        } else {
+            displayMetrics.incrementParseFailures();
+            System.err.println(name + ": failed to parse JSON data: "
+                + new String(buffer, offset, length, StandardCharsets.UTF_8));
+        }
+        eventPool.release(trackEvent);
+    }
+
+    @Override
+    public void onRecordDiscarded(FeedClient.FeedConnection connection) {
+        displayMetrics.incrementDroppedRecords();
+    }
+
+    @Override
+    public void onDisconnected(FeedClient.FeedConnection connection, IOException cause) {
+        if (cause != null) {
+            System.err.println(name + ": connection error: " + cause.getMessage());
+        }
+        connected = false;
+        if (failover != null) {
+            failover.onDisconnected(this);
+        }
+    }
+
+    /** True while connected and in sync with the feed, i.e. fit to take over as a failover source. */
+    boolean isLive() {
+        return connected && trackState.isSynced();
+    }
+
+    TrackState getTrackState() { return trackState; }
+
+    String getName() { return name; }
+}
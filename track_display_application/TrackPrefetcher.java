@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+/**
+ * Gets a {@link TrackDisplayPanel} ready for the tracks a {@code next_up}
+ * message announced, so that changing to one of them only swaps in layers
+ * that already exist.
+ *
+ * Artwork is decoded and scaled into the panel's {@link ArtworkCache} by its
+ * own workers. Text is laid out and its glow blurred on one low-priority
+ * thread shared by every panel, then handed to the labels on the EDT. When
+ * the panel renders a track change it asks {@link #isPrefetched} whether the
+ * track was announced and everything it needs was ready in time.
+ */
+public final class TrackPrefetcher {
+    private static final int MAX_QUEUED_RENDERS = 32;
+    private static final int MAX_ANNOUNCED = 4 * TrackEvent.MAX_UPCOMING;
+
+    private static final ThreadPoolExecutor TEXT_RENDERER = createTextRenderer();
+
+    private final ArtworkCache artworkCache;
+    private final GlowTextLabel titleLabel;
+    private final GlowTextLabel artistLabel;
+    private final GlowTextLabel lengthLabel;
+    // Tracks announced and prepared but not yet played, oldest first (EDT-confined).
+    private final Set<String> announced = new LinkedHashSet<>();
+
+    public TrackPrefetcher(ArtworkCache artworkCache, GlowTextLabel titleLabel, GlowTextLabel artistLabel,
+            GlowTextLabel lengthLabel) {
+        this.artworkCache = artworkCache;
+        this.titleLabel = titleLabel;
+        this.artistLabel = artistLabel;
+        this.lengthLabel = lengthLabel;
+    }
+
+    private static ThreadPoolExecutor createTextRenderer() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED_RENDERS),
+            runnable -> {
+                Thread thread = new Thread(runnable, "text-prerender");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            },
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** Starts preparing {@code upcoming}, soonest first. Safe to call from any thread. */
+    public void prefetch(List<TrackEvent> upcoming) {
+        for (TrackEvent track : new ArrayList<>(upcoming)) {
+            String imagePath = valueOrEmpty(track.getImagePath());
+            if (!imagePath.trim().isEmpty() && artworkCache.peek(imagePath) == null) {
+                artworkCache.load(imagePath, loadedImage -> { });
+            }
+            TEXT_RENDERER.execute(() -> prerender(track));
+        }
+    }
+
+    private void prerender(TrackEvent track) {
+        String title = valueOrEmpty(track.getTitle());
+        String artist = valueOrEmpty(track.getArtist());
+        String length = valueOrEmpty(track.getLength());
+        GlowTextLabel.RenderedText renderedTitle = GlowTextLabel.prerender(title, titleLabel.getFont());
+        GlowTextLabel.RenderedText renderedArtist = GlowTextLabel.prerender(artist, artistLabel.getFont());
+        GlowTextLabel.RenderedText renderedLength = GlowTextLabel.prerender(length, lengthLabel.getFont());
+        SwingUtilities.invokeLater(() -> {
+            titleLabel.preload(title, renderedTitle);
+            artistLabel.preload(artist, renderedArtist);
+            lengthLabel.preload(length, renderedLength);
+            announced.remove(key(track));
+            announced.add(key(track));
+            if (announced.size() > MAX_ANNOUNCED) {
+                announced.remove(announced.iterator().next());
+            }
+        });
+    }
+
+    /**
+     * Returns true if {@code track} was announced and its text and artwork
+     * were ready, so showing it does no rendering or decoding, and forgets
+     * the announcement. Must run on the EDT.
+     */
+    public boolean isPrefetched(TrackEvent track) {
+        if (!announced.remove(key(track))) {
+            return false;
+        }
+        String imagePath = valueOrEmpty(track.getImagePath());
+        return (imagePath.trim().isEmpty() || artworkCache.peek(imagePath) != null)
+            && titleLabel.isPrepared(track.getTitle())
+            && artistLabel.isPrepared(track.getArtist())
+            && lengthLabel.isPrepared(track.getLength());
+    }
+
+    private static String key(TrackEvent track) {
+        return valueOrEmpty(track.getTitle()) + '\u0000' + valueOrEmpty(track.getArtist()) + '\u0000'
+            + valueOrEmpty(track.getLength()) + '\u0000' + valueOrEmpty(track.getImagePath());
+    }
+
+    private static String valueOrEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,116 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import javax.swing.JComponent;
+
+/**
+ * Thin bar showing how far playback is into the current track.
+ *
+ * Progress is set as a fraction of the track's length. Only the columns
+ * between the old and the new end of the fill are repainted, and nothing at
+ * all while the end stays on the same pixel, which for a track of a few
+ * minutes is most frames. Without a known length the bar is left empty.
+ */
+public class TrackProgressBar extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    public static final Color TRACK_COLOR = new Color(0x333333);
+    public static final int BAR_HEIGHT = 4;
+    private static final int DEFAULT_WIDTH = 300;
+
+    private float progress = -1f;
+    private boolean playing;
+    // Width of the fill when it was last repainted, in pixels.
+    private int fillWidth;
+
+    public TrackProgressBar() {
+        setOpaque(false);
+        setAlignmentX(CENTER_ALIGNMENT);
+    }
+
+    /**
+     * Sets the fraction played, or a negative value for unknown; returns
+     * true if that moved the end of the fill and it was repainted.
+     */
+    public boolean setProgress(float fraction) {
+        float clamped = fraction < 0f ? -1f : Math.min(1f, fraction);
+        progress = clamped;
+        int width = fillWidthFor(clamped);
+        if (width == fillWidth) {
+            return false;
+        }
+        int from = Math.min(width, fillWidth);
+        repaint(from, 0, Math.max(width, fillWidth) - from, getHeight());
+        fillWidth = width;
+        return true;
+    }
+
+    /** Switches the fill between the playing and paused colour; returns true if it changed. */
+    public boolean setPlaying(boolean isPlaying) {
+        if (isPlaying == playing) {
+            return false;
+        }
+        playing = isPlaying;
+        if (fillWidth > 0) {
+            repaint(0, 0, fillWidth, getHeight());
+        }
+        return true;
+    }
+
+    public float getProgress() { return progress; }
+    public boolean isPlaying() { return playing; }
+
+    private int fillWidthFor(float fraction) {
+        return fraction <= 0f ? 0 : Math.round(fraction * getWidth());
+    }
+
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        super.setBounds(x, y, width, height);
+        fillWidth = fillWidthFor(progress);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return isPreferredSizeSet() ? super.getPreferredSize() : new Dimension(DEFAULT_WIDTH, BAR_HEIGHT);
+    }
+
+    @Override
+    public Dimension getMaximumSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        graphics.setColor(TRACK_COLOR);
+        graphics.fillRect(0, 0, getWidth(), getHeight());
+        int width = fillWidthFor(progress);
+        if (width > 0) {
+            graphics.setColor(playing ? GlowTextLabel.PLAYING_COLOR : GlowTextLabel.PAUSED_COLOR);
+            graphics.fillRect(0, 0, width, getHeight());
+        }
+    }
+
+    /**
+     * Parses a track length such as {@code 5:55} or {@code 1:02:03} into
+     * milliseconds; returns -1 for anything else.
+     */
+    public static long parseLengthMillis(String length) {
+        if (length == null || length.trim().isEmpty()) {
+            return -1;
+        }
+        long seconds = 0;
+        for (String part : length.trim().split(":", 4)) {
+            if (part.isEmpty() || part.length() > 4) {
+                return -1;
+            }
+            for (int i = 0; i < part.length(); i++) {
+                if (!Character.isDigit(part.charAt(i))) {
+                    return -1;
+                }
+            }
+            seconds = seconds * 60 + Integer.parseInt(part);
+        }
+        return seconds > 0 ? seconds * 1000 : -1;
+    }
+}
@@ -1,69 +1,1185 @@
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Sample track feed that broadcasts one stream of events to any number of
+ * displays.
+ *
+ * A single selector thread accepts connections and fans each published line
+ * out to every subscriber. Lines are encoded once and the same bytes are
+ * shared by every client's outbound queue. Each queue is bounded and drops
+ * its oldest unsent line when full, so a slow display only loses its own
+ * intermediate updates. New subscribers are sent the current track first.
+ *
+ * Publishers may pair each line with a full snapshot of the current state
+ * ({@link #publish(String, String)}); that is what late joiners receive, and
+ * what is re-sent to a display that asks for one with a
+ * {@code snapshot_request} line after spotting a sequence gap. With
+ * {@code --deltas} the generator sends play/pause toggles as field-level
+ * deltas instead of full lines. Announcements such as {@code next_up} are
+ * published with {@link #publishAnnouncement(String)}: they leave the
+ * snapshot alone, and the latest one follows it to late joiners.
+ *
+ * A new display is sent nothing until its first byte arrives, or for
+ * {@link #HANDSHAKE_WAIT_MILLIS} if it sends none. One that opens with the
+ * {@link BinaryTrackCodec#HANDSHAKE_V1} byte is switched to binary frames:
+ * the server echoes the byte as the first byte it sends, sends a
+ * self-contained snapshot frame, and from then on encodes each published
+ * line for that display with its own string dictionary. Lines are decoded
+ * once per publish for all binary displays; JSON displays still share the
+ * encoded line.
+ *
+ * A display can ask for heartbeats with a {@code heartbeat} request
+ * carrying an {@code interval_millis} (see {@link #heartbeatRequest(long)}).
+ * From then on, whenever it has been sent nothing for that long it gets a
+ * {@code heartbeat} message, so it can tell a silent server from a quiet
+ * one. Displays that never ask are never sent one.
+ *
+ * Run without options it emits 15 random sample tracks, 2-4 seconds apart,
+ * and exits; {@code --forever} keeps it going. With {@code --catalog} the
+ * tracks come from a {@link TrackCatalog} instead, looked up by ID for
+ * {@code --play} or picked at random. See
+ * {@link #USAGE} for the fixed-rate, burst, payload and replay modes used for
+ * benchmarking the display.
+ */
 public class TrackServer {
-    
+
     private static final String[] SAMPLE_TITLES = {
-        "Bohemian Rhapsody", "Stairway to Heaven", "Hotel California", 
+        "Bohemian Rhapsody", "Stairway to Heaven", "Hotel California",
         "Imagine", "Sweet Child O' Mine", "Billie Jean", "Hey Jude",
         "Smells Like Teen Spirit", "Purple Haze", "Like a Rolling Stone"
     };
-    
+
     private static final String[] SAMPLE_ARTISTS = {
         "Queen", "Led Zeppelin", "Eagles", "John Lennon", "Guns N' Roses",
         "Michael Jackson", "The Beatles", "Nirvana", "Jimi Hendrix", "Bob Dylan"
     };
-    
+
     private static final String[] SAMPLE_LENGTHS = {
         "5:55", "8:02", "6:30", "3:03", "5:03", "4:54", "7:11", "5:01", "2:50", "6:13"
     };
-    
-    public static void main(String[] args) {
-        int port = 532;
-        Random random = new Random();
-        
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("🎵 Track Server started on port " + port);
-            System.out.println("Waiting for Track Display Application to connect...");
-            
-            while (true) {
-                try (Socket clientSocket = serverSocket.accept()) {
-                    System.out.println("✅ Client connected: " + clientSocket.getInetAddress());
-                    PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-                    
-                    // Send 15 track updates with random data
-                    for (int i = 0; i < 15; i++) {
-                        int trackIndex = random.nextInt(SAMPLE_TITLES.length);
-                        boolean isPlaying = random.nextBoolean();
-                        
-                        String jsonData = String.format(
-                            "{\"title\": \"%s\", \"artist\": \"%s\", \"length\": \"%s\", \"image_path\": \"\", \"playing?\": %s}",
-                            SAMPLE_TITLES[trackIndex],
-                            SAMPLE_ARTISTS[trackIndex], 
-                            SAMPLE_LENGTHS[trackIndex],
-                            isPlaying
-                        );
-                        
-                        out.println(jsonData);
-                        System.out.println("📤 Sent: " + jsonData);
-                        
-                        // Wait 2-4 seconds between updates for realistic simulation
-                        Thread.sleep(2000 + random.nextInt(2000));
+
+    public static final int DEFAULT_PORT = 532;
+    public static final int DEFAULT_CLIENT_QUEUE_LIMIT = 64;
+    /** The shortest heartbeat interval a display can ask for. */
+    public static final long MIN_HEARTBEAT_MILLIS = 10;
+    /** How long a new display that sends nothing waits for its greeting. */
+    static final long HANDSHAKE_WAIT_MILLIS = 20;
+
+    static final String HEARTBEAT = "{\"type\": \"heartbeat\"}";
+    private static final byte[] HEARTBEAT_LINE = (HEARTBEAT + "\n").getBytes(StandardCharsets.UTF_8);
+
+    private static final int MAX_PENDING_PUBLISHES = 4096;
+
+    private final int port;
+    private final int clientQueueLimit;
+    private final ConcurrentLinkedQueue<byte[][]> publishedLines = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingPublishCount = new AtomicInteger();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong snapshotRequestCount = new AtomicLong();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final ByteBuffer inboundBuffer = ByteBuffer.allocate(4096);
+    // Selector-thread scratch for decoding requests and re-encoding lines as binary frames.
+    private final TrackEventDecoder selectorDecoder = new TrackEventDecoder();
+    private final TrackEvent request = new TrackEvent();
+    private final TrackEvent publishedEvent = new TrackEvent();
+    private final TrackEvent snapshotEvent = new TrackEvent();
+    private final TrackEvent heartbeatEvent = new TrackEvent();
+    private volatile int subscriberCount;
+    private volatile int binarySubscriberCount;
+    private volatile boolean running;
+    private volatile boolean stampSendTime;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private byte[] currentSnapshot;
+    private byte[] currentAnnouncement;
+
+    public TrackServer(int port) {
+        this(port, DEFAULT_CLIENT_QUEUE_LIMIT);
+    }
+
+    public TrackServer(int port, int clientQueueLimit) {
+        this.port = port;
+        this.clientQueueLimit = clientQueueLimit;
+        heartbeatEvent.setType(TrackEvent.Type.HEARTBEAT);
+    }
+
+    /** Binds the port and starts the selector thread. */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(this::runSelectorLoop, "track-server-selector");
+        selectorThread.start();
+    }
+
+    /**
+     * Queues one JSON line for every subscriber. Safe to call from any thread;
+     * the line is encoded once here and shared by all client queues.
+     */
+    public void publish(String jsonLine) {
+        publish(jsonLine, jsonLine);
+    }
+
+    /**
+     * Queues {@code jsonLine} for every subscriber and makes
+     * {@code snapshotLine}, the full state after it, what new subscribers and
+     * snapshot requests receive.
+     */
+    public void publish(String jsonLine, String snapshotLine) {
+        long now = System.currentTimeMillis();
+        byte[] encoded = encodeLine(jsonLine, now);
+        byte[] snapshot = snapshotLine.equals(jsonLine) ? encoded : encodeLine(snapshotLine, now);
+        enqueuePublished(encoded, snapshot);
+    }
+
+    /**
+     * Queues a line that announces something, such as a {@code next_up}
+     * list, rather than changing the current track. The snapshot is kept;
+     * the latest announcement is sent to new subscribers after it.
+     */
+    public void publishAnnouncement(String jsonLine) {
+        enqueuePublished(encodeLine(jsonLine, System.currentTimeMillis()), null);
+    }
+
+    private void enqueuePublished(byte[] encoded, byte[] snapshot) {
+        pendingPublishCount.incrementAndGet();
+        publishedLines.add(new byte[][] {encoded, snapshot});
+        publishedCount.incrementAndGet();
+        Selector currentSelector = selector;
+        if (currentSelector != null) {
+            currentSelector.wakeup();
+        }
+    }
+
+    /**
+     * Appends a {@code sent_at} epoch-millis field to every published object so
+     * displays can measure one-way latency. Appending last means it overrides
+     * any stale {@code sent_at} in replayed lines.
+     */
+    public void setStampSendTime(boolean stampSendTime) {
+        this.stampSendTime = stampSendTime;
+    }
+
+    /**
+     * The request a display sends to be heartbeated whenever it has been sent
+     * nothing for {@code intervalMillis}; 0 turns heartbeats back off.
+     */
+    static String heartbeatRequest(long intervalMillis) {
+        return "{\"type\": \"heartbeat\", \"interval_millis\": " + intervalMillis + "}";
+    }
+
+    private byte[] encodeLine(String jsonLine, long sentAtMillis) {
+        if (stampSendTime) {
+            jsonLine = withSendTime(jsonLine, sentAtMillis);
+        }
+        return (jsonLine + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String withSendTime(String jsonLine, long sentAtMillis) {
+        int end = jsonLine.lastIndexOf('}');
+        if (end < 0) {
+            return jsonLine;
+        }
+        boolean emptyObject = jsonLine.substring(jsonLine.indexOf('{') + 1, end).trim().isEmpty();
+        return jsonLine.substring(0, end) + (emptyObject ? "" : ", ") + "\"sent_at\": " + sentAtMillis + "}";
+    }
+
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = selectorThread;
+            selector.wakeup();
+        }
+        try {
+            thread.join(1000);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : port;
+    }
+
+    public int getSubscriberCount() { return subscriberCount; }
+    public int getBinarySubscriberCount() { return binarySubscriberCount; }
+    public long getPublishedCount() { return publishedCount.get(); }
+    public long getDroppedCount() { return droppedCount.get(); }
+    public int getPendingPublishCount() { return pendingPublishCount.get(); }
+    public long getSnapshotRequestCount() { return snapshotRequestCount.get(); }
+
+    private void runSelectorLoop() {
+        try {
+            long untilDueNanos = Long.MAX_VALUE;
+            while (running) {
+                // Blocks until the next greeting or heartbeat is due, or indefinitely if none is.
+                selector.select(untilDueNanos == Long.MAX_VALUE
+                    ? 0 : TimeUnit.NANOSECONDS.toMillis(untilDueNanos) + 1);
+                fanOutPublishedLines();
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        acceptSubscribers();
+                        continue;
+                    }
+                    Subscriber subscriber = (Subscriber) key.attachment();
+                    if (key.isReadable()) {
+                        subscriber.readInbound();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        subscriber.flush();
+                    }
+                }
+                long now = System.nanoTime();
+                untilDueNanos = Math.min(sendGreetings(now), sendHeartbeats(now));
+            }
+        } catch (IOException | ClosedSelectorException selectorException) {
+            System.err.println("Server selector error: " + selectorException.getMessage());
+        } finally {
+            for (Subscriber subscriber : new ArrayList<>(subscribers)) {
+                subscriber.close();
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ignored) {
+                // Shutting down anyway.
+            }
+            running = false;
+        }
+    }
+
+    private void acceptSubscribers() throws IOException {
+        SocketChannel clientChannel;
+        while ((clientChannel = serverChannel.accept()) != null) {
+            clientChannel.configureBlocking(false);
+            clientChannel.socket().setTcpNoDelay(true);
+            Subscriber subscriber = new Subscriber(clientChannel);
+            subscriber.key = clientChannel.register(selector, SelectionKey.OP_READ, subscriber);
+            subscribers.add(subscriber);
+            subscriberCount = subscribers.size();
+            System.out.println("✅ Client connected: " + clientChannel.socket().getInetAddress()
+                + " (" + subscriberCount + " connected)");
+            // Greeted by its first byte, so a handshake reply is always the first byte it receives.
+            subscriber.greetingDueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HANDSHAKE_WAIT_MILLIS);
+        }
+    }
+
+    private void fanOutPublishedLines() {
+        byte[][] published;
+        while ((published = publishedLines.poll()) != null) {
+            pendingPublishCount.decrementAndGet();
+            byte[] line = published[0];
+            if (published[1] != null) {
+                currentSnapshot = published[1];
+            } else {
+                currentAnnouncement = line;
+            }
+            boolean binaryReady = binarySubscriberCount > 0
+                && selectorDecoder.decode(line, 0, line.length - 1, publishedEvent);
+            for (int i = subscribers.size() - 1; i >= 0; i--) {
+                Subscriber subscriber = subscribers.get(i);
+                if (subscriber.greetingDueNanos != 0) {
+                    // Its greeting will be the snapshot, which already includes this line.
+                    continue;
+                } else if (subscriber.encoder == null) {
+                    subscriber.enqueue(line);
+                } else if (binaryReady) {
+                    subscriber.enqueue(subscriber.encoder.encode(publishedEvent, false));
+                } else {
+                    continue;
+                }
+                if (!subscriber.isWaitingForWritable()) {
+                    subscriber.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Greets every display that has sent nothing for the handshake wait;
+     * returns the nanoseconds until the next greeting is due, or
+     * {@code Long.MAX_VALUE} if none is.
+     */
+    private long sendGreetings(long now) {
+        long untilNext = Long.MAX_VALUE;
+        for (int i = subscribers.size() - 1; i >= 0; i--) {
+            Subscriber subscriber = subscribers.get(i);
+            if (subscriber.greetingDueNanos == 0) {
+                continue;
+            }
+            long untilDue = subscriber.greetingDueNanos - now;
+            if (untilDue <= 0) {
+                subscriber.greet();
+            } else {
+                untilNext = Math.min(untilNext, untilDue);
+            }
+        }
+        return untilNext;
+    }
+
+    /**
+     * Queues a heartbeat for every display that asked for them and was sent
+     * nothing for its interval; returns the nanoseconds until the next one
+     * is due, or {@code Long.MAX_VALUE} if none is.
+     */
+    private long sendHeartbeats(long now) {
+        long untilNext = Long.MAX_VALUE;
+        for (int i = subscribers.size() - 1; i >= 0; i--) {
+            Subscriber subscriber = subscribers.get(i);
+            if (subscriber.heartbeatNanos == 0) {
+                continue;
+            }
+            long untilDue = subscriber.lastEnqueuedNanos + subscriber.heartbeatNanos - now;
+            if (untilDue <= 0) {
+                // A display still working through its queue is evidently hearing from us.
+                if (subscriber.outbound.isEmpty()) {
+                    subscriber.enqueue(subscriber.encoder == null
+                        ? HEARTBEAT_LINE
+                        : subscriber.encoder.encode(heartbeatEvent, false));
+                    subscriber.flush();
+                }
+                untilDue = subscriber.heartbeatNanos;
+            }
+            untilNext = Math.min(untilNext, untilDue);
+        }
+        return untilNext;
+    }
+
+    /** One connected display and its bounded outbound queue. */
+    private final class Subscriber {
+        private static final int MAX_INBOUND_LINE_BYTES = 1024;
+
+        private final SocketChannel channel;
+        private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+        private final byte[] inboundLine = new byte[MAX_INBOUND_LINE_BYTES];
+        private int inboundLength;
+        private SelectionKey key;
+        // Set once the display completes the binary handshake.
+        private BinaryTrackCodec.Encoder encoder;
+        private ByteBuffer handshakeReply;
+        private long lastEnqueuedNanos = System.nanoTime();
+        // Heartbeat interval the display asked for; 0 until it does.
+        private long heartbeatNanos;
+        // When a display that sent nothing gets its JSON greeting; 0 once greeted. Nothing is sent before.
+        private long greetingDueNanos;
+
+        Subscriber(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void enqueue(byte[] line) {
+            lastEnqueuedNanos = System.nanoTime();
+            if (outbound.size() >= clientQueueLimit) {
+                // A partially written head must stay, or the stream would be cut mid-line;
+                // so must an unsent handshake reply, or the display would misread every frame.
+                Iterator<ByteBuffer> queued = outbound.iterator();
+                while (queued.hasNext()) {
+                    ByteBuffer candidate = queued.next();
+                    if (candidate.position() == 0 && candidate != handshakeReply) {
+                        queued.remove();
+                        break;
+                    }
+                }
+                droppedCount.incrementAndGet();
+            }
+            outbound.addLast(ByteBuffer.wrap(line));
+        }
+
+        /** Sends the snapshot to a display that did not ask for binary frames. */
+        void greet() {
+            greetingDueNanos = 0;
+            enqueueSnapshot();
+        }
+
+        /** Replies to the handshake and moves this display onto binary frames. */
+        private void switchToBinary() {
+            greetingDueNanos = 0;
+            encoder = new BinaryTrackCodec.Encoder();
+            binarySubscriberCount++;
+            handshakeReply = ByteBuffer.wrap(new byte[] {BinaryTrackCodec.HANDSHAKE_V1});
+            outbound.addLast(handshakeReply);
+            enqueueSnapshot();
+        }
+
+        private void enqueueSnapshot() {
+            if (currentSnapshot == null) {
+                return;
+            }
+            if (encoder == null) {
+                enqueue(currentSnapshot);
+            } else if (selectorDecoder.decode(currentSnapshot, 0, currentSnapshot.length - 1, snapshotEvent)) {
+                enqueue(encoder.encode(snapshotEvent, true));
+            }
+            if (currentAnnouncement != null) {
+                if (encoder == null) {
+                    enqueue(currentAnnouncement);
+                } else if (selectorDecoder.decode(currentAnnouncement, 0, currentAnnouncement.length - 1, snapshotEvent)) {
+                    enqueue(encoder.encode(snapshotEvent, false));
+                }
+            }
+            if (!isWaitingForWritable()) {
+                flush();
+            }
+        }
+
+        boolean isWaitingForWritable() {
+            return (key.interestOps() & SelectionKey.OP_WRITE) != 0;
+        }
+
+        void flush() {
+            if (greetingDueNanos != 0) {
+                return;
+            }
+            try {
+                ByteBuffer head;
+                while ((head = outbound.peekFirst()) != null) {
+                    channel.write(head);
+                    if (head.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    outbound.pollFirst();
+                }
+                key.interestOps(SelectionKey.OP_READ);
+            } catch (IOException writeException) {
+                close();
+            }
+        }
+
+        void readInbound() {
+            try {
+                inboundBuffer.clear();
+                if (channel.read(inboundBuffer) < 0) {
+                    close();
+                    return;
+                }
+                inboundBuffer.flip();
+                while (inboundBuffer.hasRemaining()) {
+                    byte b = inboundBuffer.get();
+                    if (greetingDueNanos != 0) {
+                        // Only the first byte can ask for binary frames; a late one would be misread as JSON.
+                        if (b == BinaryTrackCodec.HANDSHAKE_V1) {
+                            switchToBinary();
+                            continue;
+                        }
+                        greet();
+                    }
+                    if (b == '\n') {
+                        handleRequest(inboundLength);
+                        inboundLength = 0;
+                    } else if (inboundLength < inboundLine.length) {
+                        inboundLine[inboundLength++] = b;
+                    }
+                }
+            } catch (IOException readException) {
+                close();
+            }
+        }
+
+        /** Answers a {@code snapshot_request} or {@code heartbeat} request; anything else a display sends is ignored. */
+        private void handleRequest(int length) {
+            if (length >= inboundLine.length || !selectorDecoder.decode(inboundLine, 0, length, request)) {
+                return;
+            }
+            if (request.getType() == TrackEvent.Type.SNAPSHOT_REQUEST) {
+                snapshotRequestCount.incrementAndGet();
+                enqueueSnapshot();
+            } else if (request.getType() == TrackEvent.Type.HEARTBEAT) {
+                // Rare enough that the allocating map decode does no harm.
+                Object interval = selectorDecoder.decodeToMap(
+                    new String(inboundLine, 0, length, StandardCharsets.UTF_8)).get("interval_millis");
+                try {
+                    long intervalMillis = interval instanceof String ? Long.parseLong((String) interval) : 0;
+                    heartbeatNanos = intervalMillis > 0
+                        ? TimeUnit.MILLISECONDS.toNanos(Math.min(Integer.MAX_VALUE, Math.max(MIN_HEARTBEAT_MILLIS, intervalMillis)))
+                        : 0;
+                } catch (NumberFormatException badInterval) {
+                    // Left as it was.
+                }
+            }
+        }
+
+        void close() {
+            if (subscribers.remove(this)) {
+                subscriberCount = subscribers.size();
+                if (encoder != null) {
+                    binarySubscriberCount--;
+                }
+                System.out.println("👋 Client disconnected (" + subscriberCount + " connected)");
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already gone.
+            }
+        }
+    }
+
+    /** Command-line settings for the generator and replay modes. */
+    static final class Options {
+        /** Events sent when neither a load mode, {@code --count} nor {@code --forever} is given. */
+        static final long DEFAULT_SAMPLE_COUNT = 15;
+
+        int port = DEFAULT_PORT;
+        // Events per second; -1 keeps the original 2-4 s sample pacing, 0 is unthrottled.
+        double rate = -1;
+        // -1 sends until stopped.
+        long count = -1;
+        boolean forever;
+        int burstSize;
+        long burstPauseMillis;
+        int minTitleLength;
+        int maxTitleLength;
+        int extraFields;
+        Long seed;
+        String replayFile;
+        double replaySpeed = 1.0;
+        boolean replayLoop;
+        String recordFile;
+        String journalDir;
+        boolean stampSendTime = true;
+        boolean deltas;
+        int nextUp;
+        String catalogFile;
+        List<String> playIds = new ArrayList<>();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--port":
+                        options.port = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--rate":
+                        String rate = value(args, ++i, arg);
+                        options.rate = "max".equals(rate) ? 0 : Double.parseDouble(rate);
+                        break;
+                    case "--count":
+                        options.count = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--forever":
+                        options.forever = true;
+                        break;
+                    case "--burst": {
+                        String[] burst = value(args, ++i, arg).split(":", 2);
+                        options.burstSize = Integer.parseInt(burst[0]);
+                        options.burstPauseMillis = burst.length > 1 ? Long.parseLong(burst[1]) : 1000L;
+                        break;
                     }
-                    
-                    System.out.println("🏁 Finished sending track updates. Client will disconnect.");
-                    
-                } catch (Exception e) {
-                    System.err.println("Error handling client: " + e.getMessage());
-                    e.printStackTrace();
+                    case "--title-length": {
+                        String[] range = value(args, ++i, arg).split("-", 2);
+                        options.minTitleLength = Integer.parseInt(range[0]);
+                        options.maxTitleLength = range.length > 1 ? Integer.parseInt(range[1]) : options.minTitleLength;
+                        break;
+                    }
+                    case "--extra-fields":
+                        options.extraFields = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--replay":
+                        options.replayFile = value(args, ++i, arg);
+                        break;
+                    case "--speed":
+                        options.replaySpeed = Double.parseDouble(value(args, ++i, arg));
+                        break;
+                    case "--loop":
+                        options.replayLoop = true;
+                        break;
+                    case "--record":
+                        options.recordFile = value(args, ++i, arg);
+                        break;
+                    case "--journal":
+                        options.journalDir = value(args, ++i, arg);
+                        break;
+                    case "--no-send-time":
+                        options.stampSendTime = false;
+                        break;
+                    case "--deltas":
+                        options.deltas = true;
+                        break;
+                    case "--catalog":
+                        options.catalogFile = value(args, ++i, arg);
+                        break;
+                    case "--play":
+                        for (String id : value(args, ++i, arg).split(",")) {
+                            if (!id.trim().isEmpty()) {
+                                options.playIds.add(id.trim());
+                            }
+                        }
+                        break;
+                    case "--next-up":
+                        options.nextUp = Math.min(Integer.parseInt(value(args, ++i, arg)), TrackEvent.MAX_UPCOMING);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
                 }
             }
-            
+            if (options.forever) {
+                options.count = -1;
+            } else if (options.count < 0 && !options.isLoadMode()) {
+                options.count = DEFAULT_SAMPLE_COUNT;
+            }
+            return options;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            return args[index];
+        }
+
+        boolean isLoadMode() {
+            return rate >= 0 || burstSize > 0 || replayFile != null;
+        }
+    }
+
+    private static final String USAGE = String.join("\n",
+        "Usage: java TrackServer [options]",
+        "  --port N              listen port (default 532)",
+        "  --rate N|max          events per second, or max for unthrottled",
+        "  --count N             stop after N events (default 15 unless --rate, --burst or --replay is given)",
+        "  --forever             send until stopped",
+        "  --burst SIZE:PAUSE    send SIZE events back to back, then pause PAUSE ms",
+        "  --title-length A[-B]  pad titles to between A and B characters",
+        "  --extra-fields N      add N unknown fields to every event",
+        "  --seed N              deterministic random seed",
+        "  --replay FILE         replay a JSONL capture (lines may be prefixed with <epochMillis><TAB>)",
+        "  --speed X             replay timing divisor: 1 original, 10 ten times faster, 0 no delays",
+        "  --loop                repeat the replay file until stopped",
+        "  --record FILE         write every sent event to FILE in capture format",
+        "  --journal DIR         append every sent event to the play journal in DIR (see PlayJournal)",
+        "  --no-send-time        do not stamp sent_at into events",
+        "  --deltas              send play/pause toggles as sequenced deltas of the current track;",
+        "                        failover displays need the sequence numbers to drop duplicates",
+        "  --next-up N           announce the next N tracks after every track change, for display prefetch",
+        "  --catalog FILE        take tracks from a CSV or JSONL catalog (see TrackCatalog) instead of the samples",
+        "  --play ID[,ID...]     with --catalog, play these track IDs in order, repeating");
+
+    private static final String TITLE_PADDING = " - live, remastered: \"deluxe\" edition éè \\ ";
+
+    /** Builds one random event; the defaults reproduce the original sample lines. */
+    static String buildEvent(Random random, Options options) {
+        int trackIndex = random.nextInt(SAMPLE_TITLES.length);
+        boolean isPlaying = random.nextBoolean();
+        return "{" + buildTrackFields(random, options, trackIndex) + ", \"playing?\": " + isPlaying + "}";
+    }
+
+    /**
+     * The fields of the next track to play. With {@code --next-up} tracks are
+     * picked ahead of time and queued in {@code upcoming}, so the tracks a
+     * next_up line announced are exactly the ones that follow.
+     */
+    private static String nextTrackFields(Random random, Options options, CatalogTracks catalog,
+            ArrayDeque<String> upcoming) {
+        if (options.nextUp <= 0) {
+            return pickTrackFields(random, options, catalog);
+        }
+        while (upcoming.size() <= options.nextUp) {
+            upcoming.addLast(pickTrackFields(random, options, catalog));
+        }
+        return upcoming.pollFirst();
+    }
+
+    private static String pickTrackFields(Random random, Options options, CatalogTracks catalog) {
+        return catalog != null
+            ? catalog.nextFields(random, options)
+            : buildTrackFields(random, options, random.nextInt(SAMPLE_TITLES.length));
+    }
+
+    /** Generator tracks looked up in a {@link TrackCatalog}: the {@code --play} IDs in turn, or random ones. */
+    static final class CatalogTracks {
+        private final TrackCatalog catalog;
+        private final List<String> playIds;
+        private final TrackEvent track = new TrackEvent();
+        private int playPosition;
+
+        CatalogTracks(TrackCatalog catalog, List<String> playIds) {
+            this.catalog = catalog;
+            this.playIds = playIds;
+        }
+
+        /** The fields of the next track, as {@link #buildTrackFields} writes them. */
+        String nextFields(Random random, Options options) {
+            track.clear();
+            boolean found = false;
+            // Unknown IDs are reported and skipped; if none is known, play random tracks.
+            for (int attempt = 0; attempt < playIds.size() && !found; attempt++) {
+                String id = playIds.get(playPosition++ % playIds.size());
+                found = catalog.find(id, track);
+                if (!found) {
+                    System.err.println("⚠️ Track " + id + " is not in the catalog");
+                }
+            }
+            if (!found) {
+                catalog.randomTrack(random, track);
+            }
+            return buildTrackFields(random, options, orEmpty(track.getTitle()), orEmpty(track.getArtist()),
+                orEmpty(track.getLength()), orEmpty(track.getImagePath()));
+        }
+
+        private static String orEmpty(String value) {
+            return value != null ? value : "";
+        }
+    }
+
+    /** A next_up line listing {@code upcoming}, soonest first. */
+    static String buildNextUp(Iterable<String> upcoming) {
+        StringBuilder json = new StringBuilder(256).append("{\"type\": \"next_up\", \"tracks\": [");
+        String separator = "";
+        for (String fields : upcoming) {
+            json.append(separator).append('{').append(fields).append('}');
+            separator = ", ";
+        }
+        return json.append("]}").toString();
+    }
+
+    /** The fields of a sample track other than {@code playing?}, without braces. */
+    private static String buildTrackFields(Random random, Options options, int trackIndex) {
+        return buildTrackFields(random, options, SAMPLE_TITLES[trackIndex], SAMPLE_ARTISTS[trackIndex],
+            SAMPLE_LENGTHS[trackIndex], "");
+    }
+
+    private static String buildTrackFields(Random random, Options options, String title, String artist,
+            String length, String imagePath) {
+        if (options.maxTitleLength > 0) {
+            int targetLength = options.minTitleLength
+                + random.nextInt(options.maxTitleLength - options.minTitleLength + 1);
+            StringBuilder paddedTitle = new StringBuilder(targetLength).append(title);
+            while (paddedTitle.length() < targetLength) {
+                paddedTitle.append(TITLE_PADDING.charAt(random.nextInt(TITLE_PADDING.length())));
+            }
+            paddedTitle.setLength(targetLength);
+            title = paddedTitle.toString();
+        }
+
+        StringBuilder json = new StringBuilder(128 + title.length() + options.extraFields * 32);
+        json.append("\"title\": \"").append(escapeJson(title))
+            .append("\", \"artist\": \"").append(escapeJson(artist))
+            .append("\", \"length\": \"").append(escapeJson(length))
+            .append("\", \"image_path\": \"").append(escapeJson(imagePath)).append('"');
+        for (int field = 0; field < options.extraFields; field++) {
+            json.append(", \"extra_").append(field).append("\": ");
+            switch (field % 3) {
+                case 0:
+                    json.append('"').append(Long.toHexString(random.nextLong())).append('"');
+                    break;
+                case 1:
+                    json.append(random.nextInt(100000));
+                    break;
+                default:
+                    json.append("{\"nested\": [").append(random.nextInt(10)).append(", \"x\"]}");
+                    break;
+            }
+        }
+        return json.toString();
+    }
+
+    /**
+     * The generator's current track, turned into sequenced {@code full} and
+     * {@code delta} lines. Every line takes the next sequence number.
+     */
+    static final class TrackStream {
+        private long sequence;
+        private long trackCount;
+        private String trackId;
+        private String trackFields;
+        private boolean playing;
+
+        boolean hasTrack() {
+            return trackId != null;
+        }
+
+        /** Switches to a new track and returns its full line. */
+        String startTrack(String fields, boolean isPlaying) {
+            trackId = "t" + (++trackCount);
+            trackFields = fields;
+            playing = isPlaying;
+            sequence++;
+            return snapshot();
+        }
+
+        /** Flips play/pause and returns the delta carrying only that field. */
+        String togglePlaying() {
+            playing = !playing;
+            sequence++;
+            return "{\"type\": \"delta\", \"track_id\": \"" + trackId + "\", \"seq\": " + sequence
+                + ", \"playing?\": " + playing + "}";
+        }
+
+        /** The full state as of the last line returned. */
+        String snapshot() {
+            return "{\"type\": \"full\", \"track_id\": \"" + trackId + "\", \"seq\": " + sequence
+                + ", " + trackFields + ", \"playing?\": " + playing + "}";
+        }
+    }
+
+    /** {@code track} as a {@code full} line with the display fields it has, for merged replay state. */
+    static String fullLine(TrackEvent track) {
+        StringBuilder json = new StringBuilder(160).append("{\"type\": \"full\"");
+        if (track.getTrackId() != null) {
+            json.append(", \"track_id\": \"").append(escapeJson(track.getTrackId())).append('"');
+        }
+        json.append(", \"seq\": ").append(track.getSequence());
+        int present = track.getPresentFields();
+        appendStringField(json, present, TrackEvent.TITLE, "title", track.getTitle());
+        appendStringField(json, present, TrackEvent.ARTIST, "artist", track.getArtist());
+        appendStringField(json, present, TrackEvent.LENGTH, "length", track.getLength());
+        appendStringField(json, present, TrackEvent.IMAGE_PATH, "image_path", track.getImagePath());
+        if ((present & TrackEvent.PLAYING) != 0) {
+            json.append(", \"playing?\": ").append(track.isPlaying());
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendStringField(StringBuilder json, int present, int field, String name, String value) {
+        if ((present & field) == 0) {
+            return;
+        }
+        json.append(", \"").append(name).append("\": ");
+        if (value == null) {
+            json.append("null");
+        } else {
+            json.append('"').append(escapeJson(value)).append('"');
+        }
+    }
+
+    static String escapeJson(String text) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement = null;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c < 0x20) {
+                replacement = String.format("\\u%04x", (int) c);
+            }
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(text.length() + 8).append(text, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+        return escaped != null ? escaped.toString() : text;
+    }
+
+    /** Blocks the generator while the selector thread is behind, so unthrottled runs cannot exhaust the heap. */
+    private static void awaitPublishBacklog(TrackServer server) {
+        while (server.getPendingPublishCount() > MAX_PENDING_PUBLISHES) {
+            LockSupport.parkNanos(50_000L);
+        }
+    }
+
+    private static void sleepUntil(long deadlineNanos) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            if (remaining > 2_000_000L) {
+                Thread.sleep(remaining / 1_000_000L - 1);
+            } else {
+                LockSupport.parkNanos(remaining);
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private static void runGenerator(TrackServer server, Options options, Random random, CatalogTracks catalog,
+            EventRecorder recorder) throws InterruptedException, IOException {
+        long intervalNanos = options.rate > 0 ? (long) (1_000_000_000L / options.rate) : 0L;
+        long nextSendNanos = System.nanoTime();
+        int sentInBurst = 0;
+        TrackStream stream = new TrackStream();
+        ArrayDeque<String> upcoming = new ArrayDeque<>();
+
+        for (long sent = 0; options.count < 0 || sent < options.count; sent++) {
+            String jsonData;
+            awaitPublishBacklog(server);
+            boolean trackChanged = true;
+            if (!options.deltas) {
+                jsonData = options.nextUp > 0 || catalog != null
+                    ? "{" + nextTrackFields(random, options, catalog, upcoming) + ", \"playing?\": " + random.nextBoolean() + "}"
+                    : buildEvent(random, options);
+                server.publish(jsonData);
+            } else {
+                // Most traffic is play/pause; change track on roughly one event in four.
+                if (stream.hasTrack() && random.nextInt(4) != 0) {
+                    jsonData = stream.togglePlaying();
+                    trackChanged = false;
+                } else {
+                    jsonData = stream.startTrack(nextTrackFields(random, options, catalog, upcoming), random.nextBoolean());
+                }
+                server.publish(jsonData, stream.snapshot());
+            }
+            // Deltas are journaled as the full state they produce, so each play stands on its own.
+            recorder.record(jsonData, options.deltas ? stream.snapshot() : jsonData);
+            if (trackChanged && options.nextUp > 0) {
+                String nextUp = buildNextUp(upcoming);
+                server.publishAnnouncement(nextUp);
+                recorder.record(nextUp);
+            }
+
+            if (!options.isLoadMode()) {
+                System.out.println("📤 Sent to " + server.getSubscriberCount() + " client(s): " + jsonData);
+                // Wait 2-4 seconds between updates for realistic simulation
+                Thread.sleep(2000 + random.nextInt(2000));
+                continue;
+            }
+            if (options.burstSize > 0 && ++sentInBurst >= options.burstSize) {
+                sentInBurst = 0;
+                Thread.sleep(options.burstPauseMillis);
+                nextSendNanos = System.nanoTime();
+            } else if (intervalNanos > 0) {
+                nextSendNanos += intervalNanos;
+                sleepUntil(nextSendNanos);
+            }
+        }
+    }
+
+    private static void runReplay(TrackServer server, Options options, EventRecorder recorder)
+            throws InterruptedException, IOException {
+        long intervalNanos = options.rate > 0 ? (long) (1_000_000_000L / options.rate) : 0L;
+        long sent = 0;
+        TrackEventDecoder decoder = new TrackEventDecoder();
+        TrackEvent event = new TrackEvent();
+        // The replayed track, so deltas can be merged into the snapshot late joiners get.
+        TrackState replayedState = new TrackState();
+        String snapshotLine = null;
+        do {
+            long replayStartNanos = System.nanoTime();
+            long firstTimestamp = -1;
+            try (BufferedReader capture = Files.newBufferedReader(Paths.get(options.replayFile), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = capture.readLine()) != null) {
+                    if (options.count >= 0 && sent >= options.count) {
+                        return;
+                    }
+                    int tab = line.indexOf('\t');
+                    long timestamp = tab > 0 ? parseTimestamp(line, tab) : -1;
+                    String jsonData = timestamp >= 0 ? line.substring(tab + 1) : line;
+                    if (jsonData.trim().isEmpty()) {
+                        continue;
+                    }
+
+                    if (timestamp >= 0 && options.replaySpeed > 0) {
+                        if (firstTimestamp < 0) {
+                            firstTimestamp = timestamp;
+                        }
+                        long offsetNanos = (long) ((timestamp - firstTimestamp) * 1_000_000L / options.replaySpeed);
+                        sleepUntil(replayStartNanos + offsetNanos);
+                    } else if (intervalNanos > 0) {
+                        sleepUntil(replayStartNanos + sent * intervalNanos);
+                    }
+
+                    awaitPublishBacklog(server);
+                    boolean decoded = decoder.decode(jsonData, event);
+                    if (decoded && event.getType() == TrackEvent.Type.NEXT_UP) {
+                        server.publishAnnouncement(jsonData);
+                    } else if (decoded && event.getType() == TrackEvent.Type.DELTA) {
+                        TrackState.Result merged = replayedState.apply(event);
+                        if (merged == TrackState.Result.APPLIED || merged == TrackState.Result.UNCHANGED) {
+                            snapshotLine = fullLine(replayedState.getCurrent());
+                        }
+                        // A delta that cannot be merged, e.g. after a gap in the capture, leaves the snapshot as it was.
+                        server.publish(jsonData, snapshotLine != null ? snapshotLine : jsonData);
+                    } else {
+                        if (decoded) {
+                            replayedState.apply(event);
+                        }
+                        snapshotLine = jsonData;
+                        server.publish(jsonData);
+                    }
+                    recorder.record(jsonData);
+                    sent++;
+                }
+            }
+        } while (options.replayLoop);
+    }
+
+    private static long parseTimestamp(String line, int tab) {
+        for (int i = 0; i < tab; i++) {
+            if (!Character.isDigit(line.charAt(i))) {
+                return -1;
+            }
+        }
+        return Long.parseLong(line.substring(0, tab));
+    }
+
+    /**
+     * Appends sent events in the capture format {@code --replay} reads
+     * and/or to a {@link PlayJournal}.
+     */
+    private static final class EventRecorder implements AutoCloseable {
+        private final Writer writer;
+        private final PlayJournal journal;
+        private final TrackEventDecoder decoder = new TrackEventDecoder();
+        private final TrackEvent event = new TrackEvent();
+
+        EventRecorder(String file, String journalDir) throws IOException {
+            this.writer = file != null ? Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8) : null;
+            this.journal = journalDir != null ? new PlayJournal(Paths.get(journalDir)) : null;
+        }
+
+        void record(String jsonData) throws IOException {
+            record(jsonData, jsonData);
+        }
+
+        void record(String jsonData, String journalLine) throws IOException {
+            if (writer != null) {
+                writer.write(Long.toString(System.currentTimeMillis()));
+                writer.write('\t');
+                writer.write(jsonData);
+                writer.write('\n');
+            }
+            if (journal != null) {
+                byte[] utf8 = journalLine.getBytes(StandardCharsets.UTF_8);
+                // Only plays are journaled, not what was announced as next up.
+                if (decoder.decode(utf8, 0, utf8.length, event) && event.getType() != TrackEvent.Type.NEXT_UP) {
+                    journal.append(event);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+            if (journal != null) {
+                journal.close();
+                if (journal.getDroppedCount() > 0) {
+                    System.out.println("📓 Journal dropped " + journal.getDroppedCount() + " events it could not keep up with.");
+                }
+            }
+        }
+    }
+
+    private static Thread startStatsReporter(TrackServer server) {
+        Thread reporter = new Thread(() -> {
+            long previousPublished = server.getPublishedCount();
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interruptedException) {
+                    return;
+                }
+                long published = server.getPublishedCount();
+                System.out.println("📊 " + (published - previousPublished) + " events/s, "
+                    + server.getSubscriberCount() + " client(s), " + server.getDroppedCount() + " dropped");
+                previousPublished = published;
+            }
+        }, "track-server-stats");
+        reporter.setDaemon(true);
+        reporter.start();
+        return reporter;
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException argumentException) {
+            System.err.println(argumentException.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        Random random = options.seed != null ? new Random(options.seed) : new Random();
+        CatalogTracks catalog = null;
+        if (options.catalogFile != null) {
+            try {
+                TrackCatalog trackCatalog = TrackCatalog.open(Paths.get(options.catalogFile));
+                System.out.println("📚 Catalog " + options.catalogFile + ": " + trackCatalog.size() + " tracks, "
+                    + (trackCatalog.wasBuilt() ? "index built" : "index opened") + " in " + trackCatalog.getOpenMillis() + " ms");
+                catalog = new CatalogTracks(trackCatalog, options.playIds);
+            } catch (IOException catalogException) {
+                System.err.println("Could not open catalog " + options.catalogFile + ": " + catalogException.getMessage());
+                System.exit(1);
+                return;
+            }
+        }
+        TrackServer server = new TrackServer(options.port);
+        server.setStampSendTime(options.stampSendTime);
+
+        try (EventRecorder recorder = new EventRecorder(options.recordFile, options.journalDir)) {
+            server.start();
+            System.out.println("🎵 Track Server started on port " + server.getPort());
+            System.out.println("Waiting for Track Display Applications to connect...");
+            Thread statsReporter = options.isLoadMode() ? startStatsReporter(server) : null;
+
+            if (options.replayFile != null) {
+                runReplay(server, options, recorder);
+            } else {
+                runGenerator(server, options, random, catalog, recorder);
+            }
+
+            while (server.getPendingPublishCount() > 0) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(500);
+            if (statsReporter != null) {
+                statsReporter.interrupt();
+            }
+            System.out.println("🏁 Sent " + server.getPublishedCount() + " events, "
+                + server.getDroppedCount() + " dropped by slow clients.");
         } catch (Exception e) {
-            System.err.println("Server startup error: " + e.getMessage());
+            System.err.println("Server error: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            server.close();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,104 @@
+import java.util.Objects;
+
+/**
+ * Client-side merged view of the current track, built from full snapshots
+ * and field-level deltas.
+ *
+ * A full message replaces the state. A delta is merged only if it belongs to
+ * the current track and carries the next sequence number; anything else
+ * means updates were lost, so the state reports a gap once and ignores
+ * further deltas until the next full message arrives. Stale or duplicate
+ * deltas are ignored. Not thread-safe; owned by the feed reader.
+ */
+public class TrackState {
+    /** Sent to the server to ask for a full message after a gap. */
+    public static final String SNAPSHOT_REQUEST = "{\"type\": \"snapshot_request\"}";
+
+    public enum Result {
+        /** The merged state changed and should be rendered. */
+        APPLIED,
+        /** The message was accepted but changed no displayed field. */
+        UNCHANGED,
+        /** Updates were lost; a snapshot should be requested. */
+        GAP,
+        /** The message was stale, of another type, or arrived while awaiting a snapshot. */
+        IGNORED
+    }
+
+    private final TrackEvent current = new TrackEvent();
+    private boolean hasTrack;
+    private boolean synced;
+    private boolean awaitingSnapshot;
+    private int lastChangedFields;
+    private long gapCount;
+
+    public Result apply(TrackEvent update) {
+        switch (update.getType()) {
+            case FULL:
+                return applyFull(update);
+            case DELTA:
+                return applyDelta(update);
+            default:
+                return Result.IGNORED;
+        }
+    }
+
+    private Result applyFull(TrackEvent update) {
+        // Diffed against the last merged state even after a gap: that is what is on screen.
+        boolean sameTrack = hasTrack && Objects.equals(current.getTrackId(), update.getTrackId());
+        lastChangedFields = hasTrack ? update.changedFieldsFrom(current) : TrackEvent.ALL_FIELDS;
+        current.copyFrom(update);
+        hasTrack = true;
+        synced = true;
+        awaitingSnapshot = false;
+        return lastChangedFields != 0 || !sameTrack ? Result.APPLIED : Result.UNCHANGED;
+    }
+
+    private Result applyDelta(TrackEvent update) {
+        if (awaitingSnapshot) {
+            return Result.IGNORED;
+        }
+        long sequence = update.getSequence();
+        if (synced && sequence != 0 && sequence <= current.getSequence()) {
+            return Result.IGNORED;
+        }
+        if (!synced || sequence == 0 || sequence != current.getSequence() + 1
+                || !Objects.equals(current.getTrackId(), update.getTrackId())) {
+            synced = false;
+            awaitingSnapshot = true;
+            gapCount++;
+            lastChangedFields = 0;
+            return Result.GAP;
+        }
+        lastChangedFields = current.mergeFrom(update);
+        current.setSequence(sequence);
+        current.setSentAtMillis(update.getSentAtMillis());
+        current.setReceivedNanos(update.getReceivedNanos());
+        current.setParsedNanos(update.getParsedNanos());
+        return lastChangedFields != 0 ? Result.APPLIED : Result.UNCHANGED;
+    }
+
+    /** Treats the stream as broken, e.g. after an undecodable frame; deltas are ignored until the next full message. */
+    public void markOutOfSync() {
+        synced = false;
+        awaitingSnapshot = true;
+    }
+
+    /** Forgets the stream position, e.g. after reconnecting; the next full message resynchronises. */
+    public void reset() {
+        current.clear();
+        hasTrack = false;
+        synced = false;
+        awaitingSnapshot = false;
+        lastChangedFields = 0;
+    }
+
+    /** The merged track, including the timestamps of the last accepted message. */
+    public TrackEvent getCurrent() { return current; }
+    /** Bits of the fields the last applied message changed. */
+    public int getLastChangedFields() { return lastChangedFields; }
+    public boolean isAwaitingSnapshot() { return awaitingSnapshot; }
+    /** True once a full message arrived and no gap has been seen since. */
+    public boolean isSynced() { return hasTrack && synced; }
+    public long getGapCount() { return gapCount; }
+}
@@ -0,0 +1,105 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Latest-wins hand-off from a producer thread to the Swing EDT.
+ *
+ * At most one update is pending at any time: submitting while an update is
+ * still waiting replaces it, so a burst of N updates costs one EDT runnable
+ * and one render instead of N. An optional minimum render interval caps how
+ * often the renderer runs; updates arriving faster than that simply keep
+ * replacing the pending one.
+ *
+ * Updates that are pooled can be handed back through a recycler, which is
+ * called with every update once it was rendered or replaced.
+ */
+public class UpdateCoalescer<T> {
+    private final AtomicReference<T> pendingUpdate = new AtomicReference<>();
+    private final Consumer<T> renderer;
+    private final Consumer<T> recycler;
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong renderedCount = new AtomicLong();
+    private final Runnable drainTask = this::drain;
+
+    private volatile long minimumRenderIntervalNanos;
+    // EDT-confined
+    private long lastRenderNanos;
+    private Timer deferredDrainTimer;
+
+    public UpdateCoalescer(Consumer<T> renderer) {
+        this(renderer, update -> { });
+    }
+
+    public UpdateCoalescer(Consumer<T> renderer, Consumer<T> recycler) {
+        this.renderer = renderer;
+        this.recycler = recycler;
+    }
+
+    /**
+     * Offers a new update from any thread. If an update is already pending it
+     * is dropped in favour of this one.
+     */
+    public void submit(T update) {
+        receivedCount.incrementAndGet();
+        T replaced = pendingUpdate.getAndSet(update);
+        if (replaced != null) {
+            coalescedCount.incrementAndGet();
+            recycler.accept(replaced);
+        } else {
+            SwingUtilities.invokeLater(drainTask);
+        }
+    }
+
+    /**
+     * Caps renders to {@code maxRendersPerSecond}; zero or less removes the cap.
+     */
+    public void setMaximumRenderRate(int maxRendersPerSecond) {
+        minimumRenderIntervalNanos = maxRendersPerSecond > 0
+            ? TimeUnit.SECONDS.toNanos(1) / maxRendersPerSecond
+            : 0L;
+    }
+
+    private void drain() {
+        long now = System.nanoTime();
+        long interval = minimumRenderIntervalNanos;
+        if (interval > 0 && renderedCount.get() > 0) {
+            long waitNanos = lastRenderNanos + interval - now;
+            if (waitNanos > 0) {
+                scheduleDeferredDrain(waitNanos);
+                return;
+            }
+        }
+
+        T update = pendingUpdate.getAndSet(null);
+        if (update == null) {
+            return;
+        }
+        lastRenderNanos = now;
+        renderedCount.incrementAndGet();
+        try {
+            renderer.accept(update);
+        } finally {
+            recycler.accept(update);
+        }
+    }
+
+    private void scheduleDeferredDrain(long waitNanos) {
+        int delayMillis = (int) Math.max(1L, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        if (deferredDrainTimer == null) {
+            deferredDrainTimer = new Timer(delayMillis, event -> drain());
+            deferredDrainTimer.setRepeats(false);
+        }
+        deferredDrainTimer.setInitialDelay(delayMillis);
+        deferredDrainTimer.restart();
+    }
+
+    public long getReceivedCount() { return receivedCount.get(); }
+    public long getCoalescedCount() { return coalescedCount.get(); }
+    public long getRenderedCount() { return renderedCount.get(); }
+    public boolean hasPendingUpdate() { return pendingUpdate.get() != null; }
+}
@@ -0,0 +1,111 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Bounded cache of strings keyed by their UTF-8 bytes, so a field value the
+ * feed repeats costs a sampled hash and a byte compare instead of a new
+ * {@code String}.
+ *
+ * The table is two-way set-associative: a value's hash picks a set of two
+ * entries, and a miss replaces the one that was used less recently. It
+ * never grows, so a stream of distinct values only cycles through it.
+ * Values longer than {@link #MAX_INTERNED_BYTES} are decoded without being
+ * cached. Not thread-safe; use one per decoder.
+ */
+public final class Utf8Interner {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int MAX_INTERNED_BYTES = 256;
+
+    private final int setMask;
+    private final int[] hashes;
+    private final byte[][] keys;
+    private final String[] values;
+    // Per set, the way that was used last.
+    private final byte[] recentWay;
+    private long hits;
+    private long misses;
+
+    public Utf8Interner() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** {@code capacity} entries, rounded up to a power of two of at least two. */
+    public Utf8Interner(int capacity) {
+        int sets = Integer.highestOneBit(Math.max(1, (capacity + 1) / 2) * 2 - 1);
+        this.setMask = sets - 1;
+        this.hashes = new int[2 * sets];
+        this.keys = new byte[2 * sets][];
+        this.values = new String[2 * sets];
+        this.recentWay = new byte[sets];
+    }
+
+    /**
+     * Returns the string for {@code length} UTF-8 bytes at {@code offset}.
+     * Values too long to cache are decoded without being hashed.
+     */
+    public String intern(byte[] buffer, int offset, int length) {
+        if (length == 0) {
+            return "";
+        }
+        if (length > MAX_INTERNED_BYTES) {
+            misses++;
+            return new String(buffer, offset, length, StandardCharsets.UTF_8);
+        }
+        int hash = hash(buffer, offset, length);
+        int set = (hash ^ (hash >>> 16)) & setMask;
+        int first = set << 1;
+        for (int way = 0; way < 2; way++) {
+            int entry = first + way;
+            byte[] key = keys[entry];
+            if (key != null && hashes[entry] == hash && equals(key, buffer, offset, length)) {
+                recentWay[set] = (byte) way;
+                hits++;
+                return values[entry];
+            }
+        }
+        int way = recentWay[set] ^ 1;
+        int entry = first + way;
+        byte[] key = Arrays.copyOfRange(buffer, offset, offset + length);
+        String value = new String(key, StandardCharsets.UTF_8);
+        hashes[entry] = hash;
+        keys[entry] = key;
+        values[entry] = value;
+        recentWay[set] = (byte) way;
+        misses++;
+        return value;
+    }
+
+    /**
+     * Hash of the length and of up to eight bytes at each end, which is what
+     * the table is keyed by. Sampling keeps a lookup to a single pass over
+     * the bytes, the compare; values that differ only in the middle merely
+     * share a set.
+     */
+    static int hash(byte[] buffer, int offset, int length) {
+        int hash = length;
+        int end = offset + length;
+        int head = Math.min(end, offset + 8);
+        for (int i = offset; i < head; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        for (int i = Math.max(head, end - 8); i < end; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash;
+    }
+
+    private static boolean equals(byte[] key, byte[] buffer, int offset, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != buffer[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+}
@@ -0,0 +1,24 @@
+#!/bin/bash
+
+set -e
+
+echo "Track Display Application - Benchmark Script"
+echo "============================================="
+
+BUILD_DIR=build/benchmark
+BASELINE=benchmark-baseline.txt
+
+echo "Compiling Java files..."
+rm -rf "$BUILD_DIR"
+mkdir -p "$BUILD_DIR"
+javac -encoding UTF-8 -d "$BUILD_DIR" *.java
+
+if [ "$1" == "--update-baseline" ]; then
+    shift
+    java -cp "$BUILD_DIR" Benchmark --output "$BASELINE" "$@"
+    echo ""
+    echo "Baseline written to $BASELINE"
+else
+    # Exits non-zero when a benchmark regressed against the checked-in baseline
+    java -cp "$BUILD_DIR" Benchmark --compare "$BASELINE" "$@"
+fi
@@ -28,10 +28,49 @@ if [ $? -eq 0 ]; then
     echo "----------------------"
     echo "To run the Track Display Application:"
     echo "  java Main"
+    echo "  (shows the last track from ~/.track-display/state.bin at once; -Dtrackdisplay.stateFile=none disables)"
+    echo ""
+    echo "To cap the playing glow pulse and progress bar animation (default 30 fps; stops while paused):"
+    echo "  java -Dtrackdisplay.animationFps=15 Main"
+    echo ""
+    echo "To render several feeds from one process (see MultiZoneDisplay for the file format):"
+    echo "  java Main --zones zones.properties"
+    echo "  java MultiZoneDisplay --measure 40    # heap and threads per zone"
+    echo ""
+    echo "To render offscreen without a display (PNG or raw RGBA to a file, pipe or stdout):"
+    echo "  java Main --headless --output file:track-display.png --fps 10"
+    echo "  java Main --headless --output - --format rgba --size 64x64 | led-controller"
+    echo ""
+    echo "To keep a play history and query it (also TrackServer --journal DIR):"
+    echo "  java -Dtrackdisplay.journalDir=journal Main"
+    echo "  java PlayJournal journal --last 20"
+    echo "  java PlayJournal journal --from 2026-10-17T18:00:00Z --to 2026-10-17T23:00:00Z"
+    echo ""
+    echo "To run the sample server (15 tracks, then exits; --forever keeps sending):"
+    echo "  java TrackServer [--forever]"
+    echo ""
+    echo "To let displays prefetch upcoming tracks (artwork and text are ready before the change):"
+    echo "  java TrackServer --deltas --next-up 2"
+    echo ""
+    echo "To serve tracks from a catalog (the index is built next to it on first use):"
+    echo "  java TrackServer --catalog tracks.csv [--play ID,ID,...]"
+    echo "  java TrackCatalog tracks.csv ID...    # look tracks up by ID"
+    echo ""
+    echo "To fail over between redundant feeds (standbys stay connected; a server silent for heartbeatMillis is failed over):"
+    echo "  java -Dtrackdisplay.endpoints=primary:532,standby:532 -Dtrackdisplay.heartbeatMillis=1000 Main"
+    echo "  java -Dtrackdisplay.endpoints=primary:532,standby:532 -Dtrackdisplay.hedge=true Main    # first copy wins"
+    echo "  (the endpoints must relay one sequenced stream, like TrackServer --deltas sends, so duplicates can be dropped)"
+    echo ""
+    echo "To soak the feed path (in-process server, restarts, bad and huge records; exits non-zero on failure):"
+    echo "  java -Xmx256m StressTest --quick"
+    echo "  java -Xmx256m StressTest --events 5000000 --rate 50000 --binary"
     echo ""
     echo "To run tests only:"
     echo "  java Test"
     echo ""
+    echo "To run benchmarks against the checked-in baseline:"
+    echo "  ./bench.sh"
+    echo ""
     echo "Note: Make sure a socket server is running on localhost:532"
     echo "      to send JSON track data to the application."
     